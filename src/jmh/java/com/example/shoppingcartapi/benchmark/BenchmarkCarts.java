@@ -0,0 +1,40 @@
+package com.example.shoppingcartapi.benchmark;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkCarts {
+
+    private BenchmarkCarts() {
+    }
+
+    static CartItem item(int index) {
+        CartItem item = new CartItem();
+        item.setProductId("product-" + index);
+        item.setProductName("Benchmark Product " + index);
+        item.setPrice(1.0 + (index % 97) * 0.25);
+        item.setQuantity(1 + index % 5);
+        return item;
+    }
+
+    static ShoppingCart cart(int size) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId("benchmark-cart");
+        cart.setUserId("benchmark-user");
+        cart.setStatus("ACTIVE");
+        cart.setVersion(0L);
+        List<CartItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            CartItem item = item(i);
+            item.setId("item-" + i);
+            item.setCartId(cart.getId());
+            items.add(item);
+        }
+        cart.setItems(items);
+        cart.setTotalMinor(items.stream().mapToLong(i -> i.getPriceMinor() * i.getQuantity()).sum());
+        return cart;
+    }
+}
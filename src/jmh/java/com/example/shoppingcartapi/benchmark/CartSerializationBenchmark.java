@@ -0,0 +1,33 @@
+package com.example.shoppingcartapi.benchmark;
+
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartSerializationBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int cartSize;
+
+    private ObjectMapper objectMapper;
+    private ShoppingCart cart;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        cart = BenchmarkCarts.cart(cartSize);
+    }
+
+    @Benchmark
+    public byte[] serializeCart() throws Exception {
+        return objectMapper.writeValueAsBytes(cart);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.shoppingcartapi.benchmark;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.service.CartTotals;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartTotalsBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int cartSize;
+
+    private ShoppingCart cart;
+    private CartItem newItem;
+
+    @Setup
+    public void setUp() {
+        cart = BenchmarkCarts.cart(cartSize);
+        newItem = BenchmarkCarts.item(cartSize);
+    }
+
+    // The pre-incremental implementation: re-stream every line on each mutation
+    @Benchmark
+    public double fullStreamResum() {
+        return cart.getItems().stream()
+                .mapToDouble(item -> item.getPrice() * item.getQuantity())
+                .sum();
+    }
+
+    @Benchmark
+    public long exactRecompute() {
+        return CartTotals.recompute(cart.getItems());
+    }
+
+    @Benchmark
+    public long incrementalAddLine() {
+        return CartTotals.addLine(cart.getTotalMinor(), newItem);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.shoppingcartapi.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Per-request logging cost of a GET /api/carts/{id}: the default profile (DEBUG, synchronous appender,
+// cart toString including items) against the perf profile (INFO, async appender, 1% sampled request line)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestLoggingBenchmark {
+
+    @Param({"10", "1000"})
+    private int cartSize;
+
+    @Param({"default", "perf"})
+    private String profile;
+
+    private LoggerContext context;
+    private Logger controllerLogger;
+    private Logger serviceLogger;
+    private Logger requestLogger;
+    private ShoppingCart cart;
+    private Object loggedCart;
+    private boolean sampleRequests;
+
+    @Setup
+    public void setUp() {
+        boolean perf = profile.equals("perf");
+        context = new LoggerContext();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p [%t] %logger{36} : %m%n");
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> sink = new OutputStreamAppender<>();
+        sink.setContext(context);
+        sink.setEncoder(encoder);
+        sink.setOutputStream(OutputStream.nullOutputStream());
+        sink.start();
+
+        Appender<ILoggingEvent> appender = sink;
+        if (perf) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(0);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(sink);
+            async.start();
+            appender = async;
+        }
+
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.addAppender(appender);
+        root.setLevel(Level.INFO);
+        context.getLogger("com.example.shoppingcartapi").setLevel(perf ? Level.INFO : Level.DEBUG);
+        controllerLogger = context.getLogger("com.example.shoppingcartapi.controller.ShoppingCartController");
+        serviceLogger = context.getLogger("com.example.shoppingcartapi.service.ShoppingCartService");
+        requestLogger = context.getLogger("com.example.shoppingcartapi.logging.SampledRequestLoggingFilter");
+
+        cart = BenchmarkCarts.cart(cartSize);
+        // The default profile reproduces the previous @Data toString, which printed every item
+        loggedCart = perf ? cart : new Object() {
+            @Override
+            public String toString() {
+                return cart.toString() + " items=" + cart.getItems();
+            }
+        };
+        sampleRequests = perf;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void getCartRequest() {
+        long start = System.nanoTime();
+        controllerLogger.debug("Fetching cart with ID: {}", cart.getId());
+        serviceLogger.debug("Fetching cart with ID: {}", cart.getId());
+        controllerLogger.debug("Found cart: {}", loggedCart);
+        if (sampleRequests && ThreadLocalRandom.current().nextDouble() < 0.01) {
+            requestLogger.info("{} {} -> {} in {} us", "GET", "/api/carts/" + cart.getId(), 200,
+                    (System.nanoTime() - start) / 1_000);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.shoppingcartapi.benchmark;
+
+import com.example.shoppingcartapi.ShoppingCartApiApplication;
+import com.example.shoppingcartapi.dto.CartItemMutationResponse;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.service.ShoppingCartService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Runs the real service per trial against a private H2 database or the in-memory store
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShoppingCartServiceBenchmark {
+
+    private static final String MARKER_PRODUCT = "benchmark-marker";
+
+    @Param({"1", "10", "100", "1000"})
+    private int cartSize;
+
+    @Param({"false", "true"})
+    private boolean cacheEnabled;
+
+    @Param({"jpa", "memory"})
+    private String engine;
+
+    private ConfigurableApplicationContext context;
+    private ShoppingCartService cartService;
+    private String cartId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ShoppingCartApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN",
+                        "logging.level.com.example.shoppingcartapi=WARN",
+                        "cart.cache.enabled=" + cacheEnabled,
+                        "cart.storage.engine=" + engine,
+                        "cart.totals.verification.enabled=false")
+                .run();
+        cartService = context.getBean(ShoppingCartService.class);
+
+        cartId = cartService.createCart("benchmark-user").getId();
+        for (int i = 0; i < cartSize; i++) {
+            cartService.addItem(cartId, BenchmarkCarts.item(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ShoppingCart getCart() {
+        return cartService.getCart(cartId);
+    }
+
+    // Add and remove as a pair so the cart stays at the parameterised size
+    @Benchmark
+    public ShoppingCart addAndRemoveItem() {
+        ShoppingCart updated = cartService.addItemToCart(cartId, markerItem());
+        String itemId = updated.getItems().stream()
+                .filter(item -> MARKER_PRODUCT.equals(item.getProductId()))
+                .map(CartItem::getId)
+                .findFirst()
+                .orElseThrow();
+        return cartService.removeItemFromCart(cartId, itemId);
+    }
+
+    @Benchmark
+    public CartItemMutationResponse addAndRemoveItemLean() {
+        CartItemMutationResponse added = cartService.addItem(cartId, markerItem());
+        return cartService.removeItem(cartId, added.getItem().getId());
+    }
+
+    private CartItem markerItem() {
+        CartItem item = new CartItem();
+        item.setProductId(MARKER_PRODUCT);
+        item.setProductName("Benchmark Marker");
+        item.setPrice(9.99);
+        item.setQuantity(1);
+        return item;
+    }
+}
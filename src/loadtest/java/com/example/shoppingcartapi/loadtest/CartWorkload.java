@@ -0,0 +1,158 @@
+package com.example.shoppingcartapi.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Issues one cart API call per invocation, keeping a pool of live carts and their item ids
+final class CartWorkload {
+
+    private static final int MIN_POOL_SIZE = 4;
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LoadTestConfig.Operation[] weightedOperations;
+    private final List<String> cartIds = new ArrayList<>();
+    private final Map<String, ConcurrentLinkedQueue<String>> itemIds = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    CartWorkload(String baseUrl, Map<LoadTestConfig.Operation, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        List<LoadTestConfig.Operation> operations = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+        });
+        this.weightedOperations = operations.toArray(new LoadTestConfig.Operation[0]);
+    }
+
+    void seed(int carts, int itemsPerCart) throws IOException, InterruptedException {
+        for (int i = 0; i < carts; i++) {
+            String cartId = createCart();
+            for (int j = 0; j < itemsPerCart; j++) {
+                addItem(cartId);
+            }
+        }
+    }
+
+    LoadTestConfig.Operation nextOperation() {
+        return weightedOperations[ThreadLocalRandom.current().nextInt(weightedOperations.length)];
+    }
+
+    // Returns the operation actually performed; empty pools fall back to a create or add
+    LoadTestConfig.Operation execute(LoadTestConfig.Operation operation) throws IOException, InterruptedException {
+        String cartId = operation == LoadTestConfig.Operation.CREATE ? null : pickCart();
+        if (cartId == null) {
+            createCart();
+            return LoadTestConfig.Operation.CREATE;
+        }
+        switch (operation) {
+            case ADD -> addItem(cartId);
+            case REMOVE -> {
+                ConcurrentLinkedQueue<String> items = itemIds.get(cartId);
+                String itemId = items == null ? null : items.poll();
+                if (itemId == null) {
+                    addItem(cartId);
+                    return LoadTestConfig.Operation.ADD;
+                }
+                send(HttpRequest.newBuilder(uri("/api/carts/" + cartId + "/items/" + itemId + "?response=item"))
+                        .DELETE());
+            }
+            case GET -> send(HttpRequest.newBuilder(uri("/api/carts/" + cartId)).GET());
+            case DELETE -> {
+                if (!takeCart(cartId)) {
+                    send(HttpRequest.newBuilder(uri("/api/carts/" + cartId)).GET());
+                    return LoadTestConfig.Operation.GET;
+                }
+                send(HttpRequest.newBuilder(uri("/api/carts/" + cartId)).DELETE());
+            }
+            default -> throw new IllegalStateException("Unexpected operation " + operation);
+        }
+        return operation;
+    }
+
+    private String createCart() throws IOException, InterruptedException {
+        String userId = "load-user-" + sequence.incrementAndGet();
+        JsonNode cart = send(HttpRequest.newBuilder(uri("/api/carts?userId=" + userId))
+                .POST(HttpRequest.BodyPublishers.noBody()));
+        String cartId = cart.get("id").asText();
+        itemIds.put(cartId, new ConcurrentLinkedQueue<>());
+        synchronized (cartIds) {
+            cartIds.add(cartId);
+        }
+        return cartId;
+    }
+
+    private void addItem(String cartId) throws IOException, InterruptedException {
+        long n = sequence.incrementAndGet();
+        String body = "{\"productId\":\"product-" + (n % 500) + "\",\"productName\":\"Load Product\","
+                + "\"price\":" + (1 + n % 50) + ".99,\"quantity\":" + (1 + n % 3) + "}";
+        JsonNode result = send(HttpRequest.newBuilder(uri("/api/carts/" + cartId + "/items?response=item"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)));
+        ConcurrentLinkedQueue<String> items = itemIds.get(cartId);
+        String itemId = result.get("item").get("id").asText();
+        // Adding a product already in the cart merges into its line and returns the same id
+        if (items != null && !items.contains(itemId)) {
+            items.add(itemId);
+        }
+    }
+
+    private String pickCart() {
+        synchronized (cartIds) {
+            if (cartIds.isEmpty()) {
+                return null;
+            }
+            return cartIds.get(ThreadLocalRandom.current().nextInt(cartIds.size()));
+        }
+    }
+
+    // Swap-remove keeps the pool compact; refuses to drain it below its minimum
+    private boolean takeCart(String cartId) {
+        synchronized (cartIds) {
+            if (cartIds.size() <= MIN_POOL_SIZE) {
+                return false;
+            }
+            int index = cartIds.indexOf(cartId);
+            if (index < 0) {
+                return false;
+            }
+            cartIds.set(index, cartIds.get(cartIds.size() - 1));
+            cartIds.remove(cartIds.size() - 1);
+        }
+        itemIds.remove(cartId);
+        return true;
+    }
+
+    private JsonNode send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("HTTP " + response.statusCode() + " from " + response.uri());
+        }
+        String body = response.body();
+        return body == null || body.isEmpty() ? null : objectMapper.readTree(body);
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+}
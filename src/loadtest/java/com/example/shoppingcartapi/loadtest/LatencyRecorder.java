@@ -0,0 +1,76 @@
+package com.example.shoppingcartapi.loadtest;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Collects raw latencies per operation; samples are sorted once when the run is summarised
+final class LatencyRecorder {
+
+    private final Map<LoadTestConfig.Operation, Samples> samples = new EnumMap<>(LoadTestConfig.Operation.class);
+    private long errors;
+
+    LatencyRecorder() {
+        for (LoadTestConfig.Operation operation : LoadTestConfig.Operation.values()) {
+            samples.put(operation, new Samples());
+        }
+    }
+
+    synchronized void record(LoadTestConfig.Operation operation, long latencyNanos, boolean success) {
+        samples.get(operation).add(latencyNanos);
+        if (!success) {
+            errors++;
+        }
+    }
+
+    synchronized RunSummary summarise() {
+        Map<LoadTestConfig.Operation, Summary> summaries = new EnumMap<>(LoadTestConfig.Operation.class);
+        Samples all = new Samples();
+        for (Map.Entry<LoadTestConfig.Operation, Samples> entry : samples.entrySet()) {
+            if (entry.getValue().size > 0) {
+                summaries.put(entry.getKey(), entry.getValue().summary());
+                all.addAll(entry.getValue());
+            }
+        }
+        return new RunSummary(summaries, all.summary(), errors);
+    }
+
+    record RunSummary(Map<LoadTestConfig.Operation, Summary> operations, Summary overall, long errors) {
+    }
+
+    record Summary(long count, double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+    }
+
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        Summary summary() {
+            if (size == 0) {
+                return new Summary(0, 0, 0, 0, 0);
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return new Summary(size, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[size - 1] / 1_000_000.0);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.shoppingcartapi.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+final class LoadGenerator {
+
+    private final LoadTestConfig config;
+    private final CartWorkload workload;
+
+    LoadGenerator(LoadTestConfig config, CartWorkload workload) {
+        this.config = config;
+        this.workload = workload;
+    }
+
+    LevelResult run(int level) throws InterruptedException {
+        LatencyRecorder recorder = new LatencyRecorder();
+        long start = System.nanoTime();
+        long measureFrom = start + config.warmup().toNanos();
+        long deadline = measureFrom + config.duration().toNanos();
+
+        if (config.mode() == LoadTestConfig.Mode.CLOSED) {
+            runClosed(level, recorder, measureFrom, deadline);
+        } else {
+            runOpen(level, recorder, measureFrom, deadline);
+        }
+
+        LatencyRecorder.RunSummary summary = recorder.summarise();
+        double seconds = config.duration().toNanos() / 1_000_000_000.0;
+        return new LevelResult(level, summary, summary.overall().count() / seconds);
+    }
+
+    // Each worker issues its next request as soon as the previous one completes
+    private void runClosed(int workers, LatencyRecorder recorder, long measureFrom, long deadline)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofPlatform().name("loadtest-worker-" + i).start(() -> {
+                while (System.nanoTime() < deadline) {
+                    long sent = System.nanoTime();
+                    issue(recorder, sent, measureFrom);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    // Requests are released on a fixed schedule whatever the server does; latency is measured
+    // from the intended send time so a stalled server is not hidden by coordinated omission
+    private void runOpen(int ratePerSecond, LatencyRecorder recorder, long measureFrom, long deadline)
+            throws InterruptedException {
+        long intervalNanos = 1_000_000_000L / ratePerSecond;
+        AtomicBoolean running = new AtomicBoolean(true);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long intended = System.nanoTime();
+            while (intended < deadline && running.get()) {
+                long now = System.nanoTime();
+                if (now < intended) {
+                    TimeUnit.NANOSECONDS.sleep(intended - now);
+                }
+                long scheduledAt = intended;
+                executor.submit(() -> issue(recorder, scheduledAt, measureFrom));
+                intended += intervalNanos;
+            }
+        }
+    }
+
+    private void issue(LatencyRecorder recorder, long startedAt, long measureFrom) {
+        LoadTestConfig.Operation operation = workload.nextOperation();
+        boolean success = true;
+        try {
+            operation = workload.execute(operation);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception ex) {
+            success = false;
+        }
+        if (startedAt >= measureFrom) {
+            recorder.record(operation, System.nanoTime() - startedAt, success);
+        }
+    }
+
+    record LevelResult(int level, LatencyRecorder.RunSummary summary, double throughput) {
+    }
+}
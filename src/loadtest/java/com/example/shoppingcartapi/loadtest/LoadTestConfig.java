@@ -0,0 +1,91 @@
+package com.example.shoppingcartapi.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+record LoadTestConfig(
+        String target,
+        Mode mode,
+        List<Integer> concurrencyLevels,
+        List<Integer> rates,
+        Duration warmup,
+        Duration duration,
+        Map<Operation, Integer> mix,
+        int itemsPerCart,
+        String reportFile,
+        long dbLatencyMillis,
+        List<Boolean> virtualThreadModes) {
+
+    enum Mode {
+        CLOSED,
+        OPEN
+    }
+
+    enum Operation {
+        CREATE,
+        ADD,
+        REMOVE,
+        GET,
+        DELETE
+    }
+
+    // Closed loop sweeps worker counts; open loop sweeps arrival rates in requests per second
+    List<Integer> levels() {
+        return mode == Mode.CLOSED ? concurrencyLevels : rates;
+    }
+
+    static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+                System.getProperty("loadtest.target", ""),
+                Mode.valueOf(System.getProperty("loadtest.mode", "closed").toUpperCase()),
+                parseLevels(System.getProperty("loadtest.concurrency", "1,8,32,128")),
+                parseLevels(System.getProperty("loadtest.rates", "100,500,1000")),
+                Duration.ofSeconds(Long.parseLong(System.getProperty("loadtest.warmup-seconds", "5"))),
+                Duration.ofSeconds(Long.parseLong(System.getProperty("loadtest.duration-seconds", "30"))),
+                parseMix(System.getProperty("loadtest.mix", "create=5,add=35,remove=15,get=40,delete=5")),
+                Integer.parseInt(System.getProperty("loadtest.items-per-cart", "10")),
+                System.getProperty("loadtest.report", "target/loadtest-report.json"),
+                Long.parseLong(System.getProperty("loadtest.db-latency-ms", "0")),
+                parseThreadModes(System.getProperty("loadtest.threads", "platform")));
+    }
+
+    private static List<Integer> parseLevels(String value) {
+        List<Integer> levels = new ArrayList<>();
+        for (String level : value.split(",")) {
+            int parsed = Integer.parseInt(level.trim());
+            if (parsed < 1) {
+                throw new IllegalArgumentException("Levels must be positive: " + level);
+            }
+            levels.add(parsed);
+        }
+        return levels;
+    }
+
+    // "platform", "virtual" or "both" (runs the sweep once per mode for a side-by-side comparison)
+    private static List<Boolean> parseThreadModes(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "platform" -> List.of(false);
+            case "virtual" -> List.of(true);
+            case "both" -> List.of(false, true);
+            default -> throw new IllegalArgumentException("loadtest.threads must be platform, virtual or both: " + value);
+        };
+    }
+
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entries must look like op=weight: " + entry);
+            }
+            mix.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Mix weights must add up to more than zero");
+        }
+        return mix;
+    }
+}
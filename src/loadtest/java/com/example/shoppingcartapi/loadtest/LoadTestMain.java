@@ -0,0 +1,97 @@
+package com.example.shoppingcartapi.loadtest;
+
+import com.example.shoppingcartapi.ShoppingCartApiApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Drives /api/carts at load. Without -Dloadtest.target the app is started in-process on a random port with H2
+public final class LoadTestMain {
+
+    private LoadTestMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        Map<String, List<LoadGenerator.LevelResult>> runs = new LinkedHashMap<>();
+        if (!config.target().isBlank()) {
+            runs.put("remote", sweep(config, config.target(), config.reportFile()));
+        } else {
+            for (boolean virtualThreads : config.virtualThreadModes()) {
+                String label = virtualThreads ? "virtual" : "platform";
+                String reportFile = config.virtualThreadModes().size() > 1
+                        ? config.reportFile().replace(".json", "-" + label + ".json")
+                        : config.reportFile();
+                try (ConfigurableApplicationContext context = startApplication(config, virtualThreads)) {
+                    int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+                    System.out.printf("%n=== %s threads ===%n", label);
+                    runs.put(label, sweep(config, "http://localhost:" + port, reportFile));
+                }
+            }
+        }
+        if (runs.size() > 1) {
+            printComparison(config, runs);
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(LoadTestConfig config, boolean virtualThreads) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(ShoppingCartApiApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN",
+                        "logging.level.com.example.shoppingcartapi=WARN",
+                        "logging.level.org.springframework.web=WARN",
+                        "logging.level.org.springframework.web.servlet.mvc.method.annotation=WARN");
+        if (config.dbLatencyMillis() > 0) {
+            // A slow database is modelled as a remote one: size the pool for it and skip the embedded-H2 guard
+            builder.properties(
+                    "spring.datasource.hikari.maximum-pool-size=100",
+                    "cart.execution.jdbc-pinning-guard=never");
+            builder.initializers(context -> context.getBeanFactory()
+                    .addBeanPostProcessor(new SlowDatabaseStandIn(config.dbLatencyMillis())));
+        }
+        return builder.run();
+    }
+
+    private static List<LoadGenerator.LevelResult> sweep(LoadTestConfig config, String baseUrl, String reportFile)
+            throws Exception {
+        System.out.printf("Load test against %s (%s loop, mix %s, db latency %d ms)%n",
+                baseUrl, config.mode(), config.mix(), config.dbLatencyMillis());
+        List<LoadGenerator.LevelResult> results = new ArrayList<>();
+        for (int level : config.levels()) {
+            CartWorkload workload = new CartWorkload(baseUrl, config.mix());
+            workload.seed(Math.min(256, Math.max(16, level * 2)), config.itemsPerCart());
+            LoadGenerator.LevelResult result = new LoadGenerator(config, workload).run(level);
+            LoadTestReport.print(config, result, System.out);
+            results.add(result);
+        }
+        LoadTestReport.writeJson(config, results, reportFile);
+        System.out.printf("%nReport written to %s%n", reportFile);
+        return results;
+    }
+
+    private static void printComparison(LoadTestConfig config, Map<String, List<LoadGenerator.LevelResult>> runs) {
+        System.out.printf("%n=== comparison ===%n%-8s", "level");
+        for (String label : runs.keySet()) {
+            System.out.printf(Locale.ROOT, " %14s %14s", label + " req/s", label + " p99");
+        }
+        System.out.println();
+        for (int i = 0; i < config.levels().size(); i++) {
+            System.out.printf("%-8d", config.levels().get(i));
+            for (List<LoadGenerator.LevelResult> results : runs.values()) {
+                LoadGenerator.LevelResult result = results.get(i);
+                System.out.printf(Locale.ROOT, " %14.1f %14.2f", result.throughput(),
+                        result.summary().overall().p99Millis());
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.shoppingcartapi.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+final class LoadTestReport {
+
+    private LoadTestReport() {
+    }
+
+    static void print(LoadTestConfig config, LoadGenerator.LevelResult result, PrintStream out) {
+        String levelName = config.mode() == LoadTestConfig.Mode.CLOSED ? "concurrency" : "rate";
+        out.printf(Locale.ROOT, "%n%s=%d  throughput=%.1f req/s  errors=%d%n",
+                levelName, result.level(), result.throughput(), result.summary().errors());
+        out.printf(Locale.ROOT, "  %-8s %10s %10s %10s %10s %10s%n", "op", "count", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<LoadTestConfig.Operation, LatencyRecorder.Summary> entry
+                : result.summary().operations().entrySet()) {
+            printRow(out, entry.getKey().name(), entry.getValue());
+        }
+        printRow(out, "ALL", result.summary().overall());
+    }
+
+    static void writeJson(LoadTestConfig config, List<LoadGenerator.LevelResult> results, String reportFile)
+            throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"mode\":\"").append(config.mode()).append("\",")
+                .append("\"durationSeconds\":").append(config.duration().toSeconds()).append(",")
+                .append("\"dbLatencyMs\":").append(config.dbLatencyMillis()).append(",")
+                .append("\"levels\":[");
+        for (int i = 0; i < results.size(); i++) {
+            LoadGenerator.LevelResult result = results.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"level\":").append(result.level())
+                    .append(",\"throughput\":").append(format(result.throughput()))
+                    .append(",\"errors\":").append(result.summary().errors())
+                    .append(",\"overall\":");
+            appendSummary(json, result.summary().overall());
+            json.append(",\"operations\":{");
+            boolean first = true;
+            for (Map.Entry<LoadTestConfig.Operation, LatencyRecorder.Summary> entry
+                    : result.summary().operations().entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append('"').append(entry.getKey()).append("\":");
+                appendSummary(json, entry.getValue());
+            }
+            json.append("}}");
+        }
+        json.append("]}");
+
+        Path path = Path.of(reportFile);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.writeString(path, json.toString());
+    }
+
+    private static void printRow(PrintStream out, String name, LatencyRecorder.Summary summary) {
+        out.printf(Locale.ROOT, "  %-8s %10d %10.2f %10.2f %10.2f %10.2f%n", name, summary.count(),
+                summary.p50Millis(), summary.p99Millis(), summary.p999Millis(), summary.maxMillis());
+    }
+
+    private static void appendSummary(StringBuilder json, LatencyRecorder.Summary summary) {
+        json.append("{\"count\":").append(summary.count())
+                .append(",\"p50Ms\":").append(format(summary.p50Millis()))
+                .append(",\"p99Ms\":").append(format(summary.p99Millis()))
+                .append(",\"p999Ms\":").append(format(summary.p999Millis()))
+                .append(",\"maxMs\":").append(format(summary.maxMillis()))
+                .append('}');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.shoppingcartapi.loadtest;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+// Adds a fixed delay to every statement execution so H2 behaves like a database across a network
+final class SlowDatabaseStandIn implements BeanPostProcessor {
+
+    private final long latencyMillis;
+
+    SlowDatabaseStandIn(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource)) {
+            return bean;
+        }
+        // Keep every interface of the pool (e.g. Closeable) so the context can still shut it down
+        return proxy(bean, result -> result instanceof Connection
+                ? proxy(result, this::delayStatement, false)
+                : result, false);
+    }
+
+    private Object delayStatement(Object result) {
+        return result instanceof Statement ? proxy(result, UnaryOperator.identity(), true) : result;
+    }
+
+    private Object proxy(Object target, UnaryOperator<Object> resultMapper, boolean delayExecutes) {
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(target);
+        return Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, (proxy, method, args) -> {
+            if (delayExecutes && method.getName().startsWith("execute")) {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            }
+            try {
+                return resultMapper.apply(method.invoke(target, args));
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            }
+        });
+    }
+}
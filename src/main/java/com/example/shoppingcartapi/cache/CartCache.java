@@ -0,0 +1,25 @@
+package com.example.shoppingcartapi.cache;
+
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.util.Optional;
+
+public interface CartCache {
+
+    Optional<ShoppingCart> get(String cartId);
+
+    // Write-through: dropped only when the cache already holds a later version of the cart
+    void put(ShoppingCart cart);
+
+    // Read-through: generation is what generation() returned before the cart was loaded, and the put is
+    // dropped if the cart has been evicted since, as a write then committed after the load
+    void put(ShoppingCart cart, long generation);
+
+    long generation();
+
+    void evict(String cartId);
+
+    void clear();
+
+    CartCacheStats stats();
+}
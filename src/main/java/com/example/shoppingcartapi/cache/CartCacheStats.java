@@ -0,0 +1,11 @@
+package com.example.shoppingcartapi.cache;
+
+public record CartCacheStats(long hits, long misses, long evictions, long size) {
+
+    public static final CartCacheStats EMPTY = new CartCacheStats(0, 0, 0, 0);
+
+    public double hitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.shoppingcartapi.cache;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// LRU map bounded by size, with a per-entry time-to-live checked on read. Guarded by a
+// ReentrantLock rather than synchronized so virtual threads waiting on it do not pin their carrier.
+// Carts go in and come out as copies, so no caller ever shares or changes the cached instance.
+// Each evict leaves a tombstone stamped with a generation, and a read-through put taken at an older
+// generation is dropped, so a read that loaded a cart before a write committed cannot cache it after the
+// write's eviction. Tombstones are bounded like the entries; the newest generation pushed out is kept
+// as a floor that every older put loses to, which only costs a cache fill.
+public class InMemoryCartCache implements CartCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries;
+    private final LinkedHashMap<String, Long> tombstones;
+    private long generation;
+    private long forgottenGeneration;
+
+    public InMemoryCartCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    InMemoryCartCache(int maxSize, Duration ttl, LongSupplier clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache max size must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > InMemoryCartCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.tombstones = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > InMemoryCartCache.this.maxSize) {
+                    forgottenGeneration = Math.max(forgottenGeneration, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Optional<ShoppingCart> get(String cartId) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(cartId);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            if (clock.getAsLong() - entry.expiresAt > 0) {
+                entries.remove(cartId);
+                evictions.incrementAndGet();
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            return Optional.of(copy(entry.cart));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(ShoppingCart cart) {
+        put(cart, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void put(ShoppingCart cart, long generation) {
+        if (cart == null || cart.getId() == null) {
+            return;
+        }
+        ShoppingCart cached = copy(cart);
+        lock.lock();
+        try {
+            if (evictedSince(cart.getId(), generation)) {
+                return;
+            }
+            Entry current = entries.get(cart.getId());
+            if (current != null && isOlder(cached.getVersion(), current.cart.getVersion())) {
+                return;
+            }
+            entries.put(cart.getId(), new Entry(cached, clock.getAsLong() + ttlNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long generation() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void evict(String cartId) {
+        lock.lock();
+        try {
+            entries.remove(cartId);
+            tombstones.remove(cartId);
+            tombstones.put(cartId, ++generation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            tombstones.clear();
+            forgottenGeneration = ++generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CartCacheStats stats() {
+        int size;
+        lock.lock();
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        return new CartCacheStats(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    // Caller holds the lock
+    private boolean evictedSince(String cartId, long generation) {
+        Long evictedAt = tombstones.get(cartId);
+        return generation < (evictedAt == null ? forgottenGeneration : evictedAt);
+    }
+
+    private static boolean isOlder(Long version, Long current) {
+        return version != null && current != null && version < current;
+    }
+
+    private static ShoppingCart copy(ShoppingCart cart) {
+        ShoppingCart copy = new ShoppingCart();
+        copy.setId(cart.getId());
+        copy.setUserId(cart.getUserId());
+        copy.setTotalMinor(cart.getTotalMinor());
+        copy.setCurrency(cart.getCurrency());
+        copy.setStatus(cart.getStatus());
+        copy.setVersion(cart.getVersion());
+        copy.setLastModified(cart.getLastModified());
+        if (cart.getItems() != null) {
+            List<CartItem> items = new ArrayList<>(cart.getItems().size());
+            for (CartItem item : cart.getItems()) {
+                items.add(copy(item));
+            }
+            copy.setItems(items);
+        }
+        return copy;
+    }
+
+    private static CartItem copy(CartItem item) {
+        CartItem copy = new CartItem();
+        copy.setId(item.getId());
+        copy.setCartId(item.getCartId());
+        copy.setProductId(item.getProductId());
+        copy.setProductName(item.getProductName());
+        copy.setPriceMinor(item.getPriceMinor());
+        copy.setQuantity(item.getQuantity());
+        return copy;
+    }
+
+    private record Entry(ShoppingCart cart, long expiresAt) {
+    }
+}
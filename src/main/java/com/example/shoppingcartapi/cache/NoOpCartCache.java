@@ -0,0 +1,39 @@
+package com.example.shoppingcartapi.cache;
+
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.util.Optional;
+
+public class NoOpCartCache implements CartCache {
+
+    @Override
+    public Optional<ShoppingCart> get(String cartId) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(ShoppingCart cart) {
+    }
+
+    @Override
+    public void put(ShoppingCart cart, long generation) {
+    }
+
+    @Override
+    public long generation() {
+        return 0L;
+    }
+
+    @Override
+    public void evict(String cartId) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public CartCacheStats stats() {
+        return CartCacheStats.EMPTY;
+    }
+}
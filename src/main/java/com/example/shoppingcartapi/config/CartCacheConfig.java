@@ -0,0 +1,25 @@
+package com.example.shoppingcartapi.config;
+
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.cache.InMemoryCartCache;
+import com.example.shoppingcartapi.cache.NoOpCartCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CartCacheConfig {
+
+    @Bean
+    public CartCache cartCache(
+            @Value("${cart.cache.enabled:false}") boolean enabled,
+            @Value("${cart.cache.max-size:10000}") int maxSize,
+            @Value("${cart.cache.ttl:PT5M}") Duration ttl) {
+        if (!enabled) {
+            return new NoOpCartCache();
+        }
+        return new InMemoryCartCache(maxSize, ttl);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.shoppingcartapi.config;
+
+import com.example.shoppingcartapi.logging.SampledRequestLoggingFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LoggingConfig {
+
+    @Bean
+    @ConditionalOnExpression("${cart.logging.request-sample-rate:0} > 0")
+    public FilterRegistrationBean<SampledRequestLoggingFilter> sampledRequestLoggingFilter(
+            @Value("${cart.logging.request-sample-rate}") double sampleRate) {
+        FilterRegistrationBean<SampledRequestLoggingFilter> registration =
+                new FilterRegistrationBean<>(new SampledRequestLoggingFilter(sampleRate));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
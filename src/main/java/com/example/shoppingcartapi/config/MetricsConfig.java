@@ -0,0 +1,102 @@
+package com.example.shoppingcartapi.config;
+
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.metrics.RequestMetricsFilter;
+import com.example.shoppingcartapi.repository.WriteBehindCartStore;
+import com.example.shoppingcartapi.service.CartEventBus;
+import com.example.shoppingcartapi.service.CartMailboxes;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestMetricsFilter> requestMetricsFilter(MeterRegistry registry) {
+        FilterRegistrationBean<RequestMetricsFilter> registration =
+                new FilterRegistrationBean<>(new RequestMetricsFilter(registry));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Bean
+    public MeterBinder cartCacheMetrics(CartCache cartCache) {
+        return registry -> {
+            FunctionCounter.builder("cart.cache.hits", cartCache, cache -> cache.stats().hits())
+                    .register(registry);
+            FunctionCounter.builder("cart.cache.misses", cartCache, cache -> cache.stats().misses())
+                    .register(registry);
+            FunctionCounter.builder("cart.cache.evictions", cartCache, cache -> cache.stats().evictions())
+                    .register(registry);
+            Gauge.builder("cart.cache.size", cartCache, cache -> cache.stats().size())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder jdbcPinningGuardMetrics(ObjectProvider<DataSource> dataSources) {
+        return registry -> dataSources.forEach(dataSource -> {
+            JdbcPinningGuardDataSource guard = unwrapGuard(dataSource);
+            if (guard != null) {
+                Gauge.builder("cart.jdbc.guard.available_permits", guard, JdbcPinningGuardDataSource::availablePermits)
+                        .description("JDBC permits free for virtual threads")
+                        .register(registry);
+            }
+        });
+    }
+
+    @Bean
+    public MeterBinder writeBehindMetrics(ObjectProvider<WriteBehindCartStore> stores) {
+        return registry -> stores.ifAvailable(store ->
+                Gauge.builder("cart.storage.write_behind.pending", store, WriteBehindCartStore::pendingCount)
+                        .description("Carts with changes not yet flushed to the database")
+                        .register(registry));
+    }
+
+    @Bean
+    public MeterBinder cartEventMetrics(CartEventBus eventBus) {
+        return registry -> Gauge.builder("cart.events.subscribers", eventBus, CartEventBus::subscriberCount)
+                .description("Open cart event subscriptions")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder cartMailboxMetrics(CartMailboxes mailboxes) {
+        return registry -> {
+            Gauge.builder("cart.mailbox.active", mailboxes, CartMailboxes::activeCount)
+                    .description("Carts with a mailbox, each with a mutation queued or running")
+                    .register(registry);
+            Gauge.builder("cart.mailbox.queued", mailboxes, CartMailboxes::queuedCount)
+                    .description("Cart mutations waiting in a mailbox")
+                    .register(registry);
+        };
+    }
+
+    private static JdbcPinningGuardDataSource unwrapGuard(DataSource dataSource) {
+        if (dataSource instanceof JdbcPinningGuardDataSource guard) {
+            return guard;
+        }
+        try {
+            return dataSource.isWrapperFor(JdbcPinningGuardDataSource.class)
+                    ? dataSource.unwrap(JdbcPinningGuardDataSource.class)
+                    : null;
+        } catch (SQLException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.shoppingcartapi.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+// Request handling and @Scheduled work move to virtual threads through spring.threads.virtual.enabled, and
+// cart writes with cart.mailbox.enabled; this adds the JDBC guard either mode needs when the database is embedded
+@Configuration
+@ConditionalOnExpression("${spring.threads.virtual.enabled:false} or ${cart.mailbox.enabled:false}")
+public class VirtualThreadConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public static BeanPostProcessor jdbcPinningGuard(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof JdbcPinningGuardDataSource) {
+                    return bean;
+                }
+                if (!guardEnabled(environment)) {
+                    return bean;
+                }
+                int permits = environment.getProperty("cart.execution.jdbc-permits", Integer.class, 0);
+                if (permits < 1) {
+                    permits = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+                }
+                logger.info("Limiting concurrent JDBC work on {} to {} virtual threads", beanName, permits);
+                return new JdbcPinningGuardDataSource(dataSource, permits);
+            }
+        };
+    }
+
+    private static boolean guardEnabled(Environment environment) {
+        String mode = environment.getProperty("cart.execution.jdbc-pinning-guard", "auto");
+        if (mode.equalsIgnoreCase("always")) {
+            return true;
+        }
+        if (mode.equalsIgnoreCase("never")) {
+            return false;
+        }
+        // Only embedded H2 executes SQL in-process; remote databases block on sockets, which does not pin
+        String url = environment.getProperty("spring.datasource.url", "");
+        return url.startsWith("jdbc:h2:") && !url.startsWith("jdbc:h2:tcp:") && !url.startsWith("jdbc:h2:ssl:");
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.shoppingcartapi.controller;
+
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.exception.ConflictException;
+import com.example.shoppingcartapi.service.ShoppingCartService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+// Writes a cart in the same JSON shape as ShoppingCart, pulling its lines a page at a time so the
+// response never holds more than one page plus the generator's fixed buffer.
+// Pages are separate reads, so the cart version is read again after the last one; if a write got in
+// between, the body is cut off before its closing fields rather than mixing two versions of the cart.
+final class CartJsonStreamWriter {
+
+    private CartJsonStreamWriter() {
+    }
+
+    static void write(ObjectMapper objectMapper, ShoppingCartService cartService, CartSummary header,
+                      OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // A failed stream must stay unparseable, not be closed off as if it were complete
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            json.writeStartObject();
+            json.writeStringField("id", header.getId());
+            json.writeStringField("userId", header.getUserId());
+            json.writeArrayFieldStart("items");
+            // Send the header before the first page is read
+            json.flush();
+            try {
+                cartService.streamCartItems(header.getId(), item -> {
+                    try {
+                        json.writeObject(item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Long version = cartService.getCartHeader(header.getId()).map(CartSummary::getVersion).orElse(null);
+            if (version == null || !Objects.equals(version, header.getVersion())) {
+                throw new ConflictException("Cart " + header.getId() + " changed while it was being streamed");
+            }
+            json.writeEndArray();
+            json.writeNumberField("totalAmount", header.getTotalAmount());
+            json.writeStringField("currency", header.getCurrency());
+            json.writeStringField("status", header.getStatus());
+            json.writeObjectField("version", header.getVersion());
+            json.writeEndObject();
+        }
+    }
+}
@@ -1,67 +1,259 @@
 package com.example.shoppingcartapi.controller;
 
+import com.example.shoppingcartapi.dto.CartBatchRequest;
+import com.example.shoppingcartapi.dto.CartBatchResponse;
+import com.example.shoppingcartapi.dto.CartItemMutationResponse;
+import com.example.shoppingcartapi.dto.CartItemPage;
+import com.example.shoppingcartapi.dto.CartItemQuantityRequest;
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.exception.BadRequestException;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
 import com.example.shoppingcartapi.model.CartItem;
 import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.service.CartEventBus;
 import com.example.shoppingcartapi.service.ShoppingCartService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/carts")
 public class ShoppingCartController {
     
     private static final Logger logger = LoggerFactory.getLogger(ShoppingCartController.class);
+    private static final String RESPONSE_CART = "cart";
+    private static final String RESPONSE_ITEM = "item";
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final String SSE_EVENT_NAME = "cart-events";
     private final ShoppingCartService cartService;
+    private final ObjectMapper objectMapper;
+    private final long eventStreamTimeoutMillis;
     
     @Autowired
-    public ShoppingCartController(ShoppingCartService cartService) {
+    public ShoppingCartController(ShoppingCartService cartService, ObjectMapper objectMapper,
+                                  @Value("${cart.events.sse-timeout-ms:300000}") long eventStreamTimeoutMillis) {
         this.cartService = cartService;
+        this.objectMapper = objectMapper;
+        this.eventStreamTimeoutMillis = eventStreamTimeoutMillis;
     }
     
     @PostMapping
-    public ResponseEntity<ShoppingCart> createCart(@RequestParam String userId) {
+    public ResponseEntity<ShoppingCart> createCart(
+            @RequestParam String userId,
+            @RequestParam(required = false) String currency) {
         logger.debug("Creating new cart for user: {}", userId);
-        ShoppingCart cart = cartService.createCart(userId);
+        ShoppingCart cart = cartService.createCart(userId, currency);
         logger.debug("Created cart with ID: {}", cart.getId());
         return ResponseEntity.ok(cart);
     }
     
+    @GetMapping
+    public ResponseEntity<List<CartSummary>> findCarts(
+            @RequestParam String userId,
+            @RequestParam(required = false) String status) {
+        logger.debug("Finding carts for user {} with status {}", userId, status);
+        List<CartSummary> carts = cartService.findCarts(userId, status);
+        logger.debug("Found {} carts for user {}", carts.size(), userId);
+        return ResponseEntity.ok(carts);
+    }
+    
     @GetMapping("/{cartId}")
-    public ResponseEntity<ShoppingCart> getCart(@PathVariable String cartId) {
+    public ResponseEntity<?> getCart(
+            @PathVariable String cartId,
+            @RequestParam(defaultValue = "false") boolean stream,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.debug("Fetching cart with ID: {}", cartId);
+        if (ifNoneMatch != null) {
+            Long version = cartService.getCartVersion(cartId);
+            if (CartETags.matchesAny(ifNoneMatch, version)) {
+                logger.debug("Cart {} unchanged at version {}", cartId, version);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(CartETags.of(version)).build();
+            }
+        }
+        if (stream) {
+            // Archived carts are read back whole, so only hot ones are streamed
+            Optional<CartSummary> header = cartService.getCartHeader(cartId);
+            if (header.isPresent()) {
+                return streamCart(header.get());
+            }
+        }
         ShoppingCart cart = cartService.getCart(cartId);
         logger.debug("Found cart: {}", cart);
-        return ResponseEntity.ok(cart);
+        return withETag(cart);
+    }
+    
+    @GetMapping("/{cartId}/items")
+    public ResponseEntity<CartItemPage> getCartItems(
+            @PathVariable String cartId,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) List<String> fields) {
+        logger.debug("Fetching items of cart {} after {}", cartId, after);
+        CartItemPage page = cartService.getCartItems(cartId, after, limit, fields);
+        logger.debug("Returning {} items of cart {}", page.getItems().size(), cartId);
+        return ResponseEntity.ok(page);
+    }
+    
+    @GetMapping("/{cartId}/summary")
+    public ResponseEntity<CartOverview> getCartSummary(@PathVariable String cartId) {
+        logger.debug("Fetching summary of cart {}", cartId);
+        return ResponseEntity.ok(cartService.getCartOverview(cartId));
+    }
+    
+    // Server-Sent Events: each message carries a batch of events and the sequence number of its last one in the
+    // cart's history, which EventSource sends back as Last-Event-ID on reconnect. The stream reads at the client's pace and
+    // ends after CART_DELETED or when cart.events.sse-timeout-ms passes.
+    @GetMapping(value = "/{cartId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCartEvents(
+            @PathVariable String cartId,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId) {
+        logger.debug("Streaming events of cart {} after {}", cartId, lastEventId);
+        SseEmitter emitter = new SseEmitter(eventStreamTimeoutMillis);
+        CartEventBus.Subscription subscription = cartService.subscribeToCart(cartId, parseEventId(lastEventId),
+                events -> sendEvents(emitter, events));
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(ex -> subscription.close());
+        return emitter;
     }
     
     @PostMapping("/{cartId}/items")
-    public ResponseEntity<ShoppingCart> addItemToCart(
+    public ResponseEntity<?> addItemToCart(
             @PathVariable String cartId,
-            @RequestBody CartItem item) {
+            @RequestBody CartItem item,
+            @RequestParam(name = "response", defaultValue = RESPONSE_CART) String responseMode,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.debug("Adding item to cart {}: {}", cartId, item);
-        ShoppingCart cart = cartService.addItemToCart(cartId, item);
+        if (RESPONSE_ITEM.equals(responseMode)) {
+            CartItemMutationResponse result = cartService.addItem(cartId, item, CartETags.parseIfMatch(ifMatch));
+            logger.debug("Updated cart total amount: {}", result.getTotalAmount());
+            return ResponseEntity.ok(result);
+        }
+        ShoppingCart cart = cartService.addItemToCart(cartId, item, CartETags.parseIfMatch(ifMatch));
         logger.debug("Updated cart total amount: {}", cart.getTotalAmount());
-        return ResponseEntity.ok(cart);
+        return withETag(cart);
+    }
+    
+    @PostMapping("/{cartId}/items/batch")
+    public ResponseEntity<CartBatchResponse> applyBatch(
+            @PathVariable String cartId,
+            @RequestBody CartBatchRequest request,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Applying batch to cart {}", cartId);
+        CartBatchResponse response = cartService.applyBatch(cartId, request, CartETags.parseIfMatch(ifMatch));
+        logger.debug("Updated cart total amount after batch: {}", response.getTotalAmount());
+        return ResponseEntity.ok(response);
+    }
+    
+    @PatchMapping("/{cartId}/items/{itemId}")
+    public ResponseEntity<?> updateItemQuantity(
+            @PathVariable String cartId,
+            @PathVariable String itemId,
+            @RequestBody CartItemQuantityRequest request,
+            @RequestParam(name = "response", defaultValue = RESPONSE_CART) String responseMode,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.debug("Setting quantity of item {} in cart {} to {}", itemId, cartId, request.getQuantity());
+        if (RESPONSE_ITEM.equals(responseMode)) {
+            CartItemMutationResponse result = cartService.updateItemQuantity(cartId, itemId, request.getQuantity(),
+                    CartETags.parseIfMatch(ifMatch));
+            logger.debug("Updated cart total amount: {}", result.getTotalAmount());
+            return ResponseEntity.ok(result);
+        }
+        ShoppingCart cart = cartService.updateItemQuantityInCart(cartId, itemId, request.getQuantity(),
+                CartETags.parseIfMatch(ifMatch));
+        logger.debug("Updated cart total amount: {}", cart.getTotalAmount());
+        return withETag(cart);
     }
     
     @DeleteMapping("/{cartId}/items/{itemId}")
-    public ResponseEntity<ShoppingCart> removeItemFromCart(
+    public ResponseEntity<?> removeItemFromCart(
             @PathVariable String cartId,
-            @PathVariable String itemId) {
+            @PathVariable String itemId,
+            @RequestParam(name = "response", defaultValue = RESPONSE_CART) String responseMode,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.debug("Removing item {} from cart {}", itemId, cartId);
-        ShoppingCart cart = cartService.removeItemFromCart(cartId, itemId);
+        if (RESPONSE_ITEM.equals(responseMode)) {
+            CartItemMutationResponse result = cartService.removeItem(cartId, itemId,
+                    CartETags.parseIfMatch(ifMatch));
+            logger.debug("Updated cart after item removal. Total amount: {}", result.getTotalAmount());
+            return ResponseEntity.ok(result);
+        }
+        ShoppingCart cart = cartService.removeItemFromCart(cartId, itemId, CartETags.parseIfMatch(ifMatch));
         logger.debug("Updated cart after item removal. Total amount: {}", cart.getTotalAmount());
-        return ResponseEntity.ok(cart);
+        return withETag(cart);
     }
     
     @DeleteMapping("/{cartId}")
-    public ResponseEntity<Void> deleteCart(@PathVariable String cartId) {
+    public ResponseEntity<Void> deleteCart(
+            @PathVariable String cartId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.debug("Deleting cart with ID: {}", cartId);
-        cartService.deleteCart(cartId);
+        cartService.deleteCart(cartId, CartETags.parseIfMatch(ifMatch));
         logger.debug("Cart {} deleted successfully", cartId);
         return ResponseEntity.ok().build();
     }
+    
+    // The header is read up front so a missing cart still gets a 404 before the body starts; the ETag holds
+    // because the writer fails the body if the version has moved on by the last page
+    private ResponseEntity<StreamingResponseBody> streamCart(CartSummary header) {
+        logger.debug("Streaming cart {} at version {}", header.getId(), header.getVersion());
+        StreamingResponseBody body = out -> CartJsonStreamWriter.write(objectMapper, cartService, header, out);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        String eTag = CartETags.of(header.getVersion());
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+        return response.body(body);
+    }
+    
+    // Runs on the subscription's thread; a failed send ends the subscription
+    private void sendEvents(SseEmitter emitter, List<CartEvent> events) {
+        CartEvent last = events.get(events.size() - 1);
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(last.getSequence()))
+                    .name(SSE_EVENT_NAME)
+                    .data(events, MediaType.APPLICATION_JSON));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (CartEventType.CART_DELETED.equals(last.getType())) {
+            emitter.complete();
+        }
+    }
+    
+    private static Long parseEventId(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(eventId.trim());
+        } catch (NumberFormatException ex) {
+            throw new BadRequestException("Invalid event id: " + eventId);
+        }
+    }
+    
+    private ResponseEntity<ShoppingCart> withETag(ShoppingCart cart) {
+        String eTag = CartETags.of(cart.getVersion());
+        if (eTag == null) {
+            return ResponseEntity.ok(cart);
+        }
+        return ResponseEntity.ok().eTag(eTag).body(cart);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.example.shoppingcartapi.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CartBatchRequest {
+    private List<CartItemOperation> operations;
+}
@@ -0,0 +1,25 @@
+package com.example.shoppingcartapi.dto;
+
+import com.example.shoppingcartapi.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchResponse {
+    private String cartId;
+    @JsonIgnore
+    private long totalMinor;
+    private List<CartItemOperationResult> results;
+
+    @JsonProperty("totalAmount")
+    public double getTotalAmount() {
+        return Money.toMajor(totalMinor);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.shoppingcartapi.dto;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemMutationResponse {
+    private String cartId;
+    private CartItem item;
+    @JsonIgnore
+    private long totalMinor;
+
+    @JsonProperty("totalAmount")
+    public double getTotalAmount() {
+        return Money.toMajor(totalMinor);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.shoppingcartapi.dto;
+
+import com.example.shoppingcartapi.model.CartItem;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemOperation {
+
+    public enum Type {
+        ADD,
+        REMOVE,
+        UPDATE_QUANTITY
+    }
+
+    private Type type;
+    private String itemId;
+    private CartItem item;
+    private Integer quantity;
+}
@@ -0,0 +1,22 @@
+package com.example.shoppingcartapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemOperationResult {
+
+    public enum Status {
+        APPLIED,
+        FAILED
+    }
+
+    private int index;
+    private CartItemOperation.Type type;
+    private Status status;
+    private String itemId;
+    private String message;
+}
@@ -0,0 +1,18 @@
+package com.example.shoppingcartapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+// One page of cart lines, each holding only the requested fields; nextCursor is null on the last page
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemPage {
+    private String cartId;
+    private List<Map<String, Object>> items;
+    private String nextCursor;
+}
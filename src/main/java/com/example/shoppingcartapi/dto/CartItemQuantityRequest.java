@@ -0,0 +1,12 @@
+package com.example.shoppingcartapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemQuantityRequest {
+    private Integer quantity;
+}
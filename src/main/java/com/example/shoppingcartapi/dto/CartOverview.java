@@ -0,0 +1,27 @@
+package com.example.shoppingcartapi.dto;
+
+import com.example.shoppingcartapi.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What a cart badge or checkout header needs: no items, just their count
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartOverview {
+    private String cartId;
+    private String status;
+    @JsonIgnore
+    private long totalMinor;
+    private String currency;
+    private Long itemCount;
+    private Long version;
+
+    @JsonProperty("totalAmount")
+    public double getTotalAmount() {
+        return Money.toMajor(totalMinor);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.shoppingcartapi.dto;
+
+import com.example.shoppingcartapi.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Cart header without items, as returned by user lookups
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartSummary {
+    private String id;
+    private String userId;
+    private String status;
+    @JsonIgnore
+    private long totalMinor;
+    private String currency;
+    private Long version;
+
+    @JsonProperty("totalAmount")
+    public double getTotalAmount() {
+        return Money.toMajor(totalMinor);
+    }
+}
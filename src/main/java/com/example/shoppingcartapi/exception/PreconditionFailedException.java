@@ -0,0 +1,12 @@
+package com.example.shoppingcartapi.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+    
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+    
+    public PreconditionFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.shoppingcartapi.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Logs one line for a random sample of requests instead of DEBUG lines for every request
+public class SampledRequestLoggingFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SampledRequestLoggingFilter.class);
+    private final double sampleRate;
+
+    public SampledRequestLoggingFilter(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate || !logger.isInfoEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            logger.info("{} {} -> {} in {} us", request.getMethod(), request.getRequestURI(),
+                    response.getStatus(), (System.nanoTime() - start) / 1_000);
+        }
+    }
+}
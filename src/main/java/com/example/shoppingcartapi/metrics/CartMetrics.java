@@ -0,0 +1,147 @@
+package com.example.shoppingcartapi.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class CartMetrics {
+
+    private final DistributionSummary cartItems;
+    private final Counter optimisticLockRetries;
+    private final Counter optimisticLockConflicts;
+    private final Counter expiredCarts;
+    private final Counter archivedCarts;
+    private final Counter purgedCarts;
+    private final Counter compactedCarts;
+    private final Timer expiryChunks;
+    private final Counter publishedEvents;
+    private final Counter replayedEvents;
+    private final Timer historyReplays;
+    private final DistributionSummary historyTail;
+    private final Counter historySnapshots;
+    private final DistributionSummary mailboxDepth;
+    private final Timer mailboxWait;
+    private final DistributionSummary mailboxBatch;
+
+    public CartMetrics(MeterRegistry registry) {
+        this.cartItems = DistributionSummary.builder("cart.items")
+                .description("Number of items in carts returned by the service")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.optimisticLockRetries = Counter.builder("cart.optimistic_lock.retries")
+                .description("Cart writes retried after an optimistic lock failure")
+                .register(registry);
+        this.optimisticLockConflicts = Counter.builder("cart.optimistic_lock.conflicts")
+                .description("Cart writes that gave up with a conflict after retrying")
+                .register(registry);
+        this.expiredCarts = Counter.builder("cart.expiry.expired")
+                .description("Idle carts moved from ACTIVE to EXPIRED")
+                .register(registry);
+        this.archivedCarts = Counter.builder("cart.expiry.archived")
+                .description("Carts that are no longer ACTIVE moved to the archive tier")
+                .register(registry);
+        this.purgedCarts = Counter.builder("cart.expiry.purged")
+                .description("Expired carts deleted with their lines, from either tier")
+                .register(registry);
+        this.compactedCarts = Counter.builder("cart.expiry.compacted")
+                .description("Deleted carts whose event history and snapshot were dropped")
+                .register(registry);
+        this.expiryChunks = Timer.builder("cart.expiry.chunk")
+                .description("Time spent on one chunk of the expiry sweep, pacing excluded")
+                .register(registry);
+        this.publishedEvents = Counter.builder("cart.events.published")
+                .description("Committed cart events handed to subscribers")
+                .register(registry);
+        this.replayedEvents = Counter.builder("cart.events.replayed")
+                .description("Cart events subscribers read from the event log rather than their queue")
+                .register(registry);
+        this.historyReplays = Timer.builder("cart.history.replay")
+                .description("Time to rebuild one cart from its latest snapshot and the events after it")
+                .register(registry);
+        this.historyTail = DistributionSummary.builder("cart.history.replay.events")
+                .description("Events replayed on top of the snapshot per rebuilt cart")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.historySnapshots = Counter.builder("cart.history.snapshots")
+                .description("Cart event snapshots written")
+                .register(registry);
+        this.mailboxDepth = DistributionSummary.builder("cart.mailbox.depth")
+                .description("Mutations queued in a cart's mailbox, counting the one just added")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.mailboxWait = Timer.builder("cart.mailbox.wait")
+                .description("Time a cart mutation waited in its mailbox before it ran")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.mailboxBatch = DistributionSummary.builder("cart.mailbox.batch")
+                .description("Queued mutations of one cart run together in one scope")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordCartSize(int items) {
+        cartItems.record(items);
+    }
+
+    public void recordRetry() {
+        optimisticLockRetries.increment();
+    }
+
+    public void recordConflict() {
+        optimisticLockConflicts.increment();
+    }
+
+    public void recordExpired(int carts) {
+        expiredCarts.increment(carts);
+    }
+
+    public void recordArchived(int carts) {
+        archivedCarts.increment(carts);
+    }
+
+    public void recordPurged(int carts) {
+        purgedCarts.increment(carts);
+    }
+
+    public void recordCompacted(int carts) {
+        compactedCarts.increment(carts);
+    }
+
+    public void recordExpiryChunk(long nanos) {
+        expiryChunks.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPublished(int events) {
+        publishedEvents.increment(events);
+    }
+
+    public void recordReplayed(int events) {
+        replayedEvents.increment(events);
+    }
+
+    public void recordHistoryReplay(int events, long nanos) {
+        historyTail.record(events);
+        historyReplays.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHistorySnapshot() {
+        historySnapshots.increment();
+    }
+
+    public void recordMailboxDepth(int mutations) {
+        mailboxDepth.record(mutations);
+    }
+
+    public void recordMailboxWait(long nanos) {
+        mailboxWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordMailboxBatch(int mutations) {
+        mailboxBatch.record(mutations);
+    }
+}
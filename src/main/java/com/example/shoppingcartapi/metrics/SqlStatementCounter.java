@@ -0,0 +1,32 @@
+package com.example.shoppingcartapi.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Registered with Hibernate as its statement inspector; counts statements prepared on the current thread
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static int current() {
+        return COUNT.get()[0];
+    }
+
+    // Statements another thread ran on this one's behalf
+    public static void add(int statements) {
+        COUNT.get()[0] += statements;
+    }
+
+    public static void clear() {
+        COUNT.remove();
+    }
+}
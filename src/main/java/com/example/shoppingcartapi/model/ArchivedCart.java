@@ -0,0 +1,53 @@
+package com.example.shoppingcartapi.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+
+import java.time.Instant;
+
+@Data
+@Entity
+// Cold tier: one row per cart that is no longer ACTIVE, its lines packed into a compressed snapshot.
+// The header columns mirror shopping_carts so listings and the purge never open a snapshot.
+@Table(name = "archived_carts", indexes = {
+        @Index(name = "idx_archived_carts_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_archived_carts_status_last_modified", columnList = "status, last_modified")})
+public class ArchivedCart {
+    // The id the cart had in shopping_carts
+    @Id
+    @Type(CompactIdType.class)
+    private String id;
+    
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+    
+    @Column(name = "status", nullable = false)
+    private String status;
+    
+    @Convert(converter = MoneyColumnConverter.class)
+    @Column(name = "total_amount", precision = 19, scale = 2)
+    private long totalMinor;
+    
+    @Column(name = "currency", length = 3)
+    private String currency;
+    
+    @Column(name = "version")
+    private Long version;
+    
+    @Column(name = "last_modified")
+    private Instant lastModified;
+    
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+    
+    @Column(name = "item_count", nullable = false)
+    private int itemCount;
+    
+    // Format byte followed by the deflated lines; written and read by CartSnapshots only
+    @ToString.Exclude
+    @Lob
+    @Column(name = "snapshot", nullable = false)
+    private byte[] snapshot;
+}
@@ -0,0 +1,74 @@
+package com.example.shoppingcartapi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.Type;
+
+import java.time.Instant;
+
+@Data
+@Entity
+@JsonInclude(JsonInclude.Include.NON_NULL)
+// Append-only change log: a row is inserted with the write it describes and never updated.
+// A cart's events are numbered 1, 2, 3... in the order its writes commit, so (cart_id, seq) replays one cart's
+// changes in order and a reader resuming after a seq never skips one. Ids are unique across carts but only
+// roughly follow commit order. (type, occurred_at) finds deleted carts whose history can go.
+@Table(name = "cart_events",
+        uniqueConstraints = @UniqueConstraint(name = "uk_cart_events_cart_id_seq", columnNames = {"cart_id", "seq"}),
+        indexes = @Index(name = "idx_cart_events_type_occurred_at", columnList = "type, occurred_at"))
+public class CartEvent {
+    // Pooled so a batch of appends costs one sequence call per 50 events
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_events_seq")
+    @SequenceGenerator(name = "cart_events_seq", sequenceName = "cart_events_seq", allocationSize = 50)
+    private Long id;
+    
+    @Type(CompactIdType.class)
+    @Column(name = "cart_id", nullable = false)
+    private String cartId;
+    
+    // Position in the cart's history, set by CartStore.appendEvents
+    @Column(name = "seq", nullable = false)
+    private Long sequence;
+    
+    // One of CartEventType
+    @Column(name = "type", nullable = false, length = 32)
+    private String type;
+    
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+    
+    // Cart events only
+    @Column(name = "user_id")
+    private String userId;
+    
+    @Column(name = "currency", length = 3)
+    private String currency;
+    
+    // Item events only
+    @Column(name = "item_id", length = 36)
+    private String itemId;
+    
+    @Column(name = "product_id")
+    private String productId;
+    
+    @Column(name = "product_name")
+    private String productName;
+    
+    @JsonIgnore
+    @Convert(converter = MoneyColumnConverter.class)
+    @Column(name = "price", precision = 19, scale = 2)
+    private Long priceMinor;
+    
+    @Column(name = "quantity")
+    private Integer quantity;
+    
+    // The converter reads a NULL price back as zero, so cart events are told apart by their missing item
+    @JsonProperty("price")
+    public Double getPrice() {
+        return itemId == null || priceMinor == null ? null : Money.toMajor(priceMinor);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.shoppingcartapi.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+
+import java.time.Instant;
+
+@Data
+@Entity
+// A cart's state as of one event of its history: replaying the cart's events after last_seq on top of it
+// gives the current state. One row per cart, replaced by each newer snapshot.
+@Table(name = "cart_event_snapshots")
+public class CartEventSnapshot {
+    @Id
+    @Type(CompactIdType.class)
+    @Column(name = "cart_id")
+    private String cartId;
+    
+    // Sequence number of the last event folded into this snapshot
+    @Column(name = "last_seq", nullable = false)
+    private long lastSequence;
+    
+    @Column(name = "user_id")
+    private String userId;
+    
+    @Column(name = "status")
+    private String status;
+    
+    @Column(name = "currency", length = 3)
+    private String currency;
+    
+    @Convert(converter = MoneyColumnConverter.class)
+    @Column(name = "total_amount", precision = 19, scale = 2)
+    private long totalMinor;
+    
+    // When that last event happened
+    @Column(name = "last_modified")
+    private Instant lastModified;
+    
+    @Column(name = "taken_at", nullable = false)
+    private Instant takenAt;
+    
+    @Column(name = "item_count", nullable = false)
+    private int itemCount;
+    
+    // Same encoding as ArchivedCart.snapshot; written and read by CartSnapshots only
+    @ToString.Exclude
+    @Lob
+    @Column(name = "snapshot", nullable = false)
+    private byte[] snapshot;
+}
@@ -0,0 +1,16 @@
+package com.example.shoppingcartapi.model;
+
+// Kinds of entries in the cart event log
+public final class CartEventType {
+
+    public static final String CART_CREATED = "CART_CREATED";
+    // quantity is the quantity added; itemId is the line it went into, which may already have existed
+    public static final String ITEM_ADDED = "ITEM_ADDED";
+    // quantity is the line's new quantity
+    public static final String ITEM_QUANTITY_CHANGED = "ITEM_QUANTITY_CHANGED";
+    public static final String ITEM_REMOVED = "ITEM_REMOVED";
+    public static final String CART_DELETED = "CART_DELETED";
+
+    private CartEventType() {
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.shoppingcartapi.model;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Time-ordered ids (UUIDv7): a 48-bit millisecond timestamp, then a 12-bit sequence that keeps ids
+// strictly increasing within this JVM, then 62 random bits. New rows land at the right edge of the
+// id indexes instead of on random pages. The API keeps the canonical string form.
+public final class CartIds {
+
+    // Bound instead of an unparseable id; never generated, so lookups by it find nothing
+    public static final UUID NONE = new UUID(0L, 0L);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final AtomicLong LAST_STAMP = new AtomicLong();
+
+    private CartIds() {
+    }
+
+    public static String next() {
+        return nextUuid().toString();
+    }
+
+    public static UUID nextUuid() {
+        // A burst of more than 4096 ids in one millisecond borrows from the next one
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        long stamp = LAST_STAMP.updateAndGet(last -> Math.max(now, last + 1));
+        long millis = stamp >>> SEQUENCE_BITS;
+        long msb = (millis << 16) | 0x7000L | (stamp & SEQUENCE_MASK);
+        long lsb = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    // Ids of earlier rows are random (version 4) UUIDs and parse the same way
+    public static UUID toUuid(String id) {
+        if (!isWellFormed(id)) {
+            return NONE;
+        }
+        return UUID.fromString(id);
+    }
+
+    public static boolean isWellFormed(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static long timestampMillis(String id) {
+        return toUuid(id).getMostSignificantBits() >>> 16;
+    }
+}
@@ -1,16 +1,25 @@
 package com.example.shoppingcartapi.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Type;
 
 @Data
 @Entity
-@Table(name = "cart_items")
+// One line per product: adding a product already in the cart raises the quantity of its line.
+// The unique index also serves lookups by cart_id alone; (cart_id, id) keeps keyset paging index-bound.
+@Table(name = "cart_items", uniqueConstraints = @UniqueConstraint(
+        name = "uk_cart_items_cart_product", columnNames = {"cart_id", "product_id"}),
+        indexes = @Index(name = "idx_cart_items_cart_id_id", columnList = "cart_id, id"))
 public class CartItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedId
+    @Type(CompactIdType.class)
     private String id;
     
+    @Type(CompactIdType.class)
     @Column(name = "cart_id")
     private String cartId;
     
@@ -20,9 +29,25 @@ public class CartItem {
     @Column(name = "product_name", nullable = false)
     private String productName;
     
-    @Column(name = "price", nullable = false)
-    private Double price;
+    // Minor units; the column keeps decimal amounts (see MoneyColumnConverter)
+    @JsonIgnore
+    @Convert(converter = MoneyColumnConverter.class)
+    @Column(name = "price", nullable = false, precision = 19, scale = 2)
+    private Long priceMinor;
     
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
+    
+    // The JSON API keeps decimal prices; totals are computed from priceMinor only
+    @JsonProperty("price")
+    public Double getPrice() {
+        return priceMinor == null ? null : Money.toMajor(priceMinor);
+    }
+    
+    // An amount out of range is left unset, so validation rejects it as an invalid price instead of the JSON
+    // read failing
+    @JsonProperty("price")
+    public void setPrice(Double price) {
+        this.priceMinor = price == null || !Money.isAcceptable(price) ? null : Money.toMinor(price);
+    }
 } 
\ No newline at end of file
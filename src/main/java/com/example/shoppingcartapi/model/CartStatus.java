@@ -0,0 +1,11 @@
+package com.example.shoppingcartapi.model;
+
+// Cart lifecycle: ACTIVE until idle for cart.expiry.ttl, then EXPIRED until purged
+public final class CartStatus {
+
+    public static final String ACTIVE = "ACTIVE";
+    public static final String EXPIRED = "EXPIRED";
+
+    private CartStatus() {
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.shoppingcartapi.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+// Amounts are carried as long minor units (cents), so totals add up exactly and never box.
+// Decimals only appear at the edges: the JSON API and the decimal amount columns.
+public final class Money {
+
+    public static final int SCALE = 2;
+    public static final String DEFAULT_CURRENCY = "USD";
+    // Largest price or line total taken from a request: sums of lines stay far from overflowing a long
+    public static final long MAX_AMOUNT_MINOR = 1_000_000_000_000_000L;
+    private static final double MINOR_PER_MAJOR = 100.0;
+
+    private Money() {
+    }
+
+    // Whether toMinor can take the amount and the result stays within MAX_AMOUNT_MINOR either way
+    public static boolean isAcceptable(double amount) {
+        return Double.isFinite(amount) && Math.abs(amount) <= MAX_AMOUNT_MINOR / MINOR_PER_MAJOR;
+    }
+
+    // For a non-negative price and a positive quantity
+    public static boolean fitsLine(long priceMinor, long quantity) {
+        return priceMinor <= MAX_AMOUNT_MINOR / quantity;
+    }
+
+    public static long toMinor(double amount) {
+        return toMinor(BigDecimal.valueOf(amount));
+    }
+
+    public static long toMinor(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    // Correctly rounded, so the double prints as the exact two-decimal amount for any realistic value
+    public static double toMajor(long minor) {
+        return minor / MINOR_PER_MAJOR;
+    }
+
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    public static long lineTotal(long priceMinor, int quantity) {
+        return Math.multiplyExact(priceMinor, quantity);
+    }
+
+    // ISO 4217 codes whose minor unit fits SCALE; three-decimal currencies are not supported
+    public static boolean isSupportedCurrency(String code) {
+        if (code == null) {
+            return false;
+        }
+        try {
+            int digits = Currency.getInstance(code).getDefaultFractionDigits();
+            return digits >= 0 && digits <= SCALE;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
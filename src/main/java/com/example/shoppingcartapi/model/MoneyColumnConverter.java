@@ -0,0 +1,22 @@
+package com.example.shoppingcartapi.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.math.BigDecimal;
+
+// Maps minor units onto the decimal amount columns, so rows written before amounts became
+// minor units read back unchanged. A NULL amount reads as zero, as the native total updates assume.
+@Converter
+public class MoneyColumnConverter implements AttributeConverter<Long, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(Long minor) {
+        return minor == null ? null : Money.toDecimal(minor);
+    }
+
+    @Override
+    public Long convertToEntityAttribute(BigDecimal amount) {
+        return amount == null ? 0L : Money.toMinor(amount);
+    }
+}
@@ -1,27 +1,70 @@
 package com.example.shoppingcartapi.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+import org.hibernate.annotations.UpdateTimestamp;
+import java.time.Instant;
 import java.util.List;
 
 @Data
 @Entity
-@Table(name = "shopping_carts")
+// (status, last_modified) lets the expiry sweeper walk idle carts oldest first without a scan
+@Table(name = "shopping_carts", indexes = {
+        @Index(name = "idx_shopping_carts_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_shopping_carts_status_last_modified", columnList = "status, last_modified")})
 public class ShoppingCart {
+    // Time-ordered and stored as a 16-byte UUID (see CartIds and CompactIdType)
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedId
+    @Type(CompactIdType.class)
     private String id;
     
     @Column(name = "user_id", nullable = false)
     private String userId;
     
+    // Excluded so logging a cart never walks (or lazily loads) its items
+    @ToString.Exclude
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
-    @JoinColumn(name = "cart_id")
+    // CartItem.cartId owns the column; letting the collection write it too costs an UPDATE per inserted line
+    @JoinColumn(name = "cart_id", insertable = false, updatable = false,
+            foreignKey = @ForeignKey(name = "fk_cart_items_cart"))
     private List<CartItem> items;
     
-    @Column(name = "total_amount")
-    private Double totalAmount;
+    // Minor units; the column keeps decimal amounts (see MoneyColumnConverter)
+    @JsonIgnore
+    @Convert(converter = MoneyColumnConverter.class)
+    @Column(name = "total_amount", precision = 19, scale = 2)
+    private long totalMinor;
+    
+    // ISO 4217 code shared by every amount in the cart
+    @Column(name = "currency", length = 3)
+    private String currency;
     
     @Column(name = "status")
     private String status;
+    
+    @Version
+    @Column(name = "version")
+    private Long version;
+    
+    // Stamped on every write, including the native total updates; drives expiry, not part of the API
+    @JsonIgnore
+    @UpdateTimestamp
+    @Column(name = "last_modified")
+    private Instant lastModified;
+    
+    // The JSON API keeps a decimal total
+    @JsonProperty("totalAmount")
+    public double getTotalAmount() {
+        return Money.toMajor(totalMinor);
+    }
+    
+    @JsonProperty("totalAmount")
+    public void setTotalAmount(Double totalAmount) {
+        this.totalMinor = totalAmount == null ? 0L : Money.toMinor(totalAmount);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.ArchivedCart;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ArchivedCartRepository extends JpaRepository<ArchivedCart, String> {
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(a.id, a.userId, a.status, a.totalMinor, a.currency, a.version) " +
+            "FROM ArchivedCart a WHERE a.userId = :userId")
+    List<CartSummary> findSummariesByUserId(@Param("userId") String userId);
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(a.id, a.userId, a.status, a.totalMinor, a.currency, a.version) " +
+            "FROM ArchivedCart a WHERE a.userId = :userId AND a.status = :status")
+    List<CartSummary> findSummariesByUserIdAndStatus(@Param("userId") String userId, @Param("status") String status);
+
+    // Expiry over the cold tier, served by idx_archived_carts_status_last_modified
+    @Query("SELECT a.id FROM ArchivedCart a WHERE a.status = :status AND a.lastModified < :cutoff " +
+            "ORDER BY a.lastModified")
+    List<String> findIdleCartIds(@Param("status") String status, @Param("cutoff") Instant cutoff, Limit limit);
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(a.id, a.userId, a.status, a.totalMinor, a.currency, a.version) " +
+            "FROM ArchivedCart a WHERE a.id IN :cartIds AND a.status = :status AND a.lastModified < :cutoff")
+    List<CartSummary> findIdleSummaries(@Param("cartIds") Collection<String> cartIds, @Param("status") String status,
+                                        @Param("cutoff") Instant cutoff);
+
+    @Modifying
+    @Query("DELETE FROM ArchivedCart a WHERE a.id IN :cartIds AND a.status = :status AND a.lastModified < :cutoff")
+    int deleteIfIdle(@Param("cartIds") Collection<String> cartIds, @Param("status") String status,
+                     @Param("cutoff") Instant cutoff);
+}
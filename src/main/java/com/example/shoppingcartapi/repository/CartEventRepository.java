@@ -0,0 +1,42 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.CartEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CartEventRepository extends JpaRepository<CartEvent, Long> {
+
+    // One cart's events after a given sequence, served by uk_cart_events_cart_id_seq
+    List<CartEvent> findByCartIdAndSequenceGreaterThanOrderBySequenceAsc(String cartId, Long afterSequence,
+                                                                        Limit limit);
+
+    List<CartEvent> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    // The last sequence of each of the carts that has events, as (cartId, sequence) pairs
+    @Query("SELECT e.cartId, MAX(e.sequence) FROM CartEvent e WHERE e.cartId IN :cartIds GROUP BY e.cartId")
+    List<Object[]> findLastSequences(@Param("cartIds") Collection<String> cartIds);
+
+    // Every cart with a history, in id order; the leading cart_id column of the index serves the walk
+    @Query("SELECT DISTINCT e.cartId FROM CartEvent e ORDER BY e.cartId")
+    List<String> findCartIds(Limit limit);
+
+    @Query("SELECT DISTINCT e.cartId FROM CartEvent e WHERE e.cartId > :afterCartId ORDER BY e.cartId")
+    List<String> findCartIdsAfter(@Param("afterCartId") String afterCartId, Limit limit);
+
+    // Carts with an event of type logged before cutoff, oldest first, served by idx_cart_events_type_occurred_at
+    @Query("SELECT e.cartId FROM CartEvent e WHERE e.type = :type AND e.occurredAt < :cutoff ORDER BY e.occurredAt")
+    List<String> findCartIdsByTypeBefore(@Param("type") String type, @Param("cutoff") Instant cutoff, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM CartEvent e WHERE e.cartId IN :cartIds")
+    int deleteByCartIds(@Param("cartIds") Collection<String> cartIds);
+}
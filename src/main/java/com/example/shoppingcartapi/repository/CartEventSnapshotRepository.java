@@ -0,0 +1,26 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface CartEventSnapshotRepository extends JpaRepository<CartEventSnapshot, String> {
+
+    // Locks the row until commit, so snapshots of one cart are compared and saved one at a time
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM CartEventSnapshot s WHERE s.cartId = :cartId")
+    Optional<CartEventSnapshot> findForUpdate(@Param("cartId") String cartId);
+
+    @Modifying
+    @Query("DELETE FROM CartEventSnapshot s WHERE s.cartId IN :cartIds")
+    int deleteByCartIds(@Param("cartIds") Collection<String> cartIds);
+}
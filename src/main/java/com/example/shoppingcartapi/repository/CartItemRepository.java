@@ -0,0 +1,54 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.CartItem;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CartItemRepository extends JpaRepository<CartItem, String> {
+
+    Optional<CartItem> findByIdAndCartId(String id, String cartId);
+
+    List<CartItem> findByCartIdAndIdIn(String cartId, Collection<String> ids);
+
+    List<CartItem> findByCartIdAndProductIdIn(String cartId, Collection<String> productIds);
+
+    // Keyset pages ordered by id, served by idx_cart_items_cart_id_id
+    List<CartItem> findByCartIdOrderByIdAsc(String cartId, Limit limit);
+
+    List<CartItem> findByCartIdAndIdGreaterThanOrderByIdAsc(String cartId, String afterId, Limit limit);
+
+    // Write-behind flush: ids are assigned in memory, so rows are written as-is
+    @Modifying
+    @Query(value = "INSERT INTO cart_items (id, cart_id, product_id, product_name, price, quantity) " +
+            "VALUES (:id, :cartId, :productId, :productName, :price, :quantity)",
+            nativeQuery = true)
+    int insertRow(@Param("id") String id, @Param("cartId") String cartId, @Param("productId") String productId,
+                  @Param("productName") String productName, @Param("price") BigDecimal price,
+                  @Param("quantity") Integer quantity);
+
+    @Modifying
+    @Query(value = "DELETE FROM cart_items WHERE cart_id = :cartId", nativeQuery = true)
+    int deleteRowsByCartId(@Param("cartId") String cartId);
+
+    @Modifying
+    @Query("DELETE FROM CartItem i WHERE i.cartId IN :cartIds")
+    int deleteRowsByCartIds(@Param("cartIds") Collection<String> cartIds);
+
+    // Expiry: lines of the given carts that are still idle in status, in one statement
+    @Modifying
+    @Query("DELETE FROM CartItem i WHERE i.cartId IN (SELECT c.id FROM ShoppingCart c " +
+            "WHERE c.id IN :cartIds AND c.status = :status AND c.lastModified < :cutoff)")
+    int deleteByIdleCarts(@Param("cartIds") Collection<String> cartIds, @Param("status") String status,
+                          @Param("cutoff") Instant cutoff);
+}
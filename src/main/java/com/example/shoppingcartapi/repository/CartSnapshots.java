@@ -0,0 +1,157 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.ArchivedCart;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartIds;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Binary snapshot of a cart's lines for the archive tier and the event log. The first byte is the format, so rows
+// written by an older format stay readable; everything after it is deflated.
+// Format 1: line count, then per line its id (16 bytes when it is a UUID), product id, product name,
+// price in minor units and quantity.
+public final class CartSnapshots {
+
+    public static final byte FORMAT_V1 = 1;
+    private static final byte UUID_ID = 0;
+    private static final byte STRING_ID = 1;
+
+    private CartSnapshots() {
+    }
+
+    public static ArchivedCart archive(ShoppingCart cart, Instant archivedAt) {
+        List<CartItem> items = cart.getItems() == null ? List.of() : cart.getItems();
+        ArchivedCart archived = new ArchivedCart();
+        archived.setId(cart.getId());
+        archived.setUserId(cart.getUserId());
+        archived.setStatus(cart.getStatus());
+        archived.setTotalMinor(cart.getTotalMinor());
+        archived.setCurrency(cart.getCurrency());
+        archived.setVersion(cart.getVersion());
+        archived.setLastModified(cart.getLastModified());
+        archived.setArchivedAt(archivedAt);
+        archived.setItemCount(items.size());
+        archived.setSnapshot(encode(items));
+        return archived;
+    }
+
+    public static ShoppingCart restore(ArchivedCart archived) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(archived.getId());
+        cart.setUserId(archived.getUserId());
+        cart.setStatus(archived.getStatus());
+        cart.setTotalMinor(archived.getTotalMinor());
+        cart.setCurrency(archived.getCurrency());
+        cart.setVersion(archived.getVersion());
+        cart.setLastModified(archived.getLastModified());
+        cart.setItems(decode(archived.getId(), archived.getSnapshot()));
+        return cart;
+    }
+
+    public static CartEventSnapshot snapshot(ShoppingCart cart, long lastSequence, Instant takenAt) {
+        List<CartItem> items = cart.getItems() == null ? List.of() : cart.getItems();
+        CartEventSnapshot snapshot = new CartEventSnapshot();
+        snapshot.setCartId(cart.getId());
+        snapshot.setLastSequence(lastSequence);
+        snapshot.setUserId(cart.getUserId());
+        snapshot.setStatus(cart.getStatus());
+        snapshot.setCurrency(cart.getCurrency());
+        snapshot.setTotalMinor(cart.getTotalMinor());
+        snapshot.setLastModified(cart.getLastModified());
+        snapshot.setTakenAt(takenAt);
+        snapshot.setItemCount(items.size());
+        snapshot.setSnapshot(encode(items));
+        return snapshot;
+    }
+
+    // The cart carries no version: that belongs to the row, not to the history
+    public static ShoppingCart restore(CartEventSnapshot snapshot) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(snapshot.getCartId());
+        cart.setUserId(snapshot.getUserId());
+        cart.setStatus(snapshot.getStatus());
+        cart.setTotalMinor(snapshot.getTotalMinor());
+        cart.setCurrency(snapshot.getCurrency());
+        cart.setLastModified(snapshot.getLastModified());
+        cart.setItems(decode(snapshot.getCartId(), snapshot.getSnapshot()));
+        return cart;
+    }
+
+    public static byte[] encode(List<CartItem> items) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(FORMAT_V1);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(items.size());
+            for (CartItem item : items) {
+                writeId(out, item.getId());
+                out.writeUTF(item.getProductId());
+                out.writeUTF(item.getProductName());
+                out.writeLong(item.getPriceMinor() == null ? 0L : item.getPriceMinor());
+                out.writeInt(item.getQuantity() == null ? 0 : item.getQuantity());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<CartItem> decode(String cartId, byte[] snapshot) {
+        if (snapshot == null || snapshot.length == 0 || snapshot[0] != FORMAT_V1) {
+            throw new IllegalStateException("Unsupported snapshot format for cart " + cartId);
+        }
+        ByteArrayInputStream bytes = new ByteArrayInputStream(snapshot, 1, snapshot.length - 1);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(bytes))) {
+            int count = in.readInt();
+            List<CartItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                CartItem item = new CartItem();
+                item.setId(readId(in));
+                item.setCartId(cartId);
+                item.setProductId(in.readUTF());
+                item.setProductName(in.readUTF());
+                item.setPriceMinor(in.readLong());
+                item.setQuantity(in.readInt());
+                items.add(item);
+            }
+            return items;
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt snapshot for cart " + cartId, e);
+        }
+    }
+
+    private static void writeId(DataOutputStream out, String id) throws IOException {
+        if (CartIds.isWellFormed(id)) {
+            UUID uuid = UUID.fromString(id);
+            out.writeByte(UUID_ID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(STRING_ID);
+            out.writeUTF(id);
+        }
+    }
+
+    private static String readId(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        if (kind == UUID_ID) {
+            return new UUID(in.readLong(), in.readLong()).toString();
+        }
+        if (kind == STRING_ID) {
+            return in.readUTF();
+        }
+        throw new IOException("Unknown line id encoding " + kind);
+    }
+}
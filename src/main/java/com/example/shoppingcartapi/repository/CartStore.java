@@ -0,0 +1,160 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Storage SPI used by the cart service. Engines are selected with cart.storage.engine.
+// Version-checked writes throw Spring's OptimisticLockingFailureException when the cart moved on.
+public interface CartStore {
+
+    // Inserts a new cart or writes back a loaded one, checking its version
+    ShoppingCart save(ShoppingCart cart);
+
+    Optional<ShoppingCart> findById(String cartId);
+
+    void delete(ShoppingCart cart);
+
+    // Deletes the cart and its lines without loading them; returns 0 if it is missing or at another version
+    int deleteIfVersion(String cartId, long expectedVersion);
+
+    Optional<CartSummary> findSummaryById(String cartId);
+
+    Optional<CartOverview> findOverviewById(String cartId);
+
+    Optional<Long> findVersionById(String cartId);
+
+    // Stored total in minor units
+    Optional<Long> findTotalMinorById(String cartId);
+
+    // Headers of a user's carts, archived ones included; a null status matches any
+    List<CartSummary> findSummariesByUser(String userId, String status);
+
+    // Adds deltaMinor to the stored total and bumps the version; returns 0 if the cart does not exist
+    int adjustTotal(String cartId, long deltaMinor);
+
+    // As adjustTotal, but only while the cart is still at expectedVersion
+    int adjustTotalIfVersion(String cartId, long deltaMinor, long expectedVersion);
+
+    CartItem saveItem(CartItem item);
+
+    // Inserts new lines and writes back changed quantities of existing ones
+    void saveItems(Collection<CartItem> items);
+
+    Optional<CartItem> findItem(String cartId, String itemId);
+
+    List<CartItem> findItems(String cartId, Collection<String> itemIds);
+
+    List<CartItem> findItemsByProduct(String cartId, Collection<String> productIds);
+
+    // Up to limit lines with ids after afterItemId (null for the first page), in id order
+    List<CartItem> findItemPage(String cartId, String afterItemId, int limit);
+
+    // Visits every line in id order, holding at most one page of them at a time
+    default void forEachItem(String cartId, int pageSize, Consumer<CartItem> action) {
+        String afterItemId = null;
+        List<CartItem> page;
+        do {
+            page = findItemPage(cartId, afterItemId, pageSize);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterItemId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+    }
+
+    void deleteItem(CartItem item);
+
+    void deleteItems(Collection<CartItem> items);
+
+    List<String> findCartIdsWithTotalDrift();
+
+    // Sets the stored total to the sum of the lines and bumps the version; returns 0 if the cart does not exist
+    int recomputeTotal(String cartId);
+
+    // Up to limit carts in status not written since cutoff, least recently written first; archived carts included
+    List<String> findIdleCartIds(String status, Instant cutoff, int limit);
+
+    // Moves those of the given carts still idle in fromStatus to toStatus; returns how many moved
+    int updateStatusIfIdle(Collection<String> cartIds, String fromStatus, String toStatus, Instant cutoff);
+
+    // Deletes those of the given carts still idle in status, lines and archived copies included, and appends
+    // the event deletedEvent makes of each one's header along with the deletes; returns how many carts went
+    int deleteIfIdle(Collection<String> cartIds, String status, Instant cutoff,
+                     Function<CartSummary, CartEvent> deletedEvent);
+
+    // Stamps up to limit carts in status that have no last-modified time yet; only legacy rows lack one
+    default int stampUnmodified(String status, int limit) {
+        return 0;
+    }
+
+    // Archive tier. Engines without one keep every cart hot, so these find and move nothing.
+    // Up to limit hot carts that are no longer ACTIVE
+    default List<String> findArchivableCartIds(int limit) {
+        return List.of();
+    }
+
+    // Moves those of the given carts that are still not ACTIVE to the archive; returns how many moved
+    default int archive(Collection<String> cartIds) {
+        return 0;
+    }
+
+    // Archived carts are read-only; findById and the other lookups only see hot carts
+    default Optional<ShoppingCart> findArchivedById(String cartId) {
+        return Optional.empty();
+    }
+
+    // Event log. Appends belong to the surrounding inCartScope, so they stand or fall with the writes they describe.
+    // Each event gets the next sequence number of its cart, which is gap-free and follows the order the cart's
+    // writes commit in. Ids are unique, but an event may commit after one with a greater id.
+    void appendEvents(List<CartEvent> events);
+
+    // Up to limit events of one cart after afterSequence, in sequence order
+    List<CartEvent> findEvents(String cartId, long afterSequence, int limit);
+
+    // Up to limit events of every cart after afterEventId, in id order; an event committed after the read
+    // may still turn up with a smaller id
+    List<CartEvent> findEventsAfter(long afterEventId, int limit);
+
+    // Up to limit ids of carts with events in the log, after afterCartId (null for the first page), in id order
+    List<String> findEventCartIds(String afterCartId, int limit);
+
+    // Up to limit carts whose history ends in a CART_DELETED logged before cutoff, the longest deleted first
+    List<String> findDeletedEventCartIds(Instant cutoff, int limit);
+
+    // Drops the whole history of the given carts, their event snapshots included
+    void deleteEvents(Collection<String> cartIds);
+
+    // Event snapshots: at most one per cart
+    Optional<CartEventSnapshot> findEventSnapshot(String cartId);
+
+    // Replaces the stored snapshot only if this one is further along in the cart's history. Two first snapshots
+    // of a cart saved at once may leave the later one failing with a DataIntegrityViolationException.
+    void saveEventSnapshot(CartEventSnapshot snapshot);
+
+    void deleteEventSnapshot(String cartId);
+
+    // Runs several calls as one unit; engines without transactions serialize them per cart
+    <T> T inCartScope(String cartId, Supplier<T> work);
+
+    // Whether a failed inCartScope undoes the writes it made before failing
+    default boolean isTransactional() {
+        return false;
+    }
+
+    // Sends the writes made so far in the current inCartScope to the database and forgets the rows read, so
+    // what runs next in the scope reads them as they now are and fails on its own writes only
+    default void flushScope() {
+    }
+}
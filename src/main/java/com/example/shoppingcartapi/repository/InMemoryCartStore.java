@@ -0,0 +1,749 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.CartIds;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.Money;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Heap-resident engine: carts live in a concurrent map, writers serialize on a lock stripe
+// chosen by cart id and lines are kept column-wise so totals never walk objects.
+// Nothing survives a restart and there is no rollback, so a failed inCartScope keeps its earlier writes.
+// The event log keeps the latest cart.storage.memory.event-log-size events.
+@Repository
+@ConditionalOnProperty(name = "cart.storage.engine", havingValue = "memory")
+public class InMemoryCartStore implements CartStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryCartStore.class);
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int DEFAULT_EVENT_LOG_SIZE = 100_000;
+    private final Map<String, CartRecord> carts = new ConcurrentHashMap<>();
+    // Secondary index for user lookups, maintained under the cart's stripe
+    private final Map<String, Set<String>> cartsByUser = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes;
+    // Bounded event log keyed by id; ids are dense, so the oldest are trimmed by id rather than by counting.
+    // Ids are handed out and logged under eventLock, so the log never shows an id before a smaller one.
+    private final ConcurrentSkipListMap<Long, CartEvent> events = new ConcurrentSkipListMap<>();
+    private final ReentrantLock eventLock = new ReentrantLock();
+    private long lastEventId;
+    // Greatest id trimmed from the log, under eventLock
+    private long trimmedThrough;
+    // The same events by cart and sequence, and the last sequence each cart has handed out, kept under its stripe.
+    // Events trimmed from the log stay here until the cart's event snapshot covers them.
+    private final Map<String, ConcurrentSkipListMap<Long, CartEvent>> cartEvents = new ConcurrentHashMap<>();
+    private final Map<String, Long> eventSequences = new ConcurrentHashMap<>();
+    private final Map<String, CartEventSnapshot> eventSnapshots = new ConcurrentHashMap<>();
+    private final int eventLogSize;
+
+    public InMemoryCartStore(int stripes) {
+        this(stripes, DEFAULT_EVENT_LOG_SIZE);
+    }
+
+    @Autowired
+    public InMemoryCartStore(@Value("${cart.storage.memory.stripes:64}") int stripes,
+                             @Value("${cart.storage.memory.event-log-size:100000}") int eventLogSize) {
+        this.eventLogSize = Math.max(1, eventLogSize);
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit((stripes - 1) << 1);
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        logger.info("In-memory cart store initialised with {} lock stripes", size);
+    }
+
+    @Override
+    public ShoppingCart save(ShoppingCart cart) {
+        if (cart.getId() == null) {
+            cart.setId(CartIds.next());
+        }
+        return write(cart, Instant.now());
+    }
+
+    // Puts a cart read from elsewhere into memory as it is, keeping its version and last-modified time
+    ShoppingCart load(ShoppingCart cart) {
+        return write(cart, cart.getLastModified() == null ? Instant.now() : cart.getLastModified());
+    }
+
+    private ShoppingCart write(ShoppingCart cart, Instant lastModified) {
+        return inCartScope(cart.getId(), () -> {
+            CartRecord record = carts.get(cart.getId());
+            if (record != null && (cart.getVersion() == null || cart.getVersion() != record.version)) {
+                throw new ObjectOptimisticLockingFailureException(ShoppingCart.class, cart.getId());
+            }
+            // Nothing rolls back a half-written record, so every check comes before the first change
+            checkDistinctProducts(cart);
+            if (record == null) {
+                record = new CartRecord(cart.getId());
+                record.version = cart.getVersion() == null ? 0L : cart.getVersion();
+                carts.put(record.id, record);
+            } else {
+                record.version++;
+            }
+            if (!Objects.equals(record.userId, cart.getUserId())) {
+                unindex(record.userId, record.id);
+                index(cart.getUserId(), record.id);
+            }
+            record.userId = cart.getUserId();
+            record.status = cart.getStatus();
+            record.totalMinor = cart.getTotalMinor();
+            record.currency = cart.getCurrency();
+            record.lastModified = lastModified;
+            record.clearItems();
+            if (cart.getItems() != null) {
+                for (CartItem item : cart.getItems()) {
+                    item.setCartId(record.id);
+                    record.append(item);
+                }
+            }
+            return record.toCart();
+        });
+    }
+
+    // What CartRecord.append would reject halfway through the lines
+    private static void checkDistinctProducts(ShoppingCart cart) {
+        if (cart.getItems() == null) {
+            return;
+        }
+        Set<String> productIds = new HashSet<>();
+        for (CartItem item : cart.getItems()) {
+            if (item.getProductId() != null && !productIds.add(item.getProductId())) {
+                throw new DataIntegrityViolationException(
+                        "Cart " + cart.getId() + " already has a line for product " + item.getProductId());
+            }
+        }
+    }
+
+    @Override
+    public Optional<ShoppingCart> findById(String cartId) {
+        return read(cartId, CartRecord::toCart);
+    }
+
+    @Override
+    public void delete(ShoppingCart cart) {
+        inCartScope(cart.getId(), () -> {
+            CartRecord record = carts.get(cart.getId());
+            if (record != null) {
+                if (cart.getVersion() != null && cart.getVersion() != record.version) {
+                    throw new ObjectOptimisticLockingFailureException(ShoppingCart.class, cart.getId());
+                }
+                carts.remove(cart.getId());
+                unindex(record.userId, record.id);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteIfVersion(String cartId, long expectedVersion) {
+        return inCartScope(cartId, () -> {
+            CartRecord record = carts.get(cartId);
+            if (record == null || record.version != expectedVersion) {
+                return 0;
+            }
+            carts.remove(cartId);
+            unindex(record.userId, cartId);
+            return 1;
+        });
+    }
+
+    @Override
+    public Optional<CartSummary> findSummaryById(String cartId) {
+        return read(cartId, CartRecord::toSummary);
+    }
+
+    @Override
+    public Optional<CartOverview> findOverviewById(String cartId) {
+        return read(cartId, record -> new CartOverview(record.id, record.status, record.totalMinor,
+                record.currency, (long) record.size, record.version));
+    }
+
+    @Override
+    public Optional<Long> findVersionById(String cartId) {
+        return read(cartId, record -> record.version);
+    }
+
+    @Override
+    public Optional<Long> findTotalMinorById(String cartId) {
+        return read(cartId, record -> record.totalMinor);
+    }
+
+    @Override
+    public List<CartSummary> findSummariesByUser(String userId, String status) {
+        List<CartSummary> summaries = new ArrayList<>();
+        for (String cartId : cartsByUser.getOrDefault(userId, Set.of())) {
+            read(cartId, record -> Objects.equals(record.userId, userId)
+                    && (status == null || status.equals(record.status)) ? record.toSummary() : null)
+                .ifPresent(summaries::add);
+        }
+        return summaries;
+    }
+
+    @Override
+    public int adjustTotal(String cartId, long deltaMinor) {
+        return inCartScope(cartId, () -> {
+            CartRecord record = carts.get(cartId);
+            if (record == null) {
+                return 0;
+            }
+            record.adjustTotal(deltaMinor);
+            return 1;
+        });
+    }
+
+    @Override
+    public int adjustTotalIfVersion(String cartId, long deltaMinor, long expectedVersion) {
+        return inCartScope(cartId, () -> {
+            CartRecord record = carts.get(cartId);
+            if (record == null || record.version != expectedVersion) {
+                return 0;
+            }
+            record.adjustTotal(deltaMinor);
+            return 1;
+        });
+    }
+
+    @Override
+    public CartItem saveItem(CartItem item) {
+        saveItems(List.of(item));
+        return copy(item);
+    }
+
+    @Override
+    public void saveItems(Collection<CartItem> items) {
+        for (CartItem item : items) {
+            inCartScope(item.getCartId(), () -> {
+                CartRecord record = carts.get(item.getCartId());
+                if (record == null) {
+                    throw new ObjectOptimisticLockingFailureException(ShoppingCart.class, item.getCartId());
+                }
+                int index = item.getId() == null ? -1 : record.indexOf(item.getId());
+                if (index < 0) {
+                    record.append(item);
+                } else {
+                    record.set(index, item);
+                }
+                record.lastModified = Instant.now();
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public Optional<CartItem> findItem(String cartId, String itemId) {
+        return read(cartId, record -> {
+            int index = record.indexOf(itemId);
+            return index < 0 ? null : record.itemAt(index);
+        });
+    }
+
+    @Override
+    public List<CartItem> findItems(String cartId, Collection<String> itemIds) {
+        return read(cartId, record -> {
+            List<CartItem> found = new ArrayList<>();
+            for (String itemId : itemIds) {
+                int index = record.indexOf(itemId);
+                if (index >= 0) {
+                    found.add(record.itemAt(index));
+                }
+            }
+            return found;
+        }).orElseGet(List::of);
+    }
+
+    @Override
+    public List<CartItem> findItemsByProduct(String cartId, Collection<String> productIds) {
+        return read(cartId, record -> {
+            List<CartItem> found = new ArrayList<>();
+            for (String productId : productIds) {
+                int index = record.indexOfProduct(productId);
+                if (index >= 0) {
+                    found.add(record.itemAt(index));
+                }
+            }
+            return found;
+        }).orElseGet(List::of);
+    }
+
+    // Lines are kept in insertion order, so a page sorts the qualifying ids first
+    @Override
+    public List<CartItem> findItemPage(String cartId, String afterItemId, int limit) {
+        return read(cartId, record -> {
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < record.size; i++) {
+                if (afterItemId == null || record.itemIds[i].compareTo(afterItemId) > 0) {
+                    indices.add(i);
+                }
+            }
+            indices.sort((left, right) -> record.itemIds[left].compareTo(record.itemIds[right]));
+            List<CartItem> page = new ArrayList<>(Math.min(limit, indices.size()));
+            for (int i = 0; i < indices.size() && i < limit; i++) {
+                page.add(record.itemAt(indices.get(i)));
+            }
+            return page;
+        }).orElseGet(List::of);
+    }
+
+    @Override
+    public void deleteItem(CartItem item) {
+        inCartScope(item.getCartId(), () -> {
+            CartRecord record = carts.get(item.getCartId());
+            if (record != null) {
+                record.removeAt(record.indexOf(item.getId()));
+                record.lastModified = Instant.now();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteItems(Collection<CartItem> items) {
+        for (CartItem item : items) {
+            deleteItem(item);
+        }
+    }
+
+    @Override
+    public List<String> findCartIdsWithTotalDrift() {
+        List<String> drifted = new ArrayList<>();
+        for (String cartId : carts.keySet()) {
+            read(cartId, record -> record.totalMinor != record.sumLines())
+                .filter(Boolean::booleanValue)
+                .ifPresent(ignored -> drifted.add(cartId));
+        }
+        return drifted;
+    }
+
+    @Override
+    public int recomputeTotal(String cartId) {
+        return inCartScope(cartId, () -> {
+            CartRecord record = carts.get(cartId);
+            if (record == null) {
+                return 0;
+            }
+            record.totalMinor = record.sumLines();
+            record.version++;
+            return 1;
+        });
+    }
+
+    // No index on the heap: a full pass over the carts, which the sweeper bounds by running in chunks
+    @Override
+    public List<String> findIdleCartIds(String status, Instant cutoff, int limit) {
+        List<Map.Entry<Instant, String>> idle = new ArrayList<>();
+        for (String cartId : carts.keySet()) {
+            read(cartId, record -> record.isIdle(status, cutoff) ? record.lastModified : null)
+                .ifPresent(lastModified -> idle.add(Map.entry(lastModified, cartId)));
+        }
+        idle.sort(Map.Entry.comparingByKey());
+        List<String> cartIds = new ArrayList<>(Math.min(limit, idle.size()));
+        for (int i = 0; i < idle.size() && i < limit; i++) {
+            cartIds.add(idle.get(i).getValue());
+        }
+        return cartIds;
+    }
+
+    @Override
+    public int updateStatusIfIdle(Collection<String> cartIds, String fromStatus, String toStatus, Instant cutoff) {
+        int updated = 0;
+        for (String cartId : cartIds) {
+            updated += inCartScope(cartId, () -> {
+                CartRecord record = carts.get(cartId);
+                if (record == null || !record.isIdle(fromStatus, cutoff)) {
+                    return 0;
+                }
+                record.status = toStatus;
+                record.version++;
+                return 1;
+            });
+        }
+        return updated;
+    }
+
+    @Override
+    public int deleteIfIdle(Collection<String> cartIds, String status, Instant cutoff,
+                            Function<CartSummary, CartEvent> deletedEvent) {
+        int deleted = 0;
+        for (String cartId : cartIds) {
+            deleted += inCartScope(cartId, () -> {
+                CartRecord record = carts.get(cartId);
+                if (record == null || !record.isIdle(status, cutoff)) {
+                    return 0;
+                }
+                carts.remove(cartId);
+                unindex(record.userId, cartId);
+                appendEvents(List.of(deletedEvent.apply(record.toSummary())));
+                return 1;
+            });
+        }
+        return deleted;
+    }
+
+    // Sequenced under the cart's stripe, so one cart's events are numbered in write order
+    @Override
+    public void appendEvents(List<CartEvent> events) {
+        for (CartEvent event : events) {
+            inCartScope(event.getCartId(), () -> {
+                event.setSequence(eventSequences.merge(event.getCartId(), 1L, Long::sum));
+                cartEvents.computeIfAbsent(event.getCartId(), key -> new ConcurrentSkipListMap<>())
+                        .put(event.getSequence(), event);
+                log(event);
+                return null;
+            });
+        }
+    }
+
+    private void log(CartEvent event) {
+        eventLock.lock();
+        try {
+            event.setId(++lastEventId);
+            events.put(event.getId(), event);
+            long oldest = lastEventId - eventLogSize;
+            if (oldest > 0) {
+                trim(events.headMap(oldest, true).values());
+            }
+        } finally {
+            eventLock.unlock();
+        }
+    }
+
+    // Caller holds eventLock. A cart keeps the events its snapshot does not cover yet, since its history could
+    // not be replayed without them; saveEventSnapshot lets them go. A cart's emptied map stays, since an append
+    // under its stripe may be about to use it.
+    private void trim(Collection<CartEvent> trimmed) {
+        for (CartEvent event : List.copyOf(trimmed)) {
+            events.remove(event.getId());
+            trimmedThrough = event.getId();
+            ConcurrentSkipListMap<Long, CartEvent> byCart = cartEvents.get(event.getCartId());
+            CartEventSnapshot snapshot = eventSnapshots.get(event.getCartId());
+            if (byCart != null && snapshot != null && snapshot.getLastSequence() >= event.getSequence()) {
+                byCart.remove(event.getSequence());
+            }
+        }
+    }
+
+    @Override
+    public List<CartEvent> findEvents(String cartId, long afterSequence, int limit) {
+        ConcurrentSkipListMap<Long, CartEvent> byCart = cartEvents.get(cartId);
+        if (byCart == null) {
+            return List.of();
+        }
+        return byCart.tailMap(afterSequence, false).values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public List<CartEvent> findEventsAfter(long afterEventId, int limit) {
+        return events.tailMap(afterEventId, false).values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public List<String> findEventCartIds(String afterCartId, int limit) {
+        TreeSet<String> cartIds = new TreeSet<>(eventSnapshots.keySet());
+        cartEvents.forEach((cartId, byCart) -> {
+            if (!byCart.isEmpty()) {
+                cartIds.add(cartId);
+            }
+        });
+        NavigableSet<String> page = afterCartId == null ? cartIds : cartIds.tailSet(afterCartId, false);
+        return page.stream().limit(limit).toList();
+    }
+
+    @Override
+    public List<String> findDeletedEventCartIds(Instant cutoff, int limit) {
+        List<CartEvent> deleted = new ArrayList<>();
+        for (ConcurrentSkipListMap<Long, CartEvent> byCart : cartEvents.values()) {
+            Map.Entry<Long, CartEvent> last = byCart.lastEntry();
+            if (last != null && CartEventType.CART_DELETED.equals(last.getValue().getType())
+                    && last.getValue().getOccurredAt().isBefore(cutoff)) {
+                deleted.add(last.getValue());
+            }
+        }
+        return deleted.stream()
+                .sorted(Comparator.comparing(CartEvent::getOccurredAt))
+                .limit(limit)
+                .map(CartEvent::getCartId)
+                .toList();
+    }
+
+    @Override
+    public void deleteEvents(Collection<String> cartIds) {
+        Set<String> deleted = Set.copyOf(cartIds);
+        events.values().removeIf(event -> deleted.contains(event.getCartId()));
+        cartEvents.keySet().removeAll(deleted);
+        eventSequences.keySet().removeAll(deleted);
+        eventSnapshots.keySet().removeAll(deleted);
+    }
+
+    @Override
+    public Optional<CartEventSnapshot> findEventSnapshot(String cartId) {
+        return Optional.ofNullable(eventSnapshots.get(cartId));
+    }
+
+    // Under eventLock, so a trim either sees the snapshot or left events behind for it to drop
+    @Override
+    public void saveEventSnapshot(CartEventSnapshot snapshot) {
+        eventLock.lock();
+        try {
+            CartEventSnapshot saved = eventSnapshots.merge(snapshot.getCartId(), snapshot,
+                    (stored, taken) -> taken.getLastSequence() > stored.getLastSequence() ? taken : stored);
+            ConcurrentSkipListMap<Long, CartEvent> byCart = cartEvents.get(snapshot.getCartId());
+            if (byCart != null) {
+                byCart.headMap(saved.getLastSequence(), true).values()
+                        .removeIf(event -> event.getId() <= trimmedThrough);
+            }
+        } finally {
+            eventLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteEventSnapshot(String cartId) {
+        eventSnapshots.remove(cartId);
+    }
+
+    @Override
+    public <T> T inCartScope(String cartId, Supplier<T> work) {
+        ReentrantLock lock = stripes[stripeIndex(cartId)];
+        lock.lock();
+        try {
+            return work.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean contains(String cartId) {
+        return carts.containsKey(cartId);
+    }
+
+    // Drops a cart loaded from elsewhere, unless it has been written since it was at that version
+    boolean evictIfVersion(String cartId, long version) {
+        return inCartScope(cartId, () -> {
+            CartRecord record = carts.get(cartId);
+            if (record == null || record.version != version) {
+                return false;
+            }
+            carts.remove(cartId);
+            unindex(record.userId, cartId);
+            return true;
+        });
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    private int stripeIndex(String cartId) {
+        int hash = cartId == null ? 0 : cartId.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private void index(String userId, String cartId) {
+        if (userId == null) {
+            return;
+        }
+        cartsByUser.compute(userId, (key, cartIds) -> {
+            Set<String> ids = cartIds == null ? ConcurrentHashMap.newKeySet() : cartIds;
+            ids.add(cartId);
+            return ids;
+        });
+    }
+
+    private void unindex(String userId, String cartId) {
+        if (userId == null) {
+            return;
+        }
+        cartsByUser.computeIfPresent(userId, (key, cartIds) -> {
+            cartIds.remove(cartId);
+            return cartIds.isEmpty() ? null : cartIds;
+        });
+    }
+
+    private <T> Optional<T> read(String cartId, Function<CartRecord, T> reader) {
+        return inCartScope(cartId, () -> {
+            CartRecord record = carts.get(cartId);
+            return record == null ? Optional.empty() : Optional.ofNullable(reader.apply(record));
+        });
+    }
+
+    private static CartItem copy(CartItem item) {
+        CartItem copy = new CartItem();
+        copy.setId(item.getId());
+        copy.setCartId(item.getCartId());
+        copy.setProductId(item.getProductId());
+        copy.setProductName(item.getProductName());
+        copy.setPriceMinor(item.getPriceMinor());
+        copy.setQuantity(item.getQuantity());
+        return copy;
+    }
+
+    // Cart header plus its lines stored column by column; only touched under the cart's stripe
+    private static final class CartRecord {
+        private final String id;
+        private String userId;
+        private String status;
+        private long totalMinor;
+        private String currency;
+        private long version;
+        private Instant lastModified;
+        private int size;
+        private String[] itemIds = new String[INITIAL_CAPACITY];
+        private String[] productIds = new String[INITIAL_CAPACITY];
+        private String[] productNames = new String[INITIAL_CAPACITY];
+        private long[] prices = new long[INITIAL_CAPACITY];
+        private int[] quantities = new int[INITIAL_CAPACITY];
+
+        private CartRecord(String id) {
+            this.id = id;
+        }
+
+        private void adjustTotal(long deltaMinor) {
+            totalMinor = Math.addExact(totalMinor, deltaMinor);
+            version++;
+            lastModified = Instant.now();
+        }
+
+        private boolean isIdle(String inStatus, Instant cutoff) {
+            return Objects.equals(status, inStatus) && lastModified.isBefore(cutoff);
+        }
+
+        private long sumLines() {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum = Math.addExact(sum, Money.lineTotal(prices[i], quantities[i]));
+            }
+            return sum;
+        }
+
+        private int indexOf(String itemId) {
+            for (int i = 0; i < size; i++) {
+                if (itemIds[i].equals(itemId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int indexOfProduct(String productId) {
+            for (int i = 0; i < size; i++) {
+                if (productIds[i] != null && productIds[i].equals(productId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Mirrors the unique (cart_id, product_id) index of the relational schema
+        private void append(CartItem item) {
+            if (item.getProductId() != null && indexOfProduct(item.getProductId()) >= 0) {
+                throw new DataIntegrityViolationException(
+                        "Cart " + id + " already has a line for product " + item.getProductId());
+            }
+            if (item.getId() == null) {
+                item.setId(CartIds.next());
+            }
+            if (size == itemIds.length) {
+                int capacity = size << 1;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                productIds = Arrays.copyOf(productIds, capacity);
+                productNames = Arrays.copyOf(productNames, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+            }
+            set(size++, item);
+        }
+
+        private void set(int index, CartItem item) {
+            itemIds[index] = item.getId();
+            productIds[index] = item.getProductId();
+            productNames[index] = item.getProductName();
+            prices[index] = item.getPriceMinor() == null ? 0L : item.getPriceMinor();
+            quantities[index] = item.getQuantity() == null ? 0 : item.getQuantity();
+        }
+
+        private void removeAt(int index) {
+            if (index < 0) {
+                return;
+            }
+            int tail = size - index - 1;
+            System.arraycopy(itemIds, index + 1, itemIds, index, tail);
+            System.arraycopy(productIds, index + 1, productIds, index, tail);
+            System.arraycopy(productNames, index + 1, productNames, index, tail);
+            System.arraycopy(prices, index + 1, prices, index, tail);
+            System.arraycopy(quantities, index + 1, quantities, index, tail);
+            size--;
+            itemIds[size] = null;
+            productIds[size] = null;
+            productNames[size] = null;
+        }
+
+        private void clearItems() {
+            Arrays.fill(itemIds, 0, size, null);
+            Arrays.fill(productIds, 0, size, null);
+            Arrays.fill(productNames, 0, size, null);
+            size = 0;
+        }
+
+        private CartItem itemAt(int index) {
+            CartItem item = new CartItem();
+            item.setId(itemIds[index]);
+            item.setCartId(id);
+            item.setProductId(productIds[index]);
+            item.setProductName(productNames[index]);
+            item.setPriceMinor(prices[index]);
+            item.setQuantity(quantities[index]);
+            return item;
+        }
+
+        private CartSummary toSummary() {
+            return new CartSummary(id, userId, status, totalMinor, currency, version);
+        }
+
+        private ShoppingCart toCart() {
+            ShoppingCart cart = new ShoppingCart();
+            cart.setId(id);
+            cart.setUserId(userId);
+            cart.setStatus(status);
+            cart.setTotalMinor(totalMinor);
+            cart.setCurrency(currency);
+            cart.setVersion(version);
+            cart.setLastModified(lastModified);
+            List<CartItem> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                items.add(itemAt(i));
+            }
+            cart.setItems(items);
+            return cart;
+        }
+    }
+}
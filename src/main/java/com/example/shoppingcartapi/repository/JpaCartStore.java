@@ -0,0 +1,383 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.CartIds;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.CartStatus;
+import com.example.shoppingcartapi.model.Money;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Relational engine; atomicity comes from the caller's transaction, or the one inCartScope opens without one.
+// Native statements bind ids as strings, which the database would fail to convert to its UUID id
+// columns when malformed, so they match nothing up front, as the entity queries do (see CompactIdType).
+@Repository
+@ConditionalOnProperty(name = "cart.storage.engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaCartStore implements CartStore {
+
+    private final ShoppingCartRepository cartRepository;
+    private final CartItemRepository itemRepository;
+    private final ArchivedCartRepository archiveRepository;
+    private final CartEventRepository eventRepository;
+    private final CartEventSnapshotRepository snapshotRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public JpaCartStore(ShoppingCartRepository cartRepository, CartItemRepository itemRepository,
+                        ArchivedCartRepository archiveRepository, CartEventRepository eventRepository,
+                        CartEventSnapshotRepository snapshotRepository) {
+        this.cartRepository = cartRepository;
+        this.itemRepository = itemRepository;
+        this.archiveRepository = archiveRepository;
+        this.eventRepository = eventRepository;
+        this.snapshotRepository = snapshotRepository;
+    }
+
+    @Override
+    public ShoppingCart save(ShoppingCart cart) {
+        return cartRepository.save(cart);
+    }
+
+    @Override
+    public Optional<ShoppingCart> findById(String cartId) {
+        return cartRepository.findById(cartId);
+    }
+
+    @Override
+    public void delete(ShoppingCart cart) {
+        cartRepository.delete(cart);
+    }
+
+    // The version-checked bump locks the cart row before its lines go
+    @Override
+    @Transactional
+    public int deleteIfVersion(String cartId, long expectedVersion) {
+        if (!CartIds.isWellFormed(cartId)) {
+            return 0;
+        }
+        if (cartRepository.adjustTotalIfVersion(cartId, BigDecimal.ZERO, expectedVersion) == 0) {
+            return 0;
+        }
+        itemRepository.deleteRowsByCartId(cartId);
+        return cartRepository.deleteRow(cartId);
+    }
+
+    @Override
+    public Optional<CartSummary> findSummaryById(String cartId) {
+        return cartRepository.findSummaryById(cartId);
+    }
+
+    @Override
+    public Optional<CartOverview> findOverviewById(String cartId) {
+        return cartRepository.findOverviewById(cartId);
+    }
+
+    @Override
+    public Optional<Long> findVersionById(String cartId) {
+        return cartRepository.findVersionById(cartId);
+    }
+
+    @Override
+    public Optional<Long> findTotalMinorById(String cartId) {
+        return cartRepository.findTotalMinorById(cartId);
+    }
+
+    // The archive never holds ACTIVE carts, so the common ACTIVE listing stays on the hot table
+    @Override
+    public List<CartSummary> findSummariesByUser(String userId, String status) {
+        if (status == null) {
+            List<CartSummary> summaries = new ArrayList<>(cartRepository.findSummariesByUserId(userId));
+            summaries.addAll(archiveRepository.findSummariesByUserId(userId));
+            return summaries;
+        }
+        List<CartSummary> summaries = cartRepository.findSummariesByUserIdAndStatus(userId, status);
+        if (CartStatus.ACTIVE.equals(status)) {
+            return summaries;
+        }
+        summaries = new ArrayList<>(summaries);
+        summaries.addAll(archiveRepository.findSummariesByUserIdAndStatus(userId, status));
+        return summaries;
+    }
+
+    @Override
+    public int adjustTotal(String cartId, long deltaMinor) {
+        if (!CartIds.isWellFormed(cartId)) {
+            return 0;
+        }
+        return cartRepository.adjustTotal(cartId, Money.toDecimal(deltaMinor));
+    }
+
+    @Override
+    public int adjustTotalIfVersion(String cartId, long deltaMinor, long expectedVersion) {
+        if (!CartIds.isWellFormed(cartId)) {
+            return 0;
+        }
+        return cartRepository.adjustTotalIfVersion(cartId, Money.toDecimal(deltaMinor), expectedVersion);
+    }
+
+    @Override
+    public CartItem saveItem(CartItem item) {
+        return itemRepository.save(item);
+    }
+
+    @Override
+    public void saveItems(Collection<CartItem> items) {
+        itemRepository.saveAll(items);
+    }
+
+    @Override
+    public Optional<CartItem> findItem(String cartId, String itemId) {
+        return itemRepository.findByIdAndCartId(itemId, cartId);
+    }
+
+    @Override
+    public List<CartItem> findItems(String cartId, Collection<String> itemIds) {
+        return itemRepository.findByCartIdAndIdIn(cartId, itemIds);
+    }
+
+    @Override
+    public List<CartItem> findItemsByProduct(String cartId, Collection<String> productIds) {
+        return itemRepository.findByCartIdAndProductIdIn(cartId, productIds);
+    }
+
+    @Override
+    public List<CartItem> findItemPage(String cartId, String afterItemId, int limit) {
+        return afterItemId == null
+                ? itemRepository.findByCartIdOrderByIdAsc(cartId, Limit.of(limit))
+                : itemRepository.findByCartIdAndIdGreaterThanOrderByIdAsc(cartId, afterItemId, Limit.of(limit));
+    }
+
+    // Lines are detached once visited so a request-scoped persistence context does not end up holding all of them
+    @Override
+    public void forEachItem(String cartId, int pageSize, Consumer<CartItem> action) {
+        CartStore.super.forEachItem(cartId, pageSize, item -> {
+            action.accept(item);
+            entityManager.detach(item);
+        });
+    }
+
+    @Override
+    public void deleteItem(CartItem item) {
+        itemRepository.delete(item);
+    }
+
+    @Override
+    public void deleteItems(Collection<CartItem> items) {
+        itemRepository.deleteAll(items);
+    }
+
+    @Override
+    public List<String> findCartIdsWithTotalDrift() {
+        return cartRepository.findCartIdsWithTotalDrift();
+    }
+
+    @Override
+    public int recomputeTotal(String cartId) {
+        if (!CartIds.isWellFormed(cartId)) {
+            return 0;
+        }
+        return cartRepository.recomputeTotal(cartId);
+    }
+
+    // Hot carts first; the archive fills whatever is left of the chunk
+    @Override
+    public List<String> findIdleCartIds(String status, Instant cutoff, int limit) {
+        List<String> cartIds = cartRepository.findIdleCartIds(status, cutoff, Limit.of(limit));
+        if (cartIds.size() >= limit || CartStatus.ACTIVE.equals(status)) {
+            return cartIds;
+        }
+        cartIds = new ArrayList<>(cartIds);
+        cartIds.addAll(archiveRepository.findIdleCartIds(status, cutoff, Limit.of(limit - cartIds.size())));
+        return cartIds;
+    }
+
+    @Override
+    @Transactional
+    public int updateStatusIfIdle(Collection<String> cartIds, String fromStatus, String toStatus, Instant cutoff) {
+        return cartRepository.updateStatusIfIdle(cartIds, fromStatus, toStatus, cutoff);
+    }
+
+    // The version bump locks the carts that still qualify, so no write can slip in between reading their
+    // headers and the deletes; archived carts are never written, so reading theirs first is enough
+    @Override
+    @Transactional
+    public int deleteIfIdle(Collection<String> cartIds, String status, Instant cutoff,
+                            Function<CartSummary, CartEvent> deletedEvent) {
+        List<CartSummary> deleted = new ArrayList<>(archiveRepository.findIdleSummaries(cartIds, status, cutoff));
+        if (!deleted.isEmpty()) {
+            archiveRepository.deleteIfIdle(cartIds, status, cutoff);
+        }
+        if (cartRepository.updateStatusIfIdle(cartIds, status, status, cutoff) > 0) {
+            deleted.addAll(cartRepository.findIdleSummaries(cartIds, status, cutoff));
+            itemRepository.deleteByIdleCarts(cartIds, status, cutoff);
+            cartRepository.deleteIfIdle(cartIds, status, cutoff);
+        }
+        appendEvents(deleted.stream().map(deletedEvent).toList());
+        return deleted.size();
+    }
+
+    @Override
+    @Transactional
+    public int stampUnmodified(String status, int limit) {
+        return cartRepository.stampUnmodified(status, limit);
+    }
+
+    @Override
+    public List<String> findArchivableCartIds(int limit) {
+        return cartRepository.findIdsNotInStatus(CartStatus.ACTIVE, Limit.of(limit));
+    }
+
+    // Locks the carts, copies each into one archive row and then drops the hot rows with one
+    // statement per table; a cart that is ACTIVE again by then is left where it is
+    @Override
+    @Transactional
+    public int archive(Collection<String> cartIds) {
+        if (cartRepository.lockNotInStatus(cartIds, CartStatus.ACTIVE) == 0) {
+            return 0;
+        }
+        Instant archivedAt = Instant.now();
+        List<String> archivedIds = new ArrayList<>(cartIds.size());
+        for (ShoppingCart cart : cartRepository.findByIdInAndStatusNot(cartIds, CartStatus.ACTIVE)) {
+            entityManager.persist(CartSnapshots.archive(cart, archivedAt));
+            archivedIds.add(cart.getId());
+        }
+        // Nothing loaded here may be written back once the rows are gone
+        entityManager.flush();
+        entityManager.clear();
+        itemRepository.deleteRowsByCartIds(archivedIds);
+        return cartRepository.deleteRows(archivedIds);
+    }
+
+    @Override
+    public Optional<ShoppingCart> findArchivedById(String cartId) {
+        return archiveRepository.findById(cartId).map(CartSnapshots::restore);
+    }
+
+    // Every write that logs events locks its cart's row first, and flushing pushes out the ones still pending, so
+    // each cart's last sequence is read while no other transaction can append to it. The unique (cart_id, seq)
+    // key turns anything that slips past that into a failed write rather than a gap. Inserted at flush with the
+    // rows they describe, batched by the pooled id sequence.
+    @Override
+    public void appendEvents(List<CartEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        eventRepository.flush();
+        Set<String> cartIds = new HashSet<>();
+        for (CartEvent event : events) {
+            cartIds.add(event.getCartId());
+        }
+        Map<String, Long> sequences = new HashMap<>();
+        for (Object[] last : eventRepository.findLastSequences(cartIds)) {
+            sequences.put((String) last[0], ((Number) last[1]).longValue());
+        }
+        for (CartEvent event : events) {
+            event.setSequence(sequences.merge(event.getCartId(), 1L, Long::sum));
+        }
+        eventRepository.saveAll(events);
+    }
+
+    @Override
+    public List<CartEvent> findEvents(String cartId, long afterSequence, int limit) {
+        return eventRepository.findByCartIdAndSequenceGreaterThanOrderBySequenceAsc(cartId, afterSequence,
+                Limit.of(limit));
+    }
+
+    @Override
+    public List<CartEvent> findEventsAfter(long afterEventId, int limit) {
+        return eventRepository.findByIdGreaterThanOrderByIdAsc(afterEventId, Limit.of(limit));
+    }
+
+    @Override
+    public List<String> findEventCartIds(String afterCartId, int limit) {
+        return afterCartId == null
+                ? eventRepository.findCartIds(Limit.of(limit))
+                : eventRepository.findCartIdsAfter(afterCartId, Limit.of(limit));
+    }
+
+    @Override
+    public List<String> findDeletedEventCartIds(Instant cutoff, int limit) {
+        return eventRepository.findCartIdsByTypeBefore(CartEventType.CART_DELETED, cutoff, Limit.of(limit));
+    }
+
+    @Override
+    @Transactional
+    public void deleteEvents(Collection<String> cartIds) {
+        snapshotRepository.deleteByCartIds(cartIds);
+        eventRepository.deleteByCartIds(cartIds);
+    }
+
+    @Override
+    public Optional<CartEventSnapshot> findEventSnapshot(String cartId) {
+        if (!CartIds.isWellFormed(cartId)) {
+            return Optional.empty();
+        }
+        return snapshotRepository.findById(cartId);
+    }
+
+    // A first snapshot has no row to lock; of two racing inserts the later fails on the primary key
+    @Override
+    @Transactional
+    public void saveEventSnapshot(CartEventSnapshot snapshot) {
+        if (!CartIds.isWellFormed(snapshot.getCartId())) {
+            return;
+        }
+        Optional<CartEventSnapshot> stored = snapshotRepository.findForUpdate(snapshot.getCartId());
+        if (stored.isPresent() && stored.get().getLastSequence() >= snapshot.getLastSequence()) {
+            return;
+        }
+        snapshotRepository.save(snapshot);
+    }
+
+    @Override
+    public void deleteEventSnapshot(String cartId) {
+        if (CartIds.isWellFormed(cartId)) {
+            snapshotRepository.deleteById(cartId);
+        }
+    }
+
+    @Override
+    @Transactional
+    public <T> T inCartScope(String cartId, Supplier<T> work) {
+        return work.get();
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return true;
+    }
+
+    // Native statements bump versions behind the persistence context's back; clearing it drops entities
+    // loaded at the old version, which a later save would otherwise write back against a stale version
+    @Override
+    public void flushScope() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -1,9 +1,143 @@
 package com.example.shoppingcartapi.repository;
 
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
 import com.example.shoppingcartapi.model.ShoppingCart;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ShoppingCartRepository extends JpaRepository<ShoppingCart, String> {
-} 
\ No newline at end of file
+
+    // Carts are always read with their items in one joined select
+    @Override
+    @EntityGraph(attributePaths = "items")
+    Optional<ShoppingCart> findById(String id);
+
+    // Deltas are exact decimals of minor units; ROUND only matters for legacy DOUBLE columns
+    @Modifying
+    @Query(value = "UPDATE shopping_carts SET total_amount = ROUND(COALESCE(total_amount, 0) + :delta, 2), " +
+            "version = COALESCE(version, 0) + 1, last_modified = CURRENT_TIMESTAMP " +
+            "WHERE id = :cartId",
+            nativeQuery = true)
+    int adjustTotal(@Param("cartId") String cartId, @Param("delta") BigDecimal delta);
+
+    @Modifying
+    @Query(value = "UPDATE shopping_carts SET total_amount = ROUND(COALESCE(total_amount, 0) + :delta, 2), " +
+            "version = version + 1, last_modified = CURRENT_TIMESTAMP " +
+            "WHERE id = :cartId AND version = :expectedVersion",
+            nativeQuery = true)
+    int adjustTotalIfVersion(@Param("cartId") String cartId, @Param("delta") BigDecimal delta,
+                             @Param("expectedVersion") long expectedVersion);
+
+    @Query("SELECT c.version FROM ShoppingCart c WHERE c.id = :cartId")
+    Optional<Long> findVersionById(@Param("cartId") String cartId);
+
+    @Query("SELECT c.totalMinor FROM ShoppingCart c WHERE c.id = :cartId")
+    Optional<Long> findTotalMinorById(@Param("cartId") String cartId);
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(c.id, c.userId, c.status, c.totalMinor, c.currency, c.version) " +
+            "FROM ShoppingCart c WHERE c.id = :cartId")
+    Optional<CartSummary> findSummaryById(@Param("cartId") String cartId);
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartOverview(c.id, c.status, c.totalMinor, c.currency, " +
+            "(SELECT COUNT(i) FROM CartItem i WHERE i.cartId = c.id), c.version) " +
+            "FROM ShoppingCart c WHERE c.id = :cartId")
+    Optional<CartOverview> findOverviewById(@Param("cartId") String cartId);
+
+    // Header-only lookups served by idx_shopping_carts_user_status
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(c.id, c.userId, c.status, c.totalMinor, c.currency, c.version) " +
+            "FROM ShoppingCart c WHERE c.userId = :userId")
+    List<CartSummary> findSummariesByUserId(@Param("userId") String userId);
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(c.id, c.userId, c.status, c.totalMinor, c.currency, c.version) " +
+            "FROM ShoppingCart c WHERE c.userId = :userId AND c.status = :status")
+    List<CartSummary> findSummariesByUserIdAndStatus(@Param("userId") String userId, @Param("status") String status);
+
+    // Any whole-cent difference; the half-cent margin only absorbs legacy DOUBLE columns.
+    // The cast returns the canonical string form whether or not the id column has been migrated to UUID.
+    @Query(value = "SELECT CAST(c.id AS VARCHAR) FROM shopping_carts c " +
+            "WHERE ABS(COALESCE(c.total_amount, 0) - " +
+            "(SELECT COALESCE(SUM(i.price * i.quantity), 0) FROM cart_items i WHERE i.cart_id = c.id)) > 0.005",
+            nativeQuery = true)
+    List<String> findCartIdsWithTotalDrift();
+
+    // Bumps the version so clients holding the drifted cart's ETag see the corrected one
+    @Modifying
+    @Query(value = "UPDATE shopping_carts SET total_amount = " +
+            "(SELECT ROUND(COALESCE(SUM(i.price * i.quantity), 0), 2) FROM cart_items i WHERE i.cart_id = :cartId), " +
+            "version = COALESCE(version, 0) + 1 " +
+            "WHERE id = :cartId",
+            nativeQuery = true)
+    int recomputeTotal(@Param("cartId") String cartId);
+
+    // Write-behind flush: writes the cart row as held in memory, version included
+    @Modifying
+    @Query(value = "MERGE INTO shopping_carts (id, user_id, total_amount, currency, status, version, last_modified) " +
+            "KEY (id) VALUES (:id, :userId, :totalAmount, :currency, :status, :version, :lastModified)",
+            nativeQuery = true)
+    int upsertRow(@Param("id") String id, @Param("userId") String userId,
+                  @Param("totalAmount") BigDecimal totalAmount, @Param("currency") String currency,
+                  @Param("status") String status, @Param("version") Long version,
+                  @Param("lastModified") Instant lastModified);
+
+    @Modifying
+    @Query(value = "DELETE FROM shopping_carts WHERE id = :id", nativeQuery = true)
+    int deleteRow(@Param("id") String id);
+
+    // Expiry: idle carts oldest first, served by idx_shopping_carts_status_last_modified
+    @Query("SELECT c.id FROM ShoppingCart c WHERE c.status = :status AND c.lastModified < :cutoff " +
+            "ORDER BY c.lastModified")
+    List<String> findIdleCartIds(@Param("status") String status, @Param("cutoff") Instant cutoff, Limit limit);
+
+    // The idle condition is checked again, so a cart written since it was selected is left alone
+    @Modifying
+    @Query("UPDATE ShoppingCart c SET c.status = :toStatus, c.version = c.version + 1 " +
+            "WHERE c.id IN :cartIds AND c.status = :fromStatus AND c.lastModified < :cutoff")
+    int updateStatusIfIdle(@Param("cartIds") Collection<String> cartIds, @Param("fromStatus") String fromStatus,
+                           @Param("toStatus") String toStatus, @Param("cutoff") Instant cutoff);
+
+    @Query("SELECT new com.example.shoppingcartapi.dto.CartSummary(c.id, c.userId, c.status, c.totalMinor, c.currency, c.version) " +
+            "FROM ShoppingCart c WHERE c.id IN :cartIds AND c.status = :status AND c.lastModified < :cutoff")
+    List<CartSummary> findIdleSummaries(@Param("cartIds") Collection<String> cartIds, @Param("status") String status,
+                                        @Param("cutoff") Instant cutoff);
+
+    @Modifying
+    @Query("DELETE FROM ShoppingCart c WHERE c.id IN :cartIds AND c.status = :status AND c.lastModified < :cutoff")
+    int deleteIfIdle(@Param("cartIds") Collection<String> cartIds, @Param("status") String status,
+                     @Param("cutoff") Instant cutoff);
+
+    // Archive tier: candidates, and the carts to copy with their lines in one select
+    @Query("SELECT c.id FROM ShoppingCart c WHERE c.status <> :status")
+    List<String> findIdsNotInStatus(@Param("status") String status, Limit limit);
+
+    @EntityGraph(attributePaths = "items")
+    List<ShoppingCart> findByIdInAndStatusNot(Collection<String> cartIds, String status);
+
+    // A no-op update that locks the carts still qualifying until the archiving transaction ends
+    @Modifying
+    @Query("UPDATE ShoppingCart c SET c.status = c.status WHERE c.id IN :cartIds AND c.status <> :status")
+    int lockNotInStatus(@Param("cartIds") Collection<String> cartIds, @Param("status") String status);
+
+    @Modifying
+    @Query("DELETE FROM ShoppingCart c WHERE c.id IN :cartIds")
+    int deleteRows(@Param("cartIds") Collection<String> cartIds);
+
+    // Rows written before carts carried a timestamp start their idle time now
+    @Modifying
+    @Query(value = "UPDATE shopping_carts SET last_modified = CURRENT_TIMESTAMP WHERE id IN " +
+            "(SELECT id FROM shopping_carts WHERE status = :status AND last_modified IS NULL LIMIT :limit)",
+            nativeQuery = true)
+    int stampUnmodified(@Param("status") String status, @Param("limit") int limit);
+}
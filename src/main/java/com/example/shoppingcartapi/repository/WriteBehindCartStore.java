@@ -0,0 +1,611 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartIds;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.Money;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Serves every read and write from an in-memory store and persists carts asynchronously.
+// Each outermost write scope queues one snapshot of the carts it touched; snapshots of the same cart
+// coalesce, so the flusher writes the latest state of each dirty cart once per cycle, in batches.
+// Snapshots are appended to a local log first and replayed on startup if the process died before flushing.
+// Memory only holds carts in use: once a cart's row is current, the next flush drops it unless it was
+// written again, and the database answers for it until it is read or written next.
+@Repository
+@ConditionalOnProperty(name = "cart.storage.engine", havingValue = "write-behind")
+public class WriteBehindCartStore implements CartStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindCartStore.class);
+    private final InMemoryCartStore memory;
+    private final ShoppingCartRepository cartRepository;
+    private final CartItemRepository itemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTemplate;
+    private final WriteBehindLog log;
+    private final int batchSize;
+    private final int maxPending;
+    // Carts written inside the current thread's outermost scope
+    private final ThreadLocal<Set<String>> scopeDirty = new ThreadLocal<>();
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition notFull = queueLock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Latest unflushed snapshot per cart; a null value is a pending deletion
+    private Map<String, ShoppingCart> pending = new LinkedHashMap<>();
+    private Map<String, ShoppingCart> inFlight = Map.of();
+    // Carts in memory whose database row is current, with the version the row holds
+    private final Map<String, Long> settled = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WriteBehindCartStore(ShoppingCartRepository cartRepository, CartItemRepository itemRepository,
+                                PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                                @Value("${cart.storage.memory.stripes:64}") int stripes,
+                                @Value("${cart.storage.write-behind.batch-size:200}") int batchSize,
+                                @Value("${cart.storage.write-behind.max-pending:10000}") int maxPending,
+                                @Value("${cart.storage.write-behind.log-dir:${java.io.tmpdir}/cart-write-behind}") String logDir,
+                                @Value("${cart.storage.write-behind.log-sync:false}") boolean logSync) {
+        this.memory = new InMemoryCartStore(stripes);
+        this.cartRepository = cartRepository;
+        this.itemRepository = itemRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.log = new WriteBehindLog(Path.of(logDir), objectMapper, logSync);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    @PostConstruct
+    public void recover() {
+        Map<String, ShoppingCart> recovered = log.recover();
+        if (recovered.isEmpty()) {
+            return;
+        }
+        queueLock.lock();
+        try {
+            pending.putAll(recovered);
+        } finally {
+            queueLock.unlock();
+        }
+        flush();
+    }
+
+    @Scheduled(fixedDelayString = "${cart.storage.write-behind.flush-interval-ms:200}")
+    public int flush() {
+        flushLock.lock();
+        try {
+            int written = drain();
+            evictSettled();
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int drain() {
+        Map<String, ShoppingCart> batch;
+        queueLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            inFlight = batch;
+            log.rotate();
+        } finally {
+            queueLock.unlock();
+        }
+
+        List<Map.Entry<String, ShoppingCart>> entries = new ArrayList<>(batch.entrySet());
+        int written = 0;
+        try {
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                List<Map.Entry<String, ShoppingCart>> chunk =
+                        entries.subList(from, Math.min(from + batchSize, entries.size()));
+                transactionTemplate.executeWithoutResult(status -> chunk.forEach(this::writeRow));
+                written += chunk.size();
+                chunk.forEach(this::settle);
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Write-behind flush failed after {} of {} carts, will retry", written, entries.size(), ex);
+            requeue(entries.subList(written, entries.size()));
+            return written;
+        }
+
+        queueLock.lock();
+        try {
+            inFlight = Map.of();
+            // Entries queued since the drain live in the open segment, which is not retired yet
+            log.deleteRetired();
+            notFull.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+        logger.debug("Write-behind flushed {} carts", written);
+        return written;
+    }
+
+    private void settle(Map.Entry<String, ShoppingCart> entry) {
+        if (entry.getValue() == null) {
+            settled.remove(entry.getKey());
+        } else {
+            settled.put(entry.getKey(), entry.getValue().getVersion());
+        }
+    }
+
+    // A cart written since its row was settled stays; it settles again once that snapshot is flushed
+    private void evictSettled() {
+        int evicted = 0;
+        for (String cartId : settled.keySet()) {
+            boolean dropped = memory.inCartScope(cartId, () -> {
+                Long version = settled.remove(cartId);
+                return version != null && !isQueued(cartId) && memory.evictIfVersion(cartId, version);
+            });
+            if (dropped) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Write-behind dropped {} flushed carts from memory", evicted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Flushing write-behind queue before shutdown");
+        while (pendingCount() > 0) {
+            int pendingBefore = pendingCount();
+            flush();
+            if (pendingCount() >= pendingBefore) {
+                logger.error("Write-behind flush is not making progress; {} carts stay in the local log " +
+                        "and will be replayed on next start", pendingBefore);
+                break;
+            }
+        }
+        log.close();
+    }
+
+    public int pendingCount() {
+        queueLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public ShoppingCart save(ShoppingCart cart) {
+        if (cart.getId() == null) {
+            // New carts cannot be in the database, so skip the load
+            cart.setId(CartIds.next());
+            return inCartScope(cart.getId(), () -> {
+                ShoppingCart saved = memory.save(cart);
+                markDirty(saved.getId());
+                return saved;
+            });
+        }
+        return write(cart.getId(), () -> memory.save(cart));
+    }
+
+    @Override
+    public Optional<ShoppingCart> findById(String cartId) {
+        return read(cartId, () -> memory.findById(cartId));
+    }
+
+    @Override
+    public void delete(ShoppingCart cart) {
+        write(cart.getId(), () -> {
+            memory.delete(cart);
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteIfVersion(String cartId, long expectedVersion) {
+        return write(cartId, () -> memory.deleteIfVersion(cartId, expectedVersion));
+    }
+
+    @Override
+    public Optional<CartSummary> findSummaryById(String cartId) {
+        return read(cartId, () -> memory.findSummaryById(cartId));
+    }
+
+    @Override
+    public Optional<CartOverview> findOverviewById(String cartId) {
+        return read(cartId, () -> memory.findOverviewById(cartId));
+    }
+
+    @Override
+    public Optional<Long> findVersionById(String cartId) {
+        return read(cartId, () -> memory.findVersionById(cartId));
+    }
+
+    @Override
+    public Optional<Long> findTotalMinorById(String cartId) {
+        return read(cartId, () -> memory.findTotalMinorById(cartId));
+    }
+
+    // The database answers for carts never loaded; memory and the queue override it for the rest
+    @Override
+    public List<CartSummary> findSummariesByUser(String userId, String status) {
+        List<CartSummary> stored = readTemplate.execute(tx -> status == null
+                ? cartRepository.findSummariesByUserId(userId)
+                : cartRepository.findSummariesByUserIdAndStatus(userId, status));
+        Map<String, CartSummary> summaries = new LinkedHashMap<>();
+        for (CartSummary summary : stored) {
+            if (!memory.contains(summary.getId()) && !isQueued(summary.getId())) {
+                summaries.put(summary.getId(), summary);
+            }
+        }
+        for (CartSummary summary : memory.findSummariesByUser(userId, status)) {
+            summaries.put(summary.getId(), summary);
+        }
+        return new ArrayList<>(summaries.values());
+    }
+
+    @Override
+    public int adjustTotal(String cartId, long deltaMinor) {
+        return write(cartId, () -> memory.adjustTotal(cartId, deltaMinor));
+    }
+
+    @Override
+    public int adjustTotalIfVersion(String cartId, long deltaMinor, long expectedVersion) {
+        return write(cartId, () -> memory.adjustTotalIfVersion(cartId, deltaMinor, expectedVersion));
+    }
+
+    @Override
+    public CartItem saveItem(CartItem item) {
+        return write(item.getCartId(), () -> memory.saveItem(item));
+    }
+
+    @Override
+    public void saveItems(Collection<CartItem> items) {
+        for (Map.Entry<String, List<CartItem>> group : byCart(items).entrySet()) {
+            write(group.getKey(), () -> {
+                memory.saveItems(group.getValue());
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public Optional<CartItem> findItem(String cartId, String itemId) {
+        return read(cartId, () -> memory.findItem(cartId, itemId));
+    }
+
+    @Override
+    public List<CartItem> findItems(String cartId, Collection<String> itemIds) {
+        return read(cartId, () -> memory.findItems(cartId, itemIds));
+    }
+
+    @Override
+    public List<CartItem> findItemsByProduct(String cartId, Collection<String> productIds) {
+        return read(cartId, () -> memory.findItemsByProduct(cartId, productIds));
+    }
+
+    @Override
+    public List<CartItem> findItemPage(String cartId, String afterItemId, int limit) {
+        return read(cartId, () -> memory.findItemPage(cartId, afterItemId, limit));
+    }
+
+    @Override
+    public void deleteItem(CartItem item) {
+        write(item.getCartId(), () -> {
+            memory.deleteItem(item);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteItems(Collection<CartItem> items) {
+        for (Map.Entry<String, List<CartItem>> group : byCart(items).entrySet()) {
+            write(group.getKey(), () -> {
+                memory.deleteItems(group.getValue());
+                return null;
+            });
+        }
+    }
+
+    // Carts in memory or queued are judged by their latest state, the rest by the database
+    @Override
+    public List<String> findCartIdsWithTotalDrift() {
+        Set<String> cartIds = new LinkedHashSet<>(memory.findCartIdsWithTotalDrift());
+        for (String cartId : readTemplate.execute(tx -> cartRepository.findCartIdsWithTotalDrift())) {
+            if (!memory.contains(cartId) && !isQueued(cartId)) {
+                cartIds.add(cartId);
+            }
+        }
+        return new ArrayList<>(cartIds);
+    }
+
+    @Override
+    public int recomputeTotal(String cartId) {
+        return write(cartId, () -> memory.recomputeTotal(cartId));
+    }
+
+    // Carts in memory or queued are judged by their latest state, the rest by the database
+    @Override
+    public List<String> findIdleCartIds(String status, Instant cutoff, int limit) {
+        Set<String> cartIds = new LinkedHashSet<>(memory.findIdleCartIds(status, cutoff, limit));
+        if (cartIds.size() < limit) {
+            List<String> stored = readTemplate.execute(tx -> cartRepository.findIdleCartIds(status, cutoff,
+                    Limit.of(limit)));
+            for (String cartId : stored) {
+                if (cartIds.size() < limit && !memory.contains(cartId) && !isQueued(cartId)) {
+                    cartIds.add(cartId);
+                }
+            }
+        }
+        return new ArrayList<>(cartIds);
+    }
+
+    // Changes go through memory and the queue like any other write, so the flusher stays the only
+    // writer of cart rows; carts only in the database are loaded one at a time to get there
+    @Override
+    public int updateStatusIfIdle(Collection<String> cartIds, String fromStatus, String toStatus, Instant cutoff) {
+        int updated = 0;
+        for (String cartId : cartIds) {
+            updated += write(cartId, () -> memory.updateStatusIfIdle(List.of(cartId), fromStatus, toStatus, cutoff));
+        }
+        return updated;
+    }
+
+    @Override
+    public int deleteIfIdle(Collection<String> cartIds, String status, Instant cutoff,
+                            Function<CartSummary, CartEvent> deletedEvent) {
+        int deleted = 0;
+        for (String cartId : cartIds) {
+            deleted += write(cartId, () -> memory.deleteIfIdle(List.of(cartId), status, cutoff, deletedEvent));
+        }
+        return deleted;
+    }
+
+    // Only touches rows without a timestamp; a queued snapshot of the same cart simply overwrites it
+    @Override
+    public int stampUnmodified(String status, int limit) {
+        return transactionTemplate.execute(tx -> cartRepository.stampUnmodified(status, limit));
+    }
+
+    // Events and their snapshots stay in the heap tier; they are not part of the flushed cart snapshots
+    @Override
+    public void appendEvents(List<CartEvent> events) {
+        memory.appendEvents(events);
+    }
+
+    @Override
+    public List<CartEvent> findEvents(String cartId, long afterSequence, int limit) {
+        return memory.findEvents(cartId, afterSequence, limit);
+    }
+
+    @Override
+    public List<CartEvent> findEventsAfter(long afterEventId, int limit) {
+        return memory.findEventsAfter(afterEventId, limit);
+    }
+
+    @Override
+    public List<String> findEventCartIds(String afterCartId, int limit) {
+        return memory.findEventCartIds(afterCartId, limit);
+    }
+
+    @Override
+    public List<String> findDeletedEventCartIds(Instant cutoff, int limit) {
+        return memory.findDeletedEventCartIds(cutoff, limit);
+    }
+
+    @Override
+    public void deleteEvents(Collection<String> cartIds) {
+        memory.deleteEvents(cartIds);
+    }
+
+    @Override
+    public Optional<CartEventSnapshot> findEventSnapshot(String cartId) {
+        return memory.findEventSnapshot(cartId);
+    }
+
+    @Override
+    public void saveEventSnapshot(CartEventSnapshot snapshot) {
+        memory.saveEventSnapshot(snapshot);
+    }
+
+    @Override
+    public void deleteEventSnapshot(String cartId) {
+        memory.deleteEventSnapshot(cartId);
+    }
+
+    @Override
+    public <T> T inCartScope(String cartId, Supplier<T> work) {
+        if (scopeDirty.get() == null) {
+            awaitCapacity(cartId);
+        }
+        return memory.inCartScope(cartId, () -> {
+            Set<String> dirty = scopeDirty.get();
+            if (dirty != null) {
+                return work.get();
+            }
+            dirty = new LinkedHashSet<>();
+            scopeDirty.set(dirty);
+            try {
+                return work.get();
+            } finally {
+                scopeDirty.remove();
+                // Published while the stripe is still held so snapshots of a cart queue in write order
+                for (String dirtyCartId : dirty) {
+                    enqueue(dirtyCartId, memory.findById(dirtyCartId).orElse(null));
+                }
+            }
+        });
+    }
+
+    private <T> T read(String cartId, Supplier<T> work) {
+        return memory.inCartScope(cartId, () -> {
+            loadIfAbsent(cartId);
+            return work.get();
+        });
+    }
+
+    private <T> T write(String cartId, Supplier<T> work) {
+        return inCartScope(cartId, () -> {
+            loadIfAbsent(cartId);
+            T result = work.get();
+            markDirty(cartId);
+            return result;
+        });
+    }
+
+    private void markDirty(String cartId) {
+        scopeDirty.get().add(cartId);
+    }
+
+    // Brings a cart into memory from the unflushed queue or, failing that, the database
+    private void loadIfAbsent(String cartId) {
+        if (cartId == null || memory.contains(cartId)) {
+            return;
+        }
+        ShoppingCart queued;
+        boolean inQueue;
+        queueLock.lock();
+        try {
+            inQueue = pending.containsKey(cartId) || inFlight.containsKey(cartId);
+            queued = pending.containsKey(cartId) ? pending.get(cartId) : inFlight.get(cartId);
+        } finally {
+            queueLock.unlock();
+        }
+        if (inQueue) {
+            if (queued != null) {
+                memory.load(queued);
+            }
+            return;
+        }
+        ShoppingCart stored = readTemplate.execute(status -> cartRepository.findById(cartId)
+                .map(WriteBehindCartStore::detach)
+                .orElse(null));
+        if (stored != null) {
+            settled.put(cartId, memory.load(stored).getVersion());
+        }
+    }
+
+    private boolean isQueued(String cartId) {
+        queueLock.lock();
+        try {
+            return pending.containsKey(cartId) || inFlight.containsKey(cartId);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    // Backpressure: writers wait for the flusher instead of growing the queue without bound. They wait
+    // before taking the cart's stripe, so nothing else waits on them; writers let through together can
+    // take the queue a little past max-pending
+    private void awaitCapacity(String cartId) {
+        queueLock.lock();
+        try {
+            while (pending.size() >= maxPending && !pending.containsKey(cartId)) {
+                notFull.awaitUninterruptibly();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void enqueue(String cartId, ShoppingCart snapshot) {
+        queueLock.lock();
+        try {
+            log.append(cartId, snapshot);
+            pending.remove(cartId);
+            pending.put(cartId, snapshot);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void requeue(List<Map.Entry<String, ShoppingCart>> entries) {
+        queueLock.lock();
+        try {
+            Map<String, ShoppingCart> merged = new LinkedHashMap<>();
+            for (Map.Entry<String, ShoppingCart> entry : entries) {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+            // Snapshots queued during the failed flush are newer and win
+            merged.putAll(pending);
+            pending = merged;
+            inFlight = Map.of();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void writeRow(Map.Entry<String, ShoppingCart> entry) {
+        String cartId = entry.getKey();
+        ShoppingCart cart = entry.getValue();
+        itemRepository.deleteRowsByCartId(cartId);
+        if (cart == null) {
+            cartRepository.deleteRow(cartId);
+            return;
+        }
+        cartRepository.upsertRow(cartId, cart.getUserId(), Money.toDecimal(cart.getTotalMinor()),
+                cart.getCurrency(), cart.getStatus(), cart.getVersion(), cart.getLastModified());
+        for (CartItem item : cart.getItems()) {
+            itemRepository.insertRow(item.getId(), cartId, item.getProductId(), item.getProductName(),
+                    Money.toDecimal(item.getPriceMinor()), item.getQuantity());
+        }
+    }
+
+    private static Map<String, List<CartItem>> byCart(Collection<CartItem> items) {
+        Map<String, List<CartItem>> groups = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            groups.computeIfAbsent(item.getCartId(), key -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    private static ShoppingCart detach(ShoppingCart cart) {
+        ShoppingCart copy = new ShoppingCart();
+        copy.setId(cart.getId());
+        copy.setUserId(cart.getUserId());
+        copy.setStatus(cart.getStatus());
+        copy.setTotalMinor(cart.getTotalMinor());
+        copy.setCurrency(cart.getCurrency());
+        copy.setVersion(cart.getVersion());
+        copy.setLastModified(cart.getLastModified());
+        List<CartItem> items = new ArrayList<>();
+        if (cart.getItems() != null) {
+            items.addAll(cart.getItems());
+        }
+        copy.setItems(items);
+        return copy;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Append-only log of cart snapshots, one JSON line each, split into numbered segments.
+// A segment is retired when its entries are handed to the flusher and deleted once they are in the database.
+// Not thread-safe; WriteBehindCartStore only calls it under its queue lock.
+class WriteBehindLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindLog.class);
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final boolean sync;
+    private final List<Path> retired = new ArrayList<>();
+    private long sequence;
+    private Path current;
+    private FileChannel channel;
+
+    WriteBehindLog(Path directory, ObjectMapper objectMapper, boolean sync) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.sync = sync;
+        try {
+            Files.createDirectories(directory);
+            for (Path segment : segments()) {
+                retired.add(segment);
+                sequence = Math.max(sequence, sequenceOf(segment));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open write-behind log in " + directory, ex);
+        }
+    }
+
+    // Latest snapshot per cart from segments left by a previous run; a null value is a deletion
+    Map<String, ShoppingCart> recover() {
+        Map<String, ShoppingCart> entries = new LinkedHashMap<>();
+        for (Path segment : retired) {
+            try (Stream<String> lines = Files.lines(segment, StandardCharsets.UTF_8)) {
+                lines.filter(line -> !line.isBlank()).forEach(line -> {
+                    try {
+                        Entry entry = objectMapper.readValue(line, Entry.class);
+                        entries.remove(entry.cartId());
+                        entries.put(entry.cartId(), entry.cart());
+                    } catch (IOException ex) {
+                        // A torn last line from a crash mid-append; everything before it is intact
+                        logger.warn("Skipping unreadable write-behind entry in {}", segment);
+                    }
+                });
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot read write-behind segment " + segment, ex);
+            }
+        }
+        if (!entries.isEmpty()) {
+            logger.info("Recovered {} unflushed cart snapshots from {}", entries.size(), directory);
+        }
+        return entries;
+    }
+
+    void append(String cartId, ShoppingCart cart) {
+        try {
+            if (channel == null) {
+                current = directory.resolve(PREFIX + String.format("%012d", ++sequence) + SUFFIX);
+                channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+            byte[] line = objectMapper.writeValueAsBytes(new Entry(cartId, cart));
+            ByteBuffer buffer = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n').flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot append to write-behind log " + current, ex);
+        }
+    }
+
+    // Closes the open segment; its entries belong to the batch being handed to the flusher
+    void rotate() {
+        if (channel == null) {
+            return;
+        }
+        closeChannel();
+        retired.add(current);
+        current = null;
+    }
+
+    // Called after a flush committed every entry written to the retired segments
+    void deleteRetired() {
+        for (Path segment : retired) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException ex) {
+                logger.warn("Cannot delete flushed write-behind segment {}", segment, ex);
+            }
+        }
+        retired.clear();
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException ex) {
+            logger.warn("Cannot close write-behind segment {}", current, ex);
+        }
+        channel = null;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(PREFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            return 0;
+        }
+    }
+
+    record Entry(String cartId, ShoppingCart cart) {
+    }
+}
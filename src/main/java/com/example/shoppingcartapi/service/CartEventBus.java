@@ -0,0 +1,206 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.repository.CartStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// In-process fan-out of committed cart events. Each subscription is served by its own virtual thread,
+// which hands its listener up to max-batch events per call, and publishing never waits for a subscriber.
+// A subscription to one cart reads that cart's events from the log past the sequence number it last
+// delivered, at its listener's pace: exactly once and in order. A subscription to every cart takes events
+// from a bounded queue; once that overflows it reads back from the log from the smallest id it was offered
+// since, so it gets every event at least once, even one that commits after an event with a greater id.
+@Component
+public class CartEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartEventBus.class);
+    private static final long NO_POSITION = Long.MAX_VALUE;
+    private final CartStore cartStore;
+    private final CartMetrics metrics;
+    private final int queueCapacity;
+    private final int maxBatch;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public CartEventBus(CartStore cartStore, CartMetrics metrics,
+                        @Value("${cart.events.queue-capacity:1000}") int queueCapacity,
+                        @Value("${cart.events.max-batch:100}") int maxBatch) {
+        this.cartStore = cartStore;
+        this.metrics = metrics;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    // Only for events whose writes have committed; subscribers may read them back from the log at once
+    public void publish(List<CartEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        metrics.recordPublished(events.size());
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(events);
+        }
+    }
+
+    // Events of one cart after its sequence number after, or of every cart when cartId is null after event
+    // id after; null for new events only
+    public Subscription subscribe(String cartId, Long after, Consumer<List<CartEvent>> listener) {
+        Subscription subscription = new Subscription(cartId, after, listener);
+        subscriptions.add(subscription);
+        subscription.start();
+        logger.debug("Opened event subscription for cart {} after {}", cartId, after);
+        return subscription;
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.forEach(Subscription::close);
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final String cartId;
+        private final Consumer<List<CartEvent>> listener;
+        // Every-cart subscriptions only
+        private final BlockingQueue<CartEvent> queue;
+        // Where the next log read starts: the id before the earliest event an every-cart subscription
+        // missed, or the sequence before the first event a one-cart subscription was offered; NO_POSITION if none
+        private final AtomicLong readAfter;
+        private final Semaphore signals = new Semaphore(0);
+        private final AtomicBoolean open = new AtomicBoolean(true);
+        // One-cart subscriptions: sequence of the last event delivered, owned by the worker thread
+        private long cursor;
+        private Thread worker;
+
+        private Subscription(String cartId, Long after, Consumer<List<CartEvent>> listener) {
+            this.cartId = cartId;
+            this.listener = listener;
+            this.queue = cartId == null ? new ArrayBlockingQueue<>(queueCapacity) : null;
+            this.readAfter = new AtomicLong(after == null ? NO_POSITION : after);
+            this.cursor = NO_POSITION;
+        }
+
+        private void start() {
+            worker = Thread.ofVirtual().name("cart-events-" + (cartId == null ? "all" : cartId)).start(this::run);
+        }
+
+        public boolean isOpen() {
+            return open.get();
+        }
+
+        @Override
+        public void close() {
+            if (!open.compareAndSet(true, false)) {
+                return;
+            }
+            subscriptions.remove(this);
+            if (worker != null && worker != Thread.currentThread()) {
+                worker.interrupt();
+            }
+            logger.debug("Closed event subscription for cart {}", cartId);
+        }
+
+        private void offer(List<CartEvent> events) {
+            boolean offered = false;
+            for (CartEvent event : events) {
+                if (cartId != null && !cartId.equals(event.getCartId())) {
+                    continue;
+                }
+                offered = true;
+                // Once one event is missed the rest follow it through the log, so none overtakes it
+                if (queue == null || readAfter.get() != NO_POSITION || !queue.offer(event)) {
+                    readAfter.accumulateAndGet(position(event) - 1, Math::min);
+                }
+            }
+            if (offered) {
+                signals.release();
+            }
+        }
+
+        private void run() {
+            try {
+                while (open.get()) {
+                    if (queue == null) {
+                        readCart();
+                    } else {
+                        drainQueue();
+                        long after = readAfter.getAndSet(NO_POSITION);
+                        if (after != NO_POSITION) {
+                            readLog(after);
+                            continue;
+                        }
+                    }
+                    signals.acquire();
+                    signals.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // Usually a listener whose client went away
+                logger.debug("Event subscription for cart {} stopped: {}", cartId, e.toString());
+            } finally {
+                close();
+            }
+        }
+
+        private void drainQueue() {
+            List<CartEvent> batch = new ArrayList<>(maxBatch);
+            while (open.get() && queue.drainTo(batch, maxBatch) > 0) {
+                listener.accept(batch);
+                batch = new ArrayList<>(maxBatch);
+            }
+        }
+
+        // A cart's sequence numbers follow its commits without gaps, so reading past the cursor never skips one
+        private void readCart() {
+            if (cursor == NO_POSITION) {
+                cursor = readAfter.get();
+                if (cursor == NO_POSITION) {
+                    return;
+                }
+            }
+            cursor = readLog(cursor);
+        }
+
+        private long readLog(long after) {
+            List<CartEvent> page;
+            do {
+                page = cartId == null
+                        ? cartStore.findEventsAfter(after, maxBatch)
+                        : cartStore.findEvents(cartId, after, maxBatch);
+                if (page.isEmpty() || !open.get()) {
+                    break;
+                }
+                after = position(page.get(page.size() - 1));
+                metrics.recordReplayed(page.size());
+                listener.accept(page);
+            } while (page.size() == maxBatch);
+            return after;
+        }
+
+        private long position(CartEvent event) {
+            return cartId == null ? event.getId() : event.getSequence();
+        }
+    }
+}
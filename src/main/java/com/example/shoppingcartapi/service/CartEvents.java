@@ -0,0 +1,66 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+
+import java.time.Instant;
+
+// Event log entries for the service's writes; item fields are copied, so later changes to a line never leak in
+final class CartEvents {
+
+    private CartEvents() {
+    }
+
+    static CartEvent cartCreated(ShoppingCart cart) {
+        CartEvent event = of(cart.getId(), CartEventType.CART_CREATED);
+        event.setUserId(cart.getUserId());
+        event.setCurrency(cart.getCurrency());
+        return event;
+    }
+
+    static CartEvent cartDeleted(CartSummary cart) {
+        CartEvent event = of(cart.getId(), CartEventType.CART_DELETED);
+        event.setUserId(cart.getUserId());
+        return event;
+    }
+
+    // added is the item as requested; line is the line it went into, whose id may still be unassigned
+    static CartEvent itemAdded(String cartId, CartItem line, CartItem added) {
+        CartEvent event = item(cartId, CartEventType.ITEM_ADDED, line);
+        if (added.getProductName() != null) {
+            event.setProductName(added.getProductName());
+        }
+        event.setPriceMinor(added.getPriceMinor());
+        event.setQuantity(added.getQuantity());
+        return event;
+    }
+
+    static CartEvent itemQuantityChanged(String cartId, CartItem line) {
+        return item(cartId, CartEventType.ITEM_QUANTITY_CHANGED, line);
+    }
+
+    static CartEvent itemRemoved(String cartId, CartItem line) {
+        return item(cartId, CartEventType.ITEM_REMOVED, line);
+    }
+
+    private static CartEvent item(String cartId, String type, CartItem line) {
+        CartEvent event = of(cartId, type);
+        event.setItemId(line.getId());
+        event.setProductId(line.getProductId());
+        event.setProductName(line.getProductName());
+        event.setPriceMinor(line.getPriceMinor());
+        event.setQuantity(line.getQuantity());
+        return event;
+    }
+
+    private static CartEvent of(String cartId, String type) {
+        CartEvent event = new CartEvent();
+        event.setCartId(cartId);
+        event.setType(type);
+        event.setOccurredAt(Instant.now());
+        return event;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartStatus;
+import com.example.shoppingcartapi.repository.CartStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+// Carts idle for longer than ttl are marked EXPIRED, carts that are no longer ACTIVE move to the archive
+// tier (cart.archive.enabled), and expired carts idle for longer than purge-after are deleted from either
+// tier, each with a CART_DELETED in its history. Once a cart has been deleted for history-retention, well past
+// the point where its subscribers have seen that event, its history goes too. Every pass works in chunks,
+// commits each chunk on its own and is paced to rows-per-second, so a large backlog never holds long locks.
+@Service
+@ConditionalOnProperty(name = "cart.expiry.enabled", havingValue = "true", matchIfMissing = true)
+public class CartExpirySweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartExpirySweeper.class);
+    private final CartStore cartStore;
+    private final CartCache cartCache;
+    private final CartEventBus eventBus;
+    private final CartMetrics metrics;
+    private final Duration ttl;
+    private final Duration purgeAfter;
+    private final Duration historyRetention;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+    private final int rowsPerSecond;
+    private final boolean archive;
+    private final Clock clock;
+
+    @Autowired
+    public CartExpirySweeper(CartStore cartStore, CartCache cartCache, CartEventBus eventBus, CartMetrics metrics,
+                             @Value("${cart.expiry.ttl:P30D}") Duration ttl,
+                             @Value("${cart.expiry.purge-after:P90D}") Duration purgeAfter,
+                             @Value("${cart.expiry.history-retention:PT1H}") Duration historyRetention,
+                             @Value("${cart.expiry.chunk-size:500}") int chunkSize,
+                             @Value("${cart.expiry.max-chunks-per-run:100}") int maxChunksPerRun,
+                             @Value("${cart.expiry.rows-per-second:2000}") int rowsPerSecond,
+                             @Value("${cart.archive.enabled:true}") boolean archive) {
+        this(cartStore, cartCache, eventBus, metrics, ttl, purgeAfter, historyRetention, chunkSize, maxChunksPerRun,
+                rowsPerSecond, archive, Clock.systemUTC());
+    }
+
+    CartExpirySweeper(CartStore cartStore, CartCache cartCache, CartEventBus eventBus, CartMetrics metrics,
+                      Duration ttl, Duration purgeAfter, Duration historyRetention, int chunkSize,
+                      int maxChunksPerRun, int rowsPerSecond, boolean archive, Clock clock) {
+        this.cartStore = cartStore;
+        this.cartCache = cartCache;
+        this.eventBus = eventBus;
+        this.metrics = metrics;
+        this.ttl = ttl;
+        this.purgeAfter = purgeAfter.compareTo(ttl) < 0 ? ttl : purgeAfter;
+        this.historyRetention = historyRetention;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxChunksPerRun = Math.max(1, maxChunksPerRun);
+        this.rowsPerSecond = Math.max(0, rowsPerSecond);
+        this.archive = archive;
+        this.clock = clock;
+    }
+
+    public record Progress(int expired, int archived, int purged, int compacted) {
+    }
+
+    @Scheduled(fixedDelayString = "${cart.expiry.interval-ms:60000}",
+            initialDelayString = "${cart.expiry.interval-ms:60000}")
+    public Progress sweep() {
+        Instant now = clock.instant();
+        cartStore.stampUnmodified(CartStatus.ACTIVE, chunkSize);
+        cartStore.stampUnmodified(CartStatus.EXPIRED, chunkSize);
+
+        Instant expireBefore = now.minus(ttl);
+        int expired = sweep("expire",
+                limit -> cartStore.findIdleCartIds(CartStatus.ACTIVE, expireBefore, limit),
+                cartIds -> cartStore.updateStatusIfIdle(cartIds, CartStatus.ACTIVE, CartStatus.EXPIRED, expireBefore),
+                metrics::recordExpired);
+        int archived = !archive ? 0 : sweep("archive",
+                cartStore::findArchivableCartIds,
+                cartStore::archive,
+                metrics::recordArchived);
+        Instant purgeBefore = now.minus(purgeAfter);
+        int purged = sweep("purge",
+                limit -> cartStore.findIdleCartIds(CartStatus.EXPIRED, purgeBefore, limit),
+                cartIds -> purge(cartIds, purgeBefore),
+                metrics::recordPurged);
+        Instant compactBefore = now.minus(historyRetention);
+        int compacted = sweep("compact",
+                limit -> cartStore.findDeletedEventCartIds(compactBefore, limit),
+                cartIds -> {
+                    cartStore.deleteEvents(cartIds);
+                    return cartIds.size();
+                },
+                metrics::recordCompacted);
+
+        if (expired > 0 || archived > 0 || purged > 0 || compacted > 0) {
+            logger.info("Expiry sweep expired {}, archived {} and purged {} carts, and dropped the history of {} "
+                    + "deleted carts", expired, archived, purged, compacted);
+        }
+        return new Progress(expired, archived, purged, compacted);
+    }
+
+    // The deletes and their events commit together; subscribers hear of them only after that
+    private int purge(List<String> cartIds, Instant cutoff) {
+        List<CartEvent> events = new ArrayList<>();
+        int purged = cartStore.deleteIfIdle(cartIds, CartStatus.EXPIRED, cutoff, cart -> {
+            CartEvent event = CartEvents.cartDeleted(cart);
+            events.add(event);
+            return event;
+        });
+        eventBus.publish(events);
+        return purged;
+    }
+
+    // Runs action over chunks of candidates until none are left or the run's chunk budget is spent
+    private int sweep(String pass, IntFunction<List<String>> candidates, ToIntFunction<List<String>> action,
+                      IntConsumer progress) {
+        int done = 0;
+        for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+            long started = System.nanoTime();
+            List<String> cartIds = candidates.apply(chunkSize);
+            if (cartIds.isEmpty()) {
+                break;
+            }
+            int affected = action.applyAsInt(cartIds);
+            cartIds.forEach(cartCache::evict);
+            long elapsed = System.nanoTime() - started;
+            metrics.recordExpiryChunk(elapsed);
+            progress.accept(affected);
+            done += affected;
+            logger.debug("Expiry sweep {}: {} of {} carts handled in {} ms", pass, affected, cartIds.size(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+            if (cartIds.size() < chunkSize || !pace(cartIds.size(), elapsed)) {
+                break;
+            }
+        }
+        return done;
+    }
+
+    // Sleeps off whatever the chunk left of its share of rows-per-second; false if interrupted
+    private boolean pace(int rows, long elapsedNanos) {
+        if (rowsPerSecond == 0) {
+            return true;
+        }
+        long budgetNanos = TimeUnit.SECONDS.toNanos(rows) / rowsPerSecond;
+        long sleepNanos = budgetNanos - elapsedNanos;
+        if (sleepNanos <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.CartStatus;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.repository.CartSnapshots;
+import com.example.shoppingcartapi.repository.CartStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A cart as its event log has it: the latest snapshot with the events logged after it folded on top.
+// A subscriber to every cart's events snapshots each cart every snapshot-every events, and a replay that
+// had to fold more than that snapshots the cart too, so rebuilding one cart stays bounded however long
+// its history grows.
+@Service
+public class CartHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartHistory.class);
+    private final CartStore cartStore;
+    private final CartEventBus eventBus;
+    private final CartMetrics metrics;
+    private final int snapshotEvery;
+    private final int pageSize;
+    // Events seen per cart since its last snapshot; reset by a restart, which the replay bound covers
+    private final Map<String, Integer> sinceSnapshot = new ConcurrentHashMap<>();
+    private CartEventBus.Subscription subscription;
+
+    @Autowired
+    public CartHistory(CartStore cartStore, CartEventBus eventBus, CartMetrics metrics,
+                       @Value("${cart.history.snapshot-every:100}") int snapshotEvery,
+                       @Value("${cart.history.page-size:500}") int pageSize) {
+        this.cartStore = cartStore;
+        this.eventBus = eventBus;
+        this.metrics = metrics;
+        this.snapshotEvery = Math.max(0, snapshotEvery);
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    // snapshot-every 0 turns periodic snapshots off; replays then fold the whole tail every time
+    @PostConstruct
+    public void start() {
+        if (snapshotEvery > 0) {
+            subscription = eventBus.subscribe(null, null, this::onEvents);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    // Empty if the cart was never created or has been deleted, by its user or by an expiry purge; the
+    // snapshot of a deleted cart goes. Expiry and archiving are not logged, so a replayed cart is ACTIVE
+    // and carries no version.
+    public Optional<ShoppingCart> replay(String cartId) {
+        return replay(cartId, false);
+    }
+
+    // Replays the cart and stores the result as its snapshot
+    public Optional<ShoppingCart> snapshot(String cartId) {
+        return replay(cartId, true);
+    }
+
+    private Optional<ShoppingCart> replay(String cartId, boolean snapshot) {
+        long started = System.nanoTime();
+        CartEventSnapshot base = cartStore.findEventSnapshot(cartId).orElse(null);
+        Replay replay = base == null ? new Replay(cartId) : new Replay(base);
+        int tail = 0;
+        List<CartEvent> page;
+        do {
+            page = cartStore.findEvents(cartId, replay.lastSequence, pageSize);
+            page.forEach(replay::apply);
+            tail += page.size();
+        } while (page.size() == pageSize);
+        metrics.recordHistoryReplay(tail, System.nanoTime() - started);
+
+        ShoppingCart cart = replay.result();
+        if (cart == null) {
+            if (base != null) {
+                cartStore.deleteEventSnapshot(cartId);
+            }
+            return Optional.empty();
+        }
+        if (tail > 0 && (snapshot || (snapshotEvery > 0 && tail >= snapshotEvery))) {
+            save(cart, replay.lastSequence);
+        }
+        return Optional.of(cart);
+    }
+
+    // The store keeps whichever snapshot is further along, so a replay racing another never moves it back
+    private void save(ShoppingCart cart, long lastSequence) {
+        try {
+            cartStore.saveEventSnapshot(CartSnapshots.snapshot(cart, lastSequence, Instant.now()));
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("A concurrent first snapshot of cart {} was saved before the one at event {}",
+                    cart.getId(), lastSequence);
+            return;
+        }
+        sinceSnapshot.remove(cart.getId());
+        metrics.recordHistorySnapshot();
+        logger.debug("Snapshot of cart {} taken at event {}", cart.getId(), lastSequence);
+    }
+
+    // Runs on the subscription's thread, so snapshots never hold up a write
+    private void onEvents(List<CartEvent> events) {
+        for (CartEvent event : events) {
+            String cartId = event.getCartId();
+            try {
+                if (CartEventType.CART_DELETED.equals(event.getType())) {
+                    sinceSnapshot.remove(cartId);
+                    cartStore.deleteEventSnapshot(cartId);
+                } else if (sinceSnapshot.merge(cartId, 1, Integer::sum) >= snapshotEvery) {
+                    snapshot(cartId);
+                }
+            } catch (RuntimeException e) {
+                // The next replay of the cart catches up; a failure must not end the subscription
+                logger.warn("Could not snapshot cart {}: {}", cartId, e.toString());
+                sinceSnapshot.remove(cartId);
+            }
+        }
+    }
+
+    // Folds events into a cart; cart is null while the cart does not exist at that point of its history
+    private static final class Replay {
+
+        private final String cartId;
+        private ShoppingCart cart;
+        // By item id, in the order the lines were added
+        private Map<String, CartItem> lines;
+        private long lastSequence;
+
+        private Replay(String cartId) {
+            this.cartId = cartId;
+        }
+
+        private Replay(CartEventSnapshot snapshot) {
+            this.cartId = snapshot.getCartId();
+            this.cart = CartSnapshots.restore(snapshot);
+            this.lines = new LinkedHashMap<>();
+            for (CartItem item : cart.getItems()) {
+                lines.put(item.getId(), item);
+            }
+            this.lastSequence = snapshot.getLastSequence();
+        }
+
+        private void apply(CartEvent event) {
+            lastSequence = event.getSequence();
+            switch (event.getType()) {
+                case CartEventType.CART_CREATED -> {
+                    cart = new ShoppingCart();
+                    cart.setId(cartId);
+                    cart.setUserId(event.getUserId());
+                    cart.setCurrency(event.getCurrency());
+                    cart.setStatus(CartStatus.ACTIVE);
+                    lines = new LinkedHashMap<>();
+                }
+                case CartEventType.CART_DELETED -> {
+                    cart = null;
+                    lines = null;
+                }
+                case CartEventType.ITEM_ADDED -> {
+                    if (cart != null) {
+                        CartItem line = line(event);
+                        line.setQuantity(line.getQuantity() + event.getQuantity());
+                        line.setPriceMinor(event.getPriceMinor());
+                    }
+                }
+                case CartEventType.ITEM_QUANTITY_CHANGED -> {
+                    if (cart != null) {
+                        CartItem line = line(event);
+                        line.setQuantity(event.getQuantity());
+                        line.setPriceMinor(event.getPriceMinor());
+                    }
+                }
+                case CartEventType.ITEM_REMOVED -> {
+                    if (cart != null) {
+                        lines.remove(event.getItemId());
+                    }
+                }
+                default -> logger.warn("Skipping event {} of unknown type {}", event.getId(), event.getType());
+            }
+            if (cart != null) {
+                cart.setLastModified(event.getOccurredAt());
+            }
+        }
+
+        private CartItem line(CartEvent event) {
+            CartItem line = lines.computeIfAbsent(event.getItemId(), itemId -> {
+                CartItem created = new CartItem();
+                created.setId(itemId);
+                created.setCartId(cartId);
+                created.setProductId(event.getProductId());
+                created.setQuantity(0);
+                return created;
+            });
+            if (event.getProductName() != null) {
+                line.setProductName(event.getProductName());
+            }
+            return line;
+        }
+
+        private ShoppingCart result() {
+            if (cart == null) {
+                return null;
+            }
+            List<CartItem> items = new ArrayList<>(lines.values());
+            cart.setItems(items);
+            cart.setTotalMinor(CartTotals.recompute(items));
+            return cart;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.repository.CartStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Replays every cart with a history, up to parallelism at once on virtual threads, snapshots each one at
+// its last event and checks the result against the stored cart. With cart.history.rebuild.on-startup it
+// runs before the application takes traffic, so every later replay starts from a fresh snapshot. Deleted
+// carts, purged ones included, replay to nothing and match the store until the sweep drops their history.
+@Component
+public class CartHistoryRebuilder implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartHistoryRebuilder.class);
+    private final CartStore cartStore;
+    private final CartHistory history;
+    private final boolean onStartup;
+    private final int parallelism;
+    private final int pageSize;
+
+    @Autowired
+    public CartHistoryRebuilder(CartStore cartStore, CartHistory history,
+                                @Value("${cart.history.rebuild.on-startup:false}") boolean onStartup,
+                                @Value("${cart.history.rebuild.parallelism:0}") int parallelism,
+                                @Value("${cart.history.page-size:500}") int pageSize) {
+        this.cartStore = cartStore;
+        this.history = history;
+        this.onStartup = onStartup;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    // mismatched: the history disagrees with the stored lines or total, or has deleted a cart the store still
+    // holds; missing: the store no longer holds a cart whose history has no deletion, so something removed it
+    // without logging that
+    public record Report(int carts, int mismatched, int missing, int failed, long elapsedMillis) {
+    }
+
+    private enum Outcome { MATCHED, MISMATCHED, MISSING }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (onStartup) {
+            rebuildAll();
+        }
+    }
+
+    public Report rebuildAll() {
+        long started = System.nanoTime();
+        AtomicInteger carts = new AtomicInteger();
+        AtomicInteger mismatched = new AtomicInteger();
+        AtomicInteger missing = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String afterCartId = null;
+            List<String> page;
+            do {
+                page = cartStore.findEventCartIds(afterCartId, pageSize);
+                for (String cartId : page) {
+                    permits.acquireUninterruptibly();
+                    executor.execute(() -> {
+                        try {
+                            switch (rebuild(cartId)) {
+                                case MISMATCHED -> mismatched.incrementAndGet();
+                                case MISSING -> missing.incrementAndGet();
+                                case MATCHED -> { }
+                            }
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                            logger.warn("Could not rebuild cart {} from its history: {}", cartId, e.toString());
+                        } finally {
+                            carts.incrementAndGet();
+                            permits.release();
+                        }
+                    });
+                }
+                if (!page.isEmpty()) {
+                    afterCartId = page.get(page.size() - 1);
+                }
+            } while (page.size() == pageSize);
+        }
+        Report report = new Report(carts.get(), mismatched.get(), missing.get(), failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        logger.info("Rebuilt {} carts from their history in {} ms: {} differ from the store, {} are no longer stored, "
+                + "{} failed", report.carts(), report.elapsedMillis(), report.mismatched(), report.missing(),
+                report.failed());
+        return report;
+    }
+
+    private Outcome rebuild(String cartId) {
+        Optional<ShoppingCart> rebuilt = history.snapshot(cartId);
+        Optional<ShoppingCart> stored = cartStore.findById(cartId).or(() -> cartStore.findArchivedById(cartId));
+        if (rebuilt.isEmpty()) {
+            return stored.isEmpty() ? Outcome.MATCHED : mismatch(cartId, "deleted in its history");
+        }
+        if (stored.isEmpty()) {
+            return Outcome.MISSING;
+        }
+        if (rebuilt.get().getTotalMinor() != stored.get().getTotalMinor()) {
+            return mismatch(cartId, "total " + rebuilt.get().getTotalMinor() + " in its history, "
+                    + stored.get().getTotalMinor() + " stored");
+        }
+        if (!lines(rebuilt.get()).equals(lines(stored.get()))) {
+            return mismatch(cartId, "lines differ");
+        }
+        return Outcome.MATCHED;
+    }
+
+    private static Outcome mismatch(String cartId, String detail) {
+        logger.warn("Cart {} does not match its history: {}", cartId, detail);
+        return Outcome.MISMATCHED;
+    }
+
+    private record Line(String productId, Long priceMinor, Integer quantity) {
+    }
+
+    private static Map<String, Line> lines(ShoppingCart cart) {
+        List<CartItem> items = cart.getItems() == null ? List.of() : cart.getItems();
+        return items.stream().collect(Collectors.toMap(CartItem::getId,
+                item -> new Line(item.getProductId(), item.getPriceMinor(), item.getQuantity()),
+                (first, second) -> first));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.exception.BadRequestException;
+import com.example.shoppingcartapi.model.CartItem;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+// Maps cart lines to just the fields a client asked for
+final class CartItemProjection {
+
+    private static final Map<String, Function<CartItem, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("id", CartItem::getId);
+        FIELDS.put("productId", CartItem::getProductId);
+        FIELDS.put("productName", CartItem::getProductName);
+        FIELDS.put("price", CartItem::getPrice);
+        FIELDS.put("quantity", CartItem::getQuantity);
+    }
+
+    private final Set<String> fields;
+
+    private CartItemProjection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    // No fields means all of them; unknown names are rejected rather than silently dropped
+    static CartItemProjection of(Collection<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return new CartItemProjection(FIELDS.keySet());
+        }
+        Set<String> fields = new LinkedHashSet<>();
+        for (String field : requested) {
+            String name = field == null ? "" : field.trim();
+            if (!FIELDS.containsKey(name)) {
+                throw new BadRequestException("Unknown item field: " + name + ", expected one of " + FIELDS.keySet());
+            }
+            fields.add(name);
+        }
+        return new CartItemProjection(fields);
+    }
+
+    Map<String, Object> apply(CartItem item) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        for (String field : fields) {
+            view.put(field, FIELDS.get(field).apply(item));
+        }
+        return view;
+    }
+
+    List<Map<String, Object>> apply(List<CartItem> items) {
+        return items.stream().map(this::apply).toList();
+    }
+}
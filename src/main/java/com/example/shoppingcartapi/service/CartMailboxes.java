@@ -0,0 +1,293 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.metrics.SqlStatementCounter;
+import com.example.shoppingcartapi.repository.CartStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// One mailbox per cart with work queued: its mutations run one at a time, in arrival order, on a virtual
+// thread of its own, while other carts' mailboxes run in parallel. The thread ends and the mailbox goes
+// once the queue is empty. Mutations that queued up behind a running one are taken together, up to
+// max-batch, and run in one inCartScope, which on the jpa engine is one transaction and one commit. Each
+// one's writes are flushed before the next runs, so a failure belongs to the mutation that caused it. On
+// a failure the scope rolls back: the mutations before the failed one run again together, the failed one
+// runs again on its own, as it would have without mailboxes, and those after it carry on as a batch, so
+// one request's failure is never another's. Mailboxes only order the writes of this process; version
+// checks still guard against others.
+@Component
+public class CartMailboxes {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartMailboxes.class);
+    // The mailbox whose worker is the current thread; a mutation it runs that calls back in runs inline
+    private static final ThreadLocal<Mailbox> CURRENT = new ThreadLocal<>();
+    private final CartStore cartStore;
+    private final CartMetrics metrics;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    @Autowired
+    public CartMailboxes(CartStore cartStore, CartMetrics metrics,
+                         @Value("${cart.mailbox.enabled:false}") boolean enabled,
+                         @Value("${cart.mailbox.max-batch:32}") int maxBatch) {
+        this.cartStore = cartStore;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    // Runs the mutation in the cart's mailbox and waits for it; without mailboxes it runs on the caller.
+    // So does a mutation called within a transaction, which may already hold the cart's row lock that the
+    // mailbox thread would then wait on while the caller waits for the mailbox.
+    public <T> T execute(String cartId, Supplier<T> mutation) {
+        if (!enabled || cartId == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return mutation.get();
+        }
+        Mailbox current = CURRENT.get();
+        if (current != null && current.cartId.equals(cartId)) {
+            return mutation.get();
+        }
+        Task<T> task = new Task<>(mutation);
+        // Queue changes and the mailbox's removal all happen under the map's lock for the cart
+        mailboxes.compute(cartId, (id, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox(id);
+            }
+            mailbox.tasks.add(task);
+            queued.incrementAndGet();
+            metrics.recordMailboxDepth(mailbox.tasks.size());
+            if (!mailbox.running) {
+                mailbox.running = true;
+                Thread.ofVirtual().name("cart-mailbox-" + id).start(mailbox::run);
+            }
+            return mailbox;
+        });
+        return task.await();
+    }
+
+    // Carts with a mailbox, which is carts with a mutation queued or running
+    public int activeCount() {
+        return mailboxes.size();
+    }
+
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    private final class Mailbox {
+
+        private final String cartId;
+        private final Queue<Task<?>> tasks = new ArrayDeque<>();
+        private boolean running;
+
+        private Mailbox(String cartId) {
+            this.cartId = cartId;
+        }
+
+        private void run() {
+            CURRENT.set(this);
+            try {
+                List<Task<?>> batch;
+                while ((batch = take()) != null) {
+                    runBatch(batch);
+                }
+            } finally {
+                CURRENT.remove();
+                SqlStatementCounter.clear();
+            }
+        }
+
+        // Up to max-batch queued tasks; null once the queue is empty, with the mailbox removed
+        private List<Task<?>> take() {
+            List<Task<?>> batch = new ArrayList<>();
+            mailboxes.compute(cartId, (id, mailbox) -> {
+                while (batch.size() < maxBatch && !tasks.isEmpty()) {
+                    batch.add(tasks.poll());
+                }
+                queued.addAndGet(-batch.size());
+                if (batch.isEmpty()) {
+                    running = false;
+                    return null;
+                }
+                return this;
+            });
+            return batch.isEmpty() ? null : batch;
+        }
+
+        private void runBatch(List<Task<?>> batch) {
+            long started = System.nanoTime();
+            for (Task<?> task : batch) {
+                metrics.recordMailboxWait(started - task.queuedAt);
+            }
+            metrics.recordMailboxBatch(batch.size());
+            List<Task<?>> pending = batch;
+            while (!pending.isEmpty()) {
+                pending = runTogether(pending);
+            }
+        }
+
+        // Runs the tasks in one scope and completes those it settles; returns the ones still to run
+        private List<Task<?>> runTogether(List<Task<?>> tasks) {
+            if (tasks.size() == 1) {
+                runAlone(tasks.get(0));
+                return List.of();
+            }
+            boolean rollsBack = cartStore.isTransactional();
+            int before = SqlStatementCounter.current();
+            int attributedBefore = tasks.stream().mapToInt(task -> task.statements).sum();
+            int[] failed = {-1};
+            try {
+                cartStore.inCartScope(cartId, () -> {
+                    for (int i = 0; i < tasks.size(); i++) {
+                        Task<?> task = tasks.get(i);
+                        task.run();
+                        if (task.failure == null) {
+                            flush(task);
+                        }
+                        // Without rollback the failure stays the task's own, as it would have alone
+                        if (rollsBack && task.failure instanceof RuntimeException e) {
+                            failed[0] = i;
+                            throw e;
+                        }
+                        if (rollsBack && task.failure instanceof Error e) {
+                            failed[0] = i;
+                            throw e;
+                        }
+                    }
+                    return null;
+                });
+            } catch (RuntimeException | Error e) {
+                if (!rollsBack) {
+                    for (Task<?> task : tasks) {
+                        if (!task.ran) {
+                            task.failure = e;
+                        }
+                    }
+                    tasks.forEach(Task::complete);
+                    return List.of();
+                }
+                int index = failed[0];
+                if (index < 0) {
+                    // The commit failed, so no one task is to blame
+                    logger.debug("Batch of {} mutations to cart {} failed to commit, running them one by one: {}",
+                            tasks.size(), cartId, e.toString());
+                    tasks.forEach(this::runAlone);
+                    return List.of();
+                }
+                logger.debug("Mutation {} of a batch of {} to cart {} failed, rolling the batch back: {}",
+                        index + 1, tasks.size(), cartId, tasks.get(index).failure.toString());
+                List<Task<?>> earlier = tasks.subList(0, index);
+                for (Task<?> task : earlier) {
+                    task.reset();
+                }
+                while (!earlier.isEmpty()) {
+                    earlier = runTogether(earlier);
+                }
+                runAlone(tasks.get(index));
+                return tasks.subList(index + 1, tasks.size());
+            }
+            // The commit's statements go to the last task, whose request would have run them alone
+            int attributed = tasks.stream().mapToInt(task -> task.statements).sum() - attributedBefore;
+            tasks.get(tasks.size() - 1).statements += SqlStatementCounter.current() - before - attributed;
+            tasks.forEach(Task::complete);
+            return List.of();
+        }
+
+        private void runAlone(Task<?> task) {
+            task.reset();
+            task.run();
+            task.complete();
+        }
+
+        // What the flush sends was written by this task, so a failure of it is the task's own
+        private void flush(Task<?> task) {
+            int before = SqlStatementCounter.current();
+            try {
+                cartStore.flushScope();
+            } catch (RuntimeException e) {
+                task.failure = e;
+            } finally {
+                task.statements += SqlStatementCounter.current() - before;
+            }
+        }
+    }
+
+    private static final class Task<T> {
+
+        private final Supplier<T> mutation;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<T> done = new CompletableFuture<>();
+        private T result;
+        private Throwable failure;
+        private boolean ran;
+        // Statements run for this task, handed back to the caller's count when it resumes
+        private int statements;
+
+        private Task(Supplier<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        private void run() {
+            int before = SqlStatementCounter.current();
+            try {
+                result = mutation.get();
+                failure = null;
+            } catch (RuntimeException | Error e) {
+                result = null;
+                failure = e;
+            } finally {
+                ran = true;
+                statements += SqlStatementCounter.current() - before;
+            }
+        }
+
+        // Forgets the outcome of a run that was rolled back
+        private void reset() {
+            result = null;
+            failure = null;
+            ran = false;
+        }
+
+        private void complete() {
+            if (failure != null) {
+                done.completeExceptionally(failure);
+            } else {
+                done.complete(result);
+            }
+        }
+
+        // Waits without giving up on interrupt: the mutation is queued and will run either way
+        private T await() {
+            try {
+                return done.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            } finally {
+                SqlStatementCounter.add(statements);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.Money;
+
+import java.util.Collection;
+
+// Totals in long minor units: exact, and no BigDecimal or boxed value per line
+public final class CartTotals {
+
+    private CartTotals() {
+    }
+
+    public static long lineTotal(CartItem item) {
+        return lineTotal(item.getPriceMinor(), item.getQuantity());
+    }
+
+    public static long lineTotal(Long priceMinor, Integer quantity) {
+        if (priceMinor == null || quantity == null) {
+            return 0L;
+        }
+        return Money.lineTotal(priceMinor, quantity);
+    }
+
+    // Applies the delta of a single line to the running total without touching the other lines
+    public static long applyDelta(long runningTotal, long delta) {
+        return Math.addExact(runningTotal, delta);
+    }
+
+    public static long addLine(long runningTotal, CartItem item) {
+        return applyDelta(runningTotal, lineTotal(item));
+    }
+
+    public static long removeLine(long runningTotal, CartItem item) {
+        return applyDelta(runningTotal, -lineTotal(item));
+    }
+
+    public static long changeQuantity(long runningTotal, CartItem item, int newQuantity) {
+        long delta = lineTotal(item.getPriceMinor(), newQuantity) - lineTotal(item);
+        return applyDelta(runningTotal, delta);
+    }
+
+    // Full recompute, used only by the verification path
+    public static long recompute(Collection<CartItem> items) {
+        long total = 0L;
+        if (items != null) {
+            for (CartItem item : items) {
+                total = Math.addExact(total, lineTotal(item));
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.repository.CartStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+@Service
+@ConditionalOnProperty(name = "cart.totals.verification.enabled", havingValue = "true", matchIfMissing = true)
+public class CartTotalsReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartTotalsReconciler.class);
+    private final CartStore cartStore;
+    private final CartCache cartCache;
+
+    @Autowired
+    public CartTotalsReconciler(CartStore cartStore, CartCache cartCache) {
+        this.cartStore = cartStore;
+        this.cartCache = cartCache;
+    }
+
+    // Running totals are maintained incrementally; this periodically recomputes any that drifted
+    @Scheduled(fixedDelayString = "${cart.totals.verification.interval-ms:300000}",
+            initialDelayString = "${cart.totals.verification.interval-ms:300000}")
+    @Transactional
+    public int reconcile() {
+        List<String> driftedCartIds = cartStore.findCartIdsWithTotalDrift();
+        for (String cartId : driftedCartIds) {
+            logger.warn("Cart {} running total drifted from its items, recomputing", cartId);
+            cartStore.recomputeTotal(cartId);
+        }
+        if (!driftedCartIds.isEmpty()) {
+            evictAfterCommit(driftedCartIds);
+            logger.info("Recomputed totals for {} carts", driftedCartIds.size());
+        }
+        return driftedCartIds.size();
+    }
+
+    // Cached copies still carry the drifted total; evicting again after commit stops a concurrent read
+    // from caching the pre-commit state
+    private void evictAfterCommit(List<String> cartIds) {
+        cartIds.forEach(cartCache::evict);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cartIds.forEach(cartCache::evict);
+                }
+            });
+        }
+    }
+}
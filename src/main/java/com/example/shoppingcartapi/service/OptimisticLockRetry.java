@@ -0,0 +1,66 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.exception.ConflictException;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+@Component
+public class OptimisticLockRetry {
+
+    private static final Logger logger = LoggerFactory.getLogger(OptimisticLockRetry.class);
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final CartMetrics metrics;
+
+    public OptimisticLockRetry(
+            @Value("${cart.concurrency.max-attempts:3}") int maxAttempts,
+            @Value("${cart.concurrency.backoff-ms:10}") long backoffMillis,
+            CartMetrics metrics) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = Math.max(0, backoffMillis);
+        this.metrics = metrics;
+    }
+
+    // Each attempt must re-read the cart, so the action has to run outside any caller transaction
+    public <T> T execute(String cartId, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException ex) {
+                // Inside a surrounding transaction a retry would read the same stale state; its owner retries
+                if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                    throw ex;
+                }
+                if (attempt >= maxAttempts) {
+                    metrics.recordConflict();
+                    logger.warn("Cart {} still conflicting after {} attempts", cartId, attempt);
+                    throw new ConflictException("Cart was modified concurrently: " + cartId, ex);
+                }
+                metrics.recordRetry();
+                logger.debug("Optimistic lock conflict on cart {} (attempt {}), retrying", cartId, attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        if (backoffMillis == 0) {
+            return;
+        }
+        long delay = backoffMillis * attempt + ThreadLocalRandom.current().nextLong(backoffMillis + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("Interrupted while retrying cart update", ex);
+        }
+    }
+}
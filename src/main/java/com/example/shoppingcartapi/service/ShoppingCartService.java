@@ -1,139 +1,869 @@
 package com.example.shoppingcartapi.service;
 
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.dto.CartBatchRequest;
+import com.example.shoppingcartapi.dto.CartBatchResponse;
+import com.example.shoppingcartapi.dto.CartItemMutationResponse;
+import com.example.shoppingcartapi.dto.CartItemOperation;
+import com.example.shoppingcartapi.dto.CartItemOperationResult;
+import com.example.shoppingcartapi.dto.CartItemPage;
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
 import com.example.shoppingcartapi.exception.BadRequestException;
+import com.example.shoppingcartapi.exception.PreconditionFailedException;
 import com.example.shoppingcartapi.exception.ResourceNotFoundException;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
 import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.CartStatus;
+import com.example.shoppingcartapi.model.Money;
 import com.example.shoppingcartapi.model.ShoppingCart;
-import com.example.shoppingcartapi.repository.ShoppingCartRepository;
+import com.example.shoppingcartapi.repository.CartStore;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Service
 public class ShoppingCartService {
     
     private static final Logger logger = LoggerFactory.getLogger(ShoppingCartService.class);
-    private final ShoppingCartRepository cartRepository;
+    private static final int MAX_BATCH_OPERATIONS = 500;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int STREAM_PAGE_SIZE = 500;
+    private static final String LINE_TOO_LARGE = "Item price or line total too large";
+    private final CartStore cartStore;
+    private final CartCache cartCache;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final CartMetrics metrics;
+    private final CartEventBus eventBus;
+    private final CartMailboxes mailboxes;
     
+    // Writes to an existing cart go through its mailbox, which runs them in turn and owns their transaction,
+    // so they are not @Transactional here: the waiting caller must not hold a connection of its own
     @Autowired
-    public ShoppingCartService(ShoppingCartRepository cartRepository) {
-        this.cartRepository = cartRepository;
+    public ShoppingCartService(CartStore cartStore, CartCache cartCache, OptimisticLockRetry optimisticLockRetry,
+                               CartMetrics metrics, CartEventBus eventBus, CartMailboxes mailboxes) {
+        this.cartStore = cartStore;
+        this.cartCache = cartCache;
+        this.optimisticLockRetry = optimisticLockRetry;
+        this.metrics = metrics;
+        this.eventBus = eventBus;
+        this.mailboxes = mailboxes;
     }
     
+    @Timed(value = "cart.service", extraTags = {"operation", "createCart"}, histogram = true)
+    @Transactional
     public ShoppingCart createCart(String userId) {
+        return createCart(userId, null);
+    }
+    
+    // A null currency means Money.DEFAULT_CURRENCY
+    @Timed(value = "cart.service", extraTags = {"operation", "createCart"}, histogram = true)
+    @Transactional
+    public ShoppingCart createCart(String userId, String currency) {
         logger.debug("Creating new cart for user: {}", userId);
         if (userId == null || userId.trim().isEmpty()) {
             logger.error("Invalid user ID provided: {}", userId);
             throw new BadRequestException("User ID cannot be empty");
         }
+        String cartCurrency = currency == null ? Money.DEFAULT_CURRENCY : currency.trim().toUpperCase();
+        if (!Money.isSupportedCurrency(cartCurrency)) {
+            logger.error("Unsupported currency provided: {}", currency);
+            throw new BadRequestException("Unsupported currency: " + currency);
+        }
         
         ShoppingCart cart = new ShoppingCart();
         cart.setUserId(userId);
-        cart.setStatus("ACTIVE");
-        cart.setTotalAmount(0.0);
+        cart.setStatus(CartStatus.ACTIVE);
+        cart.setTotalMinor(0L);
+        cart.setCurrency(cartCurrency);
         cart.setItems(new ArrayList<>());
         
-        ShoppingCart savedCart = cartRepository.save(cart);
+        ShoppingCart savedCart = cartStore.save(cart);
+        appendEvents(List.of(CartEvents.cartCreated(savedCart)));
         logger.debug("Created new cart with ID: {}", savedCart.getId());
         return savedCart;
     }
     
+    @Timed(value = "cart.service", extraTags = {"operation", "addItemToCart"}, histogram = true)
     public ShoppingCart addItemToCart(String cartId, CartItem item) {
+        return addItemToCart(cartId, item, null);
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "addItemToCart"}, histogram = true)
+    public ShoppingCart addItemToCart(String cartId, CartItem item, Long expectedVersion) {
         logger.debug("Adding item to cart {}: {}", cartId, item);
-        if (item == null) {
-            logger.error("Null item provided for cart: {}", cartId);
-            throw new BadRequestException("Cart item cannot be null");
-        }
-        if (item.getPrice() == null || item.getPrice() < 0) {
-            logger.error("Invalid price {} for item in cart: {}", item.getPrice(), cartId);
-            throw new BadRequestException("Invalid item price");
-        }
-        if (item.getQuantity() == null || item.getQuantity() < 1) {
-            logger.error("Invalid quantity {} for item in cart: {}", item.getQuantity(), cartId);
-            throw new BadRequestException("Invalid item quantity");
-        }
-        
-        ShoppingCart cart = cartRepository.findById(cartId)
+        validateItem(cartId, item);
+        ShoppingCart updatedCart = mailboxes.execute(cartId, () -> optimisticLockRetry.execute(cartId,
+                () -> cartStore.inCartScope(cartId,
+                        () -> cacheAfterCommit(doAddItemToCart(cartId, item, expectedVersion)))));
+        recordCartSize(updatedCart);
+        return updatedCart;
+    }
+    
+    private ShoppingCart doAddItemToCart(String cartId, CartItem item, Long expectedVersion) {
+        ShoppingCart cart = cartStore.findById(cartId)
             .orElseThrow(() -> {
                 logger.error("Cart not found with ID: {}", cartId);
                 return new ResourceNotFoundException("Cart not found with id: " + cartId);
             });
+        checkVersion(cart, expectedVersion);
         
-        item.setCartId(cartId);
-        cart.getItems().add(item);
-        
-        // Update total amount
-        double totalAmount = cart.getItems().stream()
-                .mapToDouble(item1 -> item1.getPrice() * item1.getQuantity())
-                .sum();
-        cart.setTotalAmount(totalAmount);
+        CartItem line = null;
+        for (CartItem existing : cart.getItems()) {
+            if (Objects.equals(existing.getProductId(), item.getProductId())) {
+                line = existing;
+                break;
+            }
+        }
+        long totalMinor;
+        if (line == null) {
+            item.setId(null);
+            item.setCartId(cartId);
+            cart.getItems().add(item);
+            // Apply the new line to the running total
+            totalMinor = CartTotals.addLine(cart.getTotalMinor(), item);
+        } else {
+            totalMinor = CartTotals.applyDelta(cart.getTotalMinor(), mergeLine(line, item));
+        }
+        cart.setTotalMinor(totalMinor);
         
-        ShoppingCart updatedCart = cartRepository.save(cart);
-        logger.debug("Updated cart {} with new total amount: {}", cartId, totalAmount);
+        ShoppingCart updatedCart = cartStore.save(cart);
+        CartItem addedTo = savedLine(updatedCart, line != null ? line : item);
+        appendEvents(List.of(CartEvents.itemAdded(cartId, addedTo, item)));
+        logger.debug("Updated cart {} with new total amount: {}", cartId, updatedCart.getTotalAmount());
         return updatedCart;
     }
     
+    @Timed(value = "cart.service", extraTags = {"operation", "removeItemFromCart"}, histogram = true)
     public ShoppingCart removeItemFromCart(String cartId, String itemId) {
+        return removeItemFromCart(cartId, itemId, null);
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "removeItemFromCart"}, histogram = true)
+    public ShoppingCart removeItemFromCart(String cartId, String itemId, Long expectedVersion) {
         logger.debug("Removing item {} from cart {}", itemId, cartId);
         if (itemId == null || itemId.trim().isEmpty()) {
             logger.error("Invalid item ID provided: {}", itemId);
             throw new BadRequestException("Item ID cannot be empty");
         }
-        
-        ShoppingCart cart = cartRepository.findById(cartId)
+        ShoppingCart updatedCart = mailboxes.execute(cartId, () -> optimisticLockRetry.execute(cartId,
+                () -> cartStore.inCartScope(cartId,
+                        () -> cacheAfterCommit(doRemoveItemFromCart(cartId, itemId, expectedVersion)))));
+        recordCartSize(updatedCart);
+        return updatedCart;
+    }
+    
+    private ShoppingCart doRemoveItemFromCart(String cartId, String itemId, Long expectedVersion) {
+        ShoppingCart cart = cartStore.findById(cartId)
             .orElseThrow(() -> {
                 logger.error("Cart not found with ID: {}", cartId);
                 return new ResourceNotFoundException("Cart not found with id: " + cartId);
             });
+        checkVersion(cart, expectedVersion);
         
-        boolean removed = cart.getItems().removeIf(item -> item.getId().equals(itemId));
-        if (!removed) {
+        CartItem removed = null;
+        Iterator<CartItem> iterator = cart.getItems().iterator();
+        while (iterator.hasNext()) {
+            CartItem item = iterator.next();
+            if (item.getId().equals(itemId)) {
+                iterator.remove();
+                removed = item;
+                break;
+            }
+        }
+        if (removed == null) {
             logger.error("Item {} not found in cart {}", itemId, cartId);
             throw new ResourceNotFoundException("Item not found in cart with id: " + itemId);
         }
         
-        // Update total amount
-        double totalAmount = cart.getItems().stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
-        cart.setTotalAmount(totalAmount);
+        // Subtract the removed line from the running total
+        cart.setTotalMinor(CartTotals.removeLine(cart.getTotalMinor(), removed));
         
-        ShoppingCart updatedCart = cartRepository.save(cart);
-        logger.debug("Updated cart {} after item removal. New total amount: {}", cartId, totalAmount);
+        ShoppingCart updatedCart = cartStore.save(cart);
+        appendEvents(List.of(CartEvents.itemRemoved(cartId, removed)));
+        logger.debug("Updated cart {} after item removal. New total amount: {}", cartId,
+                updatedCart.getTotalAmount());
         return updatedCart;
     }
     
-    public ShoppingCart getCart(String cartId) {
-        logger.debug("Fetching cart with ID: {}", cartId);
+    @Timed(value = "cart.service", extraTags = {"operation", "addItem"}, histogram = true)
+    public CartItemMutationResponse addItem(String cartId, CartItem item) {
+        return addItem(cartId, item, null);
+    }
+    
+    // Inserts the line and adjusts the stored total without loading the cart or its items
+    @Timed(value = "cart.service", extraTags = {"operation", "addItem"}, histogram = true)
+    public CartItemMutationResponse addItem(String cartId, CartItem item, Long expectedVersion) {
+        logger.debug("Adding item to cart {} (item-level write): {}", cartId, item);
+        validateItem(cartId, item);
+        
+        return mailboxes.execute(cartId, () -> cartStore.inCartScope(cartId, () -> {
+            // Adjusting first also locks the cart row, so concurrent adds of one product merge in turn
+            adjustTotal(cartId, CartTotals.lineTotal(item), expectedVersion);
+            
+            CartItem line = findLine(cartId, item.getProductId());
+            CartItem savedItem;
+            if (line == null) {
+                item.setId(null);
+                item.setCartId(cartId);
+                savedItem = cartStore.saveItem(item);
+            } else {
+                long repricing = mergeLine(line, item) - CartTotals.lineTotal(item);
+                if (repricing != 0) {
+                    cartStore.adjustTotal(cartId, repricing);
+                }
+                savedItem = cartStore.saveItem(line);
+            }
+            appendEvents(List.of(CartEvents.itemAdded(cartId, savedItem, item)));
+            evictAfterCommit(cartId);
+            long totalMinor = cartStore.findTotalMinorById(cartId).orElse(0L);
+            logger.debug("Added item {} to cart {}. New total amount: {}", savedItem.getId(), cartId,
+                    Money.toMajor(totalMinor));
+            return new CartItemMutationResponse(cartId, savedItem, totalMinor);
+        }));
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "removeItem"}, histogram = true)
+    public CartItemMutationResponse removeItem(String cartId, String itemId) {
+        return removeItem(cartId, itemId, null);
+    }
+    
+    // Deletes the line and adjusts the stored total without loading the cart or its items
+    @Timed(value = "cart.service", extraTags = {"operation", "removeItem"}, histogram = true)
+    public CartItemMutationResponse removeItem(String cartId, String itemId, Long expectedVersion) {
+        logger.debug("Removing item {} from cart {} (item-level write)", itemId, cartId);
+        if (itemId == null || itemId.trim().isEmpty()) {
+            logger.error("Invalid item ID provided: {}", itemId);
+            throw new BadRequestException("Item ID cannot be empty");
+        }
+        
+        return mailboxes.execute(cartId, () -> cartStore.inCartScope(cartId, () -> {
+            CartItem item = cartStore.findItem(cartId, itemId)
+                .orElseThrow(() -> {
+                    logger.error("Item {} not found in cart {}", itemId, cartId);
+                    return new ResourceNotFoundException("Item not found in cart with id: " + itemId);
+                });
+            
+            // The version check comes before any write, so a failed one leaves nothing behind on any engine
+            adjustTotal(cartId, -CartTotals.lineTotal(item), expectedVersion);
+            cartStore.deleteItem(item);
+            appendEvents(List.of(CartEvents.itemRemoved(cartId, item)));
+            evictAfterCommit(cartId);
+            long totalMinor = cartStore.findTotalMinorById(cartId).orElse(0L);
+            logger.debug("Removed item {} from cart {}. New total amount: {}", itemId, cartId,
+                    Money.toMajor(totalMinor));
+            return new CartItemMutationResponse(cartId, item, totalMinor);
+        }));
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "updateItemQuantityInCart"}, histogram = true)
+    public ShoppingCart updateItemQuantityInCart(String cartId, String itemId, Integer quantity,
+                                                 Long expectedVersion) {
+        logger.debug("Setting quantity of item {} in cart {} to {}", itemId, cartId, quantity);
+        validateQuantityUpdate(itemId, quantity);
+        ShoppingCart updatedCart = mailboxes.execute(cartId, () -> optimisticLockRetry.execute(cartId,
+                () -> cartStore.inCartScope(cartId, () -> cacheAfterCommit(
+                        doUpdateItemQuantityInCart(cartId, itemId, quantity, expectedVersion)))));
+        recordCartSize(updatedCart);
+        return updatedCart;
+    }
+    
+    private ShoppingCart doUpdateItemQuantityInCart(String cartId, String itemId, Integer quantity,
+                                                    Long expectedVersion) {
+        ShoppingCart cart = cartStore.findById(cartId)
+            .orElseThrow(() -> {
+                logger.error("Cart not found with ID: {}", cartId);
+                return new ResourceNotFoundException("Cart not found with id: " + cartId);
+            });
+        checkVersion(cart, expectedVersion);
+        
+        CartItem line = cart.getItems().stream()
+            .filter(item -> item.getId().equals(itemId))
+            .findFirst()
+            .orElseThrow(() -> {
+                logger.error("Item {} not found in cart {}", itemId, cartId);
+                return new ResourceNotFoundException("Item not found in cart with id: " + itemId);
+            });
+        checkLineTotal(cartId, line.getPriceMinor(), quantity);
+        cart.setTotalMinor(CartTotals.changeQuantity(cart.getTotalMinor(), line, quantity));
+        line.setQuantity(quantity);
+        
+        ShoppingCart saved = cartStore.save(cart);
+        appendEvents(List.of(CartEvents.itemQuantityChanged(cartId, line)));
+        return saved;
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "updateItemQuantity"}, histogram = true)
+    public CartItemMutationResponse updateItemQuantity(String cartId, String itemId, Integer quantity) {
+        return updateItemQuantity(cartId, itemId, quantity, null);
+    }
+    
+    // Sets the quantity of one line and adjusts the stored total without loading the cart
+    @Timed(value = "cart.service", extraTags = {"operation", "updateItemQuantity"}, histogram = true)
+    public CartItemMutationResponse updateItemQuantity(String cartId, String itemId, Integer quantity,
+                                                       Long expectedVersion) {
+        logger.debug("Setting quantity of item {} in cart {} to {} (item-level write)", itemId, cartId, quantity);
+        validateQuantityUpdate(itemId, quantity);
+        return mailboxes.execute(cartId, () -> cartStore.inCartScope(cartId, () -> {
+            CartItem item = cartStore.findItem(cartId, itemId)
+                .orElseThrow(() -> {
+                    logger.error("Item {} not found in cart {}", itemId, cartId);
+                    return new ResourceNotFoundException("Item not found in cart with id: " + itemId);
+                });
+            checkLineTotal(cartId, item.getPriceMinor(), quantity);
+            
+            long delta = CartTotals.lineTotal(item.getPriceMinor(), quantity) - CartTotals.lineTotal(item);
+            adjustTotal(cartId, delta, expectedVersion);
+            item.setQuantity(quantity);
+            CartItem savedItem = cartStore.saveItem(item);
+            appendEvents(List.of(CartEvents.itemQuantityChanged(cartId, savedItem)));
+            evictAfterCommit(cartId);
+            long totalMinor = cartStore.findTotalMinorById(cartId).orElse(0L);
+            logger.debug("Set quantity of item {} in cart {}. New total amount: {}", itemId, cartId,
+                    Money.toMajor(totalMinor));
+            return new CartItemMutationResponse(cartId, savedItem, totalMinor);
+        }));
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "applyBatch"}, histogram = true)
+    public CartBatchResponse applyBatch(String cartId, CartBatchRequest request) {
+        return applyBatch(cartId, request, null);
+    }
+    
+    // Applies all operations in one transaction: one select for referenced lines,
+    // batched inserts/deletes at flush and a single version-checked total adjustment
+    @Timed(value = "cart.service", extraTags = {"operation", "applyBatch"}, histogram = true)
+    public CartBatchResponse applyBatch(String cartId, CartBatchRequest request, Long expectedVersion) {
+        logger.debug("Applying batch to cart {}", cartId);
+        if (request == null || request.getOperations() == null || request.getOperations().isEmpty()) {
+            logger.error("Empty batch provided for cart: {}", cartId);
+            throw new BadRequestException("Batch must contain at least one operation");
+        }
+        List<CartItemOperation> operations = request.getOperations();
+        if (operations.size() > MAX_BATCH_OPERATIONS) {
+            logger.error("Batch of {} operations exceeds limit for cart: {}", operations.size(), cartId);
+            throw new BadRequestException("Batch cannot contain more than " + MAX_BATCH_OPERATIONS + " operations");
+        }
+        return mailboxes.execute(cartId, () -> cartStore.inCartScope(cartId, () -> {
+            Long version = cartStore.findVersionById(cartId)
+                .orElseThrow(() -> {
+                    logger.error("Cart not found with ID: {}", cartId);
+                    return new ResourceNotFoundException("Cart not found with id: " + cartId);
+                });
+            if (expectedVersion != null && !expectedVersion.equals(version)) {
+                logger.debug("Cart {} is at version {}, expected {}", cartId, version, expectedVersion);
+                throw new PreconditionFailedException("Cart version does not match: " + cartId);
+            }
+            
+            Set<String> referencedIds = new HashSet<>();
+            Set<String> addedProductIds = new HashSet<>();
+            for (CartItemOperation operation : operations) {
+                if (operation != null && operation.getItemId() != null) {
+                    referencedIds.add(operation.getItemId());
+                }
+                if (operation != null && operation.getType() == CartItemOperation.Type.ADD
+                        && operation.getItem() != null && operation.getItem().getProductId() != null) {
+                    addedProductIds.add(operation.getItem().getProductId());
+                }
+            }
+            BatchState state = new BatchState();
+            if (!referencedIds.isEmpty()) {
+                cartStore.findItems(cartId, referencedIds).forEach(state::load);
+            }
+            if (!addedProductIds.isEmpty()) {
+                cartStore.findItemsByProduct(cartId, addedProductIds).forEach(state::load);
+            }
+
+            List<CartItemOperationResult> results = new ArrayList<>(operations.size());
+            for (int index = 0; index < operations.size(); index++) {
+                results.add(applyOperation(cartId, index, operations.get(index), state));
+            }
+            
+            // Inserts and quantity changes go out in one call so engines can batch them
+            List<CartItem> writes = new ArrayList<>(state.inserts);
+            writes.addAll(state.updates.values());
+            cartStore.saveItems(writes);
+            cartStore.deleteItems(state.deletes);
+            for (Map.Entry<Integer, CartItem> added : state.added.entrySet()) {
+                results.get(added.getKey()).setItemId(added.getValue().getId());
+                state.events.get(added.getKey()).setItemId(added.getValue().getId());
+            }
+            // Fails the whole batch if another writer bumped the version since it was read
+            if (cartStore.adjustTotalIfVersion(cartId, state.delta, version) == 0) {
+                logger.warn("Cart {} was modified concurrently while applying batch", cartId);
+                throw new ObjectOptimisticLockingFailureException(ShoppingCart.class, cartId);
+            }
+            appendEvents(new ArrayList<>(state.events.values()));
+            evictAfterCommit(cartId);
+            
+            long totalMinor = cartStore.findTotalMinorById(cartId).orElse(0L);
+            logger.debug("Applied batch of {} operations to cart {}. New total amount: {}",
+                    operations.size(), cartId, Money.toMajor(totalMinor));
+            return new CartBatchResponse(cartId, totalMinor, results);
+        }));
+    }
+    
+    // Header-only lookup used for conditional GETs; never touches cart_items
+    @Timed(value = "cart.service", extraTags = {"operation", "getCartVersion"}, histogram = true)
+    @Transactional(readOnly = true)
+    public Long getCartVersion(String cartId) {
         if (cartId == null || cartId.trim().isEmpty()) {
             logger.error("Invalid cart ID provided: {}", cartId);
             throw new BadRequestException("Cart ID cannot be empty");
         }
         
-        return cartRepository.findById(cartId)
+        ShoppingCart cached = cartCache.get(cartId).orElse(null);
+        if (cached != null) {
+            return cached.getVersion();
+        }
+        return cartStore.findVersionById(cartId)
+            .or(() -> cartStore.findArchivedById(cartId).map(ShoppingCart::getVersion))
             .orElseThrow(() -> {
                 logger.error("Cart not found with ID: {}", cartId);
                 return new ResourceNotFoundException("Cart not found with id: " + cartId);
             });
     }
     
-    public void deleteCart(String cartId) {
-        logger.debug("Deleting cart with ID: {}", cartId);
+    // Headers only, so the lookup never reads cart_items
+    @Timed(value = "cart.service", extraTags = {"operation", "findCarts"}, histogram = true)
+    @Transactional(readOnly = true)
+    public List<CartSummary> findCarts(String userId, String status) {
+        logger.debug("Finding carts for user {} with status {}", userId, status);
+        if (userId == null || userId.trim().isEmpty()) {
+            logger.error("Invalid user ID provided: {}", userId);
+            throw new BadRequestException("User ID cannot be empty");
+        }
+        return cartStore.findSummariesByUser(userId, status == null || status.isBlank() ? null : status);
+    }
+    
+    // Keyset page of lines ordered by id; after is the nextCursor of the previous page
+    @Timed(value = "cart.service", extraTags = {"operation", "getCartItems"}, histogram = true)
+    @Transactional(readOnly = true)
+    public CartItemPage getCartItems(String cartId, String after, Integer limit, List<String> fields) {
+        logger.debug("Fetching items of cart {} after {} (limit {})", cartId, after, limit);
+        if (cartId == null || cartId.trim().isEmpty()) {
+            logger.error("Invalid cart ID provided: {}", cartId);
+            throw new BadRequestException("Cart ID cannot be empty");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            logger.error("Invalid page size {} for cart {}", limit, cartId);
+            throw new BadRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        CartItemProjection projection = CartItemProjection.of(fields);
+        
+        // One extra row tells whether another page follows
+        List<CartItem> rows = cartStore.findItemPage(cartId, after == null || after.isBlank() ? null : after,
+                pageSize + 1);
+        if (rows.isEmpty() && cartStore.findVersionById(cartId).isEmpty()) {
+            logger.error("Cart not found with ID: {}", cartId);
+            throw new ResourceNotFoundException("Cart not found with id: " + cartId);
+        }
+        List<CartItem> page = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+        String nextCursor = rows.size() > pageSize ? page.get(page.size() - 1).getId() : null;
+        return new CartItemPage(cartId, projection.apply(page), nextCursor);
+    }
+    
+    // Total, line count and status without reading the lines themselves
+    @Timed(value = "cart.service", extraTags = {"operation", "getCartOverview"}, histogram = true)
+    @Transactional(readOnly = true)
+    public CartOverview getCartOverview(String cartId) {
+        if (cartId == null || cartId.trim().isEmpty()) {
+            logger.error("Invalid cart ID provided: {}", cartId);
+            throw new BadRequestException("Cart ID cannot be empty");
+        }
+        
+        ShoppingCart cached = cartCache.get(cartId).orElse(null);
+        if (cached != null && cached.getItems() != null) {
+            return new CartOverview(cached.getId(), cached.getStatus(), cached.getTotalMinor(),
+                    cached.getCurrency(), (long) cached.getItems().size(), cached.getVersion());
+        }
+        return cartStore.findOverviewById(cartId)
+            .orElseThrow(() -> {
+                logger.error("Cart not found with ID: {}", cartId);
+                return new ResourceNotFoundException("Cart not found with id: " + cartId);
+            });
+    }
+    
+    // Header of a streamed cart read; the lines follow through streamCartItems.
+    // Empty unless the cart is hot: archived carts are served whole by getCart.
+    @Timed(value = "cart.service", extraTags = {"operation", "getCartHeader"}, histogram = true)
+    @Transactional(readOnly = true)
+    public Optional<CartSummary> getCartHeader(String cartId) {
+        if (cartId == null || cartId.trim().isEmpty()) {
+            logger.error("Invalid cart ID provided: {}", cartId);
+            throw new BadRequestException("Cart ID cannot be empty");
+        }
+        
+        return cartStore.findSummaryById(cartId);
+    }
+    
+    // No surrounding transaction: each page is its own short read. With open-in-view off (application.yml) its
+    // connection goes back to the pool before the page is written, so a slow client never holds one.
+    // A write racing the stream may show through, so callers read the version again after the last page.
+    @Timed(value = "cart.service", extraTags = {"operation", "streamCartItems"}, histogram = true)
+    public void streamCartItems(String cartId, Consumer<CartItem> action) {
+        logger.debug("Streaming items of cart {}", cartId);
+        cartStore.forEachItem(cartId, STREAM_PAGE_SIZE, action);
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "getCart"}, histogram = true)
+    @Transactional(readOnly = true)
+    public ShoppingCart getCart(String cartId) {
+        logger.debug("Fetching cart with ID: {}", cartId);
         if (cartId == null || cartId.trim().isEmpty()) {
             logger.error("Invalid cart ID provided: {}", cartId);
             throw new BadRequestException("Cart ID cannot be empty");
         }
         
-        ShoppingCart cart = cartRepository.findById(cartId)
+        ShoppingCart cached = cartCache.get(cartId).orElse(null);
+        if (cached != null) {
+            logger.debug("Cart {} served from cache", cartId);
+            recordCartSize(cached);
+            return cached;
+        }
+        
+        // Taken before the load, so the put is dropped if a write evicts the cart while it is read
+        long generation = cartCache.generation();
+        // Carts that are no longer ACTIVE may have moved to the archive tier
+        ShoppingCart cart = cartStore.findById(cartId)
+            .or(() -> cartStore.findArchivedById(cartId))
             .orElseThrow(() -> {
                 logger.error("Cart not found with ID: {}", cartId);
                 return new ResourceNotFoundException("Cart not found with id: " + cartId);
             });
-        cartRepository.delete(cart);
+        cacheCart(cart, generation);
+        recordCartSize(cart);
+        return cart;
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "deleteCart"}, histogram = true)
+    public void deleteCart(String cartId) {
+        deleteCart(cartId, null);
+    }
+    
+    @Timed(value = "cart.service", extraTags = {"operation", "deleteCart"}, histogram = true)
+    public void deleteCart(String cartId, Long expectedVersion) {
+        logger.debug("Deleting cart with ID: {}", cartId);
+        if (cartId == null || cartId.trim().isEmpty()) {
+            logger.error("Invalid cart ID provided: {}", cartId);
+            throw new BadRequestException("Cart ID cannot be empty");
+        }
+        
+        // Header only: the lines are deleted in bulk, never loaded
+        mailboxes.execute(cartId, () -> optimisticLockRetry.execute(cartId, () -> cartStore.inCartScope(cartId, () -> {
+            CartSummary cart = cartStore.findSummaryById(cartId)
+                .orElseThrow(() -> {
+                    logger.error("Cart not found with ID: {}", cartId);
+                    return new ResourceNotFoundException("Cart not found with id: " + cartId);
+                });
+            checkVersion(cartId, cart.getVersion(), expectedVersion);
+            long version = cart.getVersion() == null ? 0L : cart.getVersion();
+            if (cartStore.deleteIfVersion(cartId, version) == 0) {
+                throw new ObjectOptimisticLockingFailureException(ShoppingCart.class, cartId);
+            }
+            appendEvents(List.of(CartEvents.cartDeleted(cart)));
+            return cart;
+        })));
+        cartCache.evict(cartId);
         logger.debug("Cart {} deleted successfully", cartId);
     }
-} 
\ No newline at end of file
+    
+    // Events of one cart after sequence number afterSequence or, when that is null, from now on; the caller closes it
+    @Timed(value = "cart.service", extraTags = {"operation", "subscribeToCart"}, histogram = true)
+    public CartEventBus.Subscription subscribeToCart(String cartId, Long afterSequence,
+                                                     Consumer<List<CartEvent>> listener) {
+        logger.debug("Subscribing to events of cart {} after {}", cartId, afterSequence);
+        if (cartId == null || cartId.trim().isEmpty()) {
+            logger.error("Invalid cart ID provided: {}", cartId);
+            throw new BadRequestException("Cart ID cannot be empty");
+        }
+        // A resumed stream may outlive its cart, whose deletion is then among the events it reads back
+        if (afterSequence == null) {
+            getCartVersion(cartId);
+        }
+        return eventBus.subscribe(cartId, afterSequence, listener);
+    }
+    
+    private void checkVersion(ShoppingCart cart, Long expectedVersion) {
+        checkVersion(cart.getId(), cart.getVersion(), expectedVersion);
+    }
+    
+    private void checkVersion(String cartId, Long version, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(version)) {
+            logger.debug("Cart {} is at version {}, expected {}", cartId, version, expectedVersion);
+            throw new PreconditionFailedException("Cart version does not match: " + cartId);
+        }
+    }
+    
+    // Items are initialized before caching so the cached copy never needs a session
+    private void cacheCart(ShoppingCart cart, long generation) {
+        if (cart.getItems() != null) {
+            cart.getItems().size();
+        }
+        cartCache.put(cart, generation);
+    }
+    
+    // Cached as the write commits, in commit order, so the eviction of a later write of the cart lands after it
+    private ShoppingCart cacheAfterCommit(ShoppingCart cart) {
+        if (cart.getItems() != null) {
+            cart.getItems().size();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cartCache.put(cart);
+                }
+            });
+        } else {
+            cartCache.put(cart);
+        }
+        return cart;
+    }
+    
+    private void recordCartSize(ShoppingCart cart) {
+        if (cart.getItems() != null) {
+            metrics.recordCartSize(cart.getItems().size());
+        }
+    }
+    
+    // Appended with the writes they describe; subscribers only hear of them once those commit
+    private void appendEvents(List<CartEvent> events) {
+        cartStore.appendEvents(events);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventBus.publish(events);
+                }
+            });
+        } else {
+            eventBus.publish(events);
+        }
+    }
+    
+    // Adjusts the stored total, at expectedVersion when one is given; 404 if the cart is gone, 412 if it moved on
+    private void adjustTotal(String cartId, long deltaMinor, Long expectedVersion) {
+        int updated = expectedVersion == null
+                ? cartStore.adjustTotal(cartId, deltaMinor)
+                : cartStore.adjustTotalIfVersion(cartId, deltaMinor, expectedVersion);
+        if (updated > 0) {
+            return;
+        }
+        if (expectedVersion != null && cartStore.findVersionById(cartId).isPresent()) {
+            logger.debug("Cart {} is no longer at version {}", cartId, expectedVersion);
+            throw new PreconditionFailedException("Cart version does not match: " + cartId);
+        }
+        logger.error("Cart not found with ID: {}", cartId);
+        throw new ResourceNotFoundException("Cart not found with id: " + cartId);
+    }
+    
+    // The line as saved, which is where a newly inserted one gets its id
+    private CartItem savedLine(ShoppingCart cart, CartItem line) {
+        for (CartItem saved : cart.getItems()) {
+            if (Objects.equals(saved.getProductId(), line.getProductId())) {
+                return saved;
+            }
+        }
+        return line;
+    }
+    
+    // The eviction after commit also drops the pending put of any read that loaded the cart before the commit
+    private void evictAfterCommit(String cartId) {
+        cartCache.evict(cartId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cartCache.evict(cartId);
+                }
+            });
+        }
+    }
+    
+    private CartItemOperationResult applyOperation(String cartId, int index, CartItemOperation operation,
+                                                   BatchState state) {
+        if (operation == null || operation.getType() == null) {
+            return failed(index, null, null, "Operation type is required");
+        }
+        CartItemOperation.Type type = operation.getType();
+        if (type == CartItemOperation.Type.ADD) {
+            CartItem item = operation.getItem();
+            String error = itemValidationError(item);
+            if (error != null) {
+                return failed(index, type, null, error);
+            }
+            CartItem line = state.byProduct.get(item.getProductId());
+            if (line != null && !Money.fitsLine(item.getPriceMinor(), (long) line.getQuantity() + item.getQuantity())) {
+                return failed(index, type, null, LINE_TOO_LARGE);
+            }
+            CartItem removed = line == null ? state.removedByProduct.remove(item.getProductId()) : null;
+            if (line != null) {
+                state.delta += mergeLine(line, item);
+                if (line.getId() != null) {
+                    state.updates.put(line.getId(), line);
+                }
+            } else if (removed != null) {
+                // Re-adding a product removed earlier in the batch reuses its row, as inserts flush before deletes
+                state.deletes.remove(removed);
+                removed.setPriceMinor(item.getPriceMinor());
+                removed.setQuantity(item.getQuantity());
+                if (item.getProductName() != null) {
+                    removed.setProductName(item.getProductName());
+                }
+                state.load(removed);
+                state.updates.put(removed.getId(), removed);
+                state.delta += CartTotals.lineTotal(removed);
+                line = removed;
+            } else {
+                item.setId(null);
+                item.setCartId(cartId);
+                state.inserts.add(item);
+                state.byProduct.put(item.getProductId(), item);
+                state.delta += CartTotals.lineTotal(item);
+                line = item;
+            }
+            state.added.put(index, line);
+            state.events.put(index, CartEvents.itemAdded(cartId, line, item));
+            return new CartItemOperationResult(index, type, CartItemOperationResult.Status.APPLIED, null, null);
+        }
+        
+        String itemId = operation.getItemId();
+        CartItem existing = itemId == null ? null : state.existingItems.get(itemId);
+        if (existing == null) {
+            return failed(index, type, itemId, "Item not found in cart with id: " + itemId);
+        }
+        if (type == CartItemOperation.Type.REMOVE) {
+            state.existingItems.remove(itemId);
+            state.byProduct.remove(existing.getProductId());
+            state.removedByProduct.put(existing.getProductId(), existing);
+            state.updates.remove(itemId);
+            state.deletes.add(existing);
+            state.delta -= CartTotals.lineTotal(existing);
+            state.events.put(index, CartEvents.itemRemoved(cartId, existing));
+        } else {
+            Integer quantity = operation.getQuantity();
+            if (quantity == null || quantity < 1) {
+                return failed(index, type, itemId, "Invalid item quantity");
+            }
+            if (!Money.fitsLine(existing.getPriceMinor(), quantity)) {
+                return failed(index, type, itemId, LINE_TOO_LARGE);
+            }
+            state.delta += CartTotals.lineTotal(existing.getPriceMinor(), quantity) - CartTotals.lineTotal(existing);
+            existing.setQuantity(quantity);
+            state.updates.put(itemId, existing);
+            state.events.put(index, CartEvents.itemQuantityChanged(cartId, existing));
+        }
+        return new CartItemOperationResult(index, type, CartItemOperationResult.Status.APPLIED, itemId, null);
+    }
+    
+    private CartItemOperationResult failed(int index, CartItemOperation.Type type, String itemId, String message) {
+        logger.debug("Batch operation {} ({}) failed: {}", index, type, message);
+        return new CartItemOperationResult(index, type, CartItemOperationResult.Status.FAILED, itemId, message);
+    }
+    
+    private void validateItem(String cartId, CartItem item) {
+        String error = itemValidationError(item);
+        if (error != null) {
+            logger.error("{} for item in cart: {}", error, cartId);
+            throw new BadRequestException(error);
+        }
+    }
+    
+    private void validateQuantityUpdate(String itemId, Integer quantity) {
+        if (itemId == null || itemId.trim().isEmpty()) {
+            logger.error("Invalid item ID provided: {}", itemId);
+            throw new BadRequestException("Item ID cannot be empty");
+        }
+        if (quantity == null || quantity < 1) {
+            logger.error("Invalid quantity {} for item {}", quantity, itemId);
+            throw new BadRequestException("Invalid item quantity");
+        }
+    }
+    
+    private CartItem findLine(String cartId, String productId) {
+        if (productId == null) {
+            return null;
+        }
+        List<CartItem> lines = cartStore.findItemsByProduct(cartId, List.of(productId));
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+    
+    // Folds an added item into the product's existing line, which takes the latest price; returns the total delta
+    private long mergeLine(CartItem line, CartItem item) {
+        checkLineTotal(line.getCartId(), item.getPriceMinor(), (long) line.getQuantity() + item.getQuantity());
+        long before = CartTotals.lineTotal(line);
+        line.setQuantity(line.getQuantity() + item.getQuantity());
+        line.setPriceMinor(item.getPriceMinor());
+        if (item.getProductName() != null) {
+            line.setProductName(item.getProductName());
+        }
+        return CartTotals.lineTotal(line) - before;
+    }
+    
+    private String itemValidationError(CartItem item) {
+        if (item == null) {
+            return "Cart item cannot be null";
+        }
+        if (item.getPriceMinor() == null || item.getPriceMinor() < 0) {
+            return "Invalid item price";
+        }
+        if (item.getQuantity() == null || item.getQuantity() < 1) {
+            return "Invalid item quantity";
+        }
+        if (!Money.fitsLine(item.getPriceMinor(), item.getQuantity())) {
+            return LINE_TOO_LARGE;
+        }
+        return null;
+    }
+    
+    private void checkLineTotal(String cartId, long priceMinor, long quantity) {
+        if (!Money.fitsLine(priceMinor, quantity)) {
+            logger.error("Line total of {} x {} too large for cart {}", quantity, Money.toMajor(priceMinor), cartId);
+            throw new BadRequestException(LINE_TOO_LARGE);
+        }
+    }
+    
+    private static class BatchState {
+        private final Map<String, CartItem> existingItems = new HashMap<>();
+        // Live line per product, whether stored or inserted by this batch
+        private final Map<String, CartItem> byProduct = new HashMap<>();
+        private final Map<String, CartItem> removedByProduct = new HashMap<>();
+        private final List<CartItem> inserts = new ArrayList<>();
+        private final Map<Integer, CartItem> added = new LinkedHashMap<>();
+        private final Map<String, CartItem> updates = new LinkedHashMap<>();
+        private final List<CartItem> deletes = new ArrayList<>();
+        // Applied operations in order; ids of inserted lines are filled in once they are saved
+        private final Map<Integer, CartEvent> events = new LinkedHashMap<>();
+        private long delta;
+        
+        // Lines may be loaded twice (by id and by product); keep one instance per id
+        private void load(CartItem item) {
+            CartItem known = existingItems.putIfAbsent(item.getId(), item);
+            CartItem line = known != null ? known : item;
+            byProduct.put(line.getProductId(), line);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,15 @@
+-- Converts a schema created while cart and item ids were stored as VARCHAR to 16-byte UUID columns.
+-- Optional: the application reads and writes both layouts. Existing ids are canonical UUID strings,
+-- so every value converts in place. Run with the application stopped.
+--
+-- Schemas created before the foreign key was named carry a generated name; look it up with
+--   SELECT CONSTRAINT_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS
+--   WHERE TABLE_NAME = 'CART_ITEMS' AND CONSTRAINT_TYPE = 'FOREIGN KEY';
+-- and use it in the first statement.
+ALTER TABLE cart_items DROP CONSTRAINT fk_cart_items_cart;
+
+ALTER TABLE cart_items ALTER COLUMN id SET DATA TYPE UUID;
+ALTER TABLE cart_items ALTER COLUMN cart_id SET DATA TYPE UUID;
+ALTER TABLE shopping_carts ALTER COLUMN id SET DATA TYPE UUID;
+
+ALTER TABLE cart_items ADD CONSTRAINT fk_cart_items_cart FOREIGN KEY (cart_id) REFERENCES shopping_carts (id);
@@ -0,0 +1,168 @@
+package com.example.shoppingcartapi.cache;
+
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryCartCacheTest {
+
+    private ShoppingCart cart(String id) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(id);
+        cart.setUserId("test-user-id");
+        return cart;
+    }
+
+    private ShoppingCart cart(String id, long version) {
+        ShoppingCart cart = cart(id);
+        cart.setVersion(version);
+        return cart;
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        InMemoryCartCache cache = new InMemoryCartCache(10, Duration.ofMinutes(1));
+        cache.put(cart("cart-1"));
+
+        assertTrue(cache.get("cart-1").isPresent());
+        assertFalse(cache.get("cart-2").isPresent());
+
+        CartCacheStats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedWhenFull() {
+        InMemoryCartCache cache = new InMemoryCartCache(2, Duration.ofMinutes(1));
+        cache.put(cart("cart-1"));
+        cache.put(cart("cart-2"));
+        cache.get("cart-1");
+        cache.put(cart("cart-3"));
+
+        assertTrue(cache.get("cart-1").isPresent());
+        assertFalse(cache.get("cart-2").isPresent());
+        assertTrue(cache.get("cart-3").isPresent());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    public void testExpiresAfterTtl() {
+        AtomicLong now = new AtomicLong();
+        InMemoryCartCache cache = new InMemoryCartCache(10, Duration.ofSeconds(5), now::get);
+        cache.put(cart("cart-1"));
+
+        now.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertTrue(cache.get("cart-1").isPresent());
+
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertFalse(cache.get("cart-1").isPresent());
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    public void testHandsOutCopies() {
+        InMemoryCartCache cache = new InMemoryCartCache(10, Duration.ofMinutes(1));
+        ShoppingCart cart = cart("cart-1");
+        CartItem item = new CartItem();
+        item.setProductId("p1");
+        item.setQuantity(1);
+        cart.setItems(new ArrayList<>(List.of(item)));
+        cache.put(cart);
+
+        cart.setTotalMinor(500L);
+        item.setQuantity(5);
+        ShoppingCart first = cache.get("cart-1").orElseThrow();
+        first.getItems().clear();
+        ShoppingCart second = cache.get("cart-1").orElseThrow();
+
+        assertNotSame(first, second);
+        assertEquals(0L, second.getTotalMinor());
+        assertEquals(1, second.getItems().size());
+        assertEquals(1, second.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void testEvict() {
+        InMemoryCartCache cache = new InMemoryCartCache(10, Duration.ofMinutes(1));
+        cache.put(cart("cart-1"));
+        cache.evict("cart-1");
+
+        assertFalse(cache.get("cart-1").isPresent());
+    }
+
+    @Test
+    public void testStaleReadThroughPutLosesToConcurrentEviction() throws Exception {
+        InMemoryCartCache cache = new InMemoryCartCache(10, Duration.ofMinutes(1));
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The reader loads version 1, then stalls while a writer commits version 2 and evicts
+            Future<?> reader = executor.submit(() -> {
+                long generation = cache.generation();
+                ShoppingCart loadedCart = cart("cart-1", 1L);
+                loaded.countDown();
+                committed.await(5, TimeUnit.SECONDS);
+                cache.put(loadedCart, generation);
+                return null;
+            });
+            Future<?> writer = executor.submit(() -> {
+                loaded.await(5, TimeUnit.SECONDS);
+                cache.evict("cart-1");
+                committed.countDown();
+                return null;
+            });
+            writer.get(5, TimeUnit.SECONDS);
+            reader.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertFalse(cache.get("cart-1").isPresent());
+
+        // A read that starts after the eviction caches the committed version
+        long generation = cache.generation();
+        cache.put(cart("cart-1", 2L), generation);
+        assertEquals(2L, cache.get("cart-1").orElseThrow().getVersion());
+    }
+
+    @Test
+    public void testPutNeverReplacesALaterVersion() {
+        InMemoryCartCache cache = new InMemoryCartCache(10, Duration.ofMinutes(1));
+        long generation = cache.generation();
+        cache.put(cart("cart-1", 3L));
+
+        cache.put(cart("cart-1", 2L), generation);
+        cache.put(cart("cart-1", 2L));
+
+        assertEquals(3L, cache.get("cart-1").orElseThrow().getVersion());
+    }
+
+    @Test
+    public void testStalePutLosesOnceItsTombstoneIsPushedOut() {
+        InMemoryCartCache cache = new InMemoryCartCache(2, Duration.ofMinutes(1));
+        long generation = cache.generation();
+        cache.evict("cart-1");
+        cache.evict("cart-2");
+        cache.evict("cart-3");
+
+        cache.put(cart("cart-1", 1L), generation);
+
+        assertFalse(cache.get("cart-1").isPresent());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.shoppingcartapi.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JdbcPinningGuardDataSourceTest {
+
+    private DataSource target;
+    private Connection connection;
+    private JdbcPinningGuardDataSource dataSource;
+    private ExecutorService callers;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        target = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(target.getConnection()).thenReturn(connection);
+        dataSource = new JdbcPinningGuardDataSource(target, 2);
+        callers = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void testConnectionHoldsAPermitUntilClosed() throws SQLException {
+        Connection guarded = dataSource.getConnection();
+        assertEquals(1, dataSource.availablePermits());
+
+        guarded.close();
+        assertEquals(2, dataSource.availablePermits());
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    public void testSecondCloseReleasesNothing() throws SQLException {
+        Connection guarded = dataSource.getConnection();
+        guarded.close();
+        guarded.close();
+
+        assertEquals(2, dataSource.availablePermits());
+        // The second close still reaches the connection, which ignores it
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    public void testFailedCloseStillReleasesThePermit() throws SQLException {
+        Connection guarded = dataSource.getConnection();
+        doThrow(new SQLException("close failed")).when(connection).close();
+
+        assertThrows(SQLException.class, guarded::close);
+        assertEquals(2, dataSource.availablePermits());
+    }
+
+    @Test
+    public void testFailedGetConnectionReleasesThePermit() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLException("no connection"));
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+        assertEquals(2, dataSource.availablePermits());
+    }
+
+    @Test
+    public void testCallerWaitsOnceThePermitsRunOut() throws Exception {
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertEquals(0, dataSource.availablePermits());
+
+        Future<Connection> waiting = callers.submit(() -> dataSource.getConnection());
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+
+        first.close();
+        Connection third = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(0, dataSource.availablePermits());
+
+        second.close();
+        third.close();
+        assertEquals(2, dataSource.availablePermits());
+    }
+}
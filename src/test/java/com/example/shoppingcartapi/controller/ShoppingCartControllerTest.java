@@ -1,7 +1,18 @@
 package com.example.shoppingcartapi.controller;
 
+import com.example.shoppingcartapi.dto.CartItemMutationResponse;
+import com.example.shoppingcartapi.dto.CartItemPage;
+import com.example.shoppingcartapi.dto.CartItemQuantityRequest;
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.exception.ConflictException;
+import com.example.shoppingcartapi.exception.PreconditionFailedException;
+import com.example.shoppingcartapi.exception.ResourceNotFoundException;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
 import com.example.shoppingcartapi.model.CartItem;
 import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.service.CartEventBus;
 import com.example.shoppingcartapi.service.ShoppingCartService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,15 +22,28 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(ShoppingCartController.class)
@@ -57,7 +81,7 @@ public class ShoppingCartControllerTest {
 
     @Test
     public void testCreateCart() throws Exception {
-        when(cartService.createCart(eq("test-user-id"))).thenReturn(testCart);
+        when(cartService.createCart(eq("test-user-id"), isNull())).thenReturn(testCart);
 
         mockMvc.perform(post("/api/carts")
                 .param("userId", "test-user-id")
@@ -70,6 +94,48 @@ public class ShoppingCartControllerTest {
                 .andExpect(jsonPath("$.items").isEmpty());
     }
 
+    @Test
+    public void testFindCarts() throws Exception {
+        when(cartService.findCarts("test-user-id", "ACTIVE"))
+                .thenReturn(List.of(new CartSummary("test-cart-id", "test-user-id", "ACTIVE", 2000L, "USD", 3L)));
+
+        mockMvc.perform(get("/api/carts")
+                .param("userId", "test-user-id")
+                .param("status", "ACTIVE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value("test-cart-id"))
+                .andExpect(jsonPath("$[0].totalAmount").value(20.0))
+                .andExpect(jsonPath("$[0].items").doesNotExist());
+    }
+
+    @Test
+    public void testGetCartItems() throws Exception {
+        when(cartService.getCartItems("test-cart-id", "cursor-id", 2, List.of("productId", "quantity")))
+                .thenReturn(new CartItemPage("test-cart-id",
+                        List.of(Map.of("productId", "test-product-id", "quantity", 2)), "next-id"));
+
+        mockMvc.perform(get("/api/carts/{cartId}/items", "test-cart-id")
+                .param("after", "cursor-id")
+                .param("limit", "2")
+                .param("fields", "productId,quantity"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].productId").value("test-product-id"))
+                .andExpect(jsonPath("$.items[0].price").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").value("next-id"));
+    }
+
+    @Test
+    public void testGetCartSummary() throws Exception {
+        when(cartService.getCartOverview("test-cart-id"))
+                .thenReturn(new CartOverview("test-cart-id", "ACTIVE", 2000L, "USD", 1L, 3L));
+
+        mockMvc.perform(get("/api/carts/{cartId}/summary", "test-cart-id"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.itemCount").value(1))
+                .andExpect(jsonPath("$.totalAmount").value(20.0))
+                .andExpect(jsonPath("$.items").doesNotExist());
+    }
+
     @Test
     public void testGetCart() throws Exception {
         when(cartService.getCart(eq("test-cart-id"))).thenReturn(testCart);
@@ -84,6 +150,162 @@ public class ShoppingCartControllerTest {
                 .andExpect(jsonPath("$.items").isEmpty());
     }
 
+    @Test
+    public void testGetCart_Streamed() throws Exception {
+        when(cartService.getCartHeader(eq("test-cart-id")))
+                .thenReturn(Optional.of(new CartSummary("test-cart-id", "test-user-id", "ACTIVE", 2000L, "USD", 4L)));
+        doAnswer(invocation -> {
+            Consumer<CartItem> action = invocation.getArgument(1);
+            action.accept(testItem);
+            return null;
+        }).when(cartService).streamCartItems(eq("test-cart-id"), any());
+
+        MvcResult result = mockMvc.perform(get("/api/carts/{cartId}", "test-cart-id")
+                .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(jsonPath("$.id").value("test-cart-id"))
+                .andExpect(jsonPath("$.items[0].productId").value("test-product-id"))
+                .andExpect(jsonPath("$.items[0].quantity").value(2))
+                .andExpect(jsonPath("$.totalAmount").value(20.0))
+                .andExpect(jsonPath("$.version").value(4));
+
+        verify(cartService, never()).getCart(any());
+    }
+
+    @Test
+    public void testGetCart_StreamedCartChangedMidStream() throws Exception {
+        when(cartService.getCartHeader(eq("test-cart-id")))
+                .thenReturn(Optional.of(new CartSummary("test-cart-id", "test-user-id", "ACTIVE", 2000L, "USD", 4L)))
+                .thenReturn(Optional.of(new CartSummary("test-cart-id", "test-user-id", "ACTIVE", 3000L, "USD", 5L)));
+        doAnswer(invocation -> {
+            Consumer<CartItem> action = invocation.getArgument(1);
+            action.accept(testItem);
+            return null;
+        }).when(cartService).streamCartItems(eq("test-cart-id"), any());
+
+        MvcResult result = mockMvc.perform(get("/api/carts/{cartId}", "test-cart-id")
+                .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertInstanceOf(ConflictException.class, result.getAsyncResult(5000));
+        assertFalse(result.getResponse().getContentAsString().contains("totalAmount"));
+    }
+
+    @Test
+    public void testGetCart_StreamedArchivedCartIsServedWhole() throws Exception {
+        testCart.setStatus("EXPIRED");
+        testCart.setVersion(7L);
+        when(cartService.getCartHeader(eq("test-cart-id"))).thenReturn(Optional.empty());
+        when(cartService.getCart(eq("test-cart-id"))).thenReturn(testCart);
+
+        mockMvc.perform(get("/api/carts/{cartId}", "test-cart-id")
+                .param("stream", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7\""))
+                .andExpect(jsonPath("$.status").value("EXPIRED"));
+
+        verify(cartService, never()).streamCartItems(any(), any());
+    }
+
+    @Test
+    public void testGetCart_StreamedNotFound() throws Exception {
+        when(cartService.getCartHeader(eq("missing-cart-id"))).thenReturn(Optional.empty());
+        when(cartService.getCart(eq("missing-cart-id")))
+                .thenThrow(new ResourceNotFoundException("Cart not found with id: missing-cart-id"));
+
+        mockMvc.perform(get("/api/carts/{cartId}", "missing-cart-id")
+                .param("stream", "true"))
+                .andExpect(status().isNotFound());
+
+        verify(cartService, never()).streamCartItems(any(), any());
+    }
+
+    @Test
+    public void testStreamCartEvents() throws Exception {
+        CartEvent added = new CartEvent();
+        added.setId(41L);
+        added.setCartId("test-cart-id");
+        added.setType(CartEventType.ITEM_ADDED);
+        added.setOccurredAt(Instant.parse("2026-01-01T00:00:00Z"));
+        added.setItemId("test-item-id");
+        added.setProductId("test-product-id");
+        added.setPriceMinor(1000L);
+        added.setQuantity(2);
+        CartEvent deleted = new CartEvent();
+        deleted.setId(42L);
+        deleted.setCartId("test-cart-id");
+        deleted.setType(CartEventType.CART_DELETED);
+        deleted.setOccurredAt(Instant.parse("2026-01-01T00:00:01Z"));
+        doAnswer(invocation -> {
+            Consumer<List<CartEvent>> listener = invocation.getArgument(2);
+            listener.accept(List.of(added, deleted));
+            return mock(CartEventBus.Subscription.class);
+        }).when(cartService).subscribeToCart(eq("test-cart-id"), eq(40L), any());
+
+        MvcResult result = mockMvc.perform(get("/api/carts/{cartId}/events", "test-cart-id")
+                .header("Last-Event-ID", "40"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // One message per batch, named after the id of its last event; CART_DELETED ends the stream
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("id:42\nevent:cart-events\ndata:[")))
+                .andExpect(content().string(containsString("\"type\":\"ITEM_ADDED\"")))
+                .andExpect(content().string(containsString("\"price\":10.0")))
+                .andExpect(content().string(containsString("\"type\":\"CART_DELETED\"")));
+    }
+
+    @Test
+    public void testStreamCartEvents_InvalidLastEventId() throws Exception {
+        mockMvc.perform(get("/api/carts/{cartId}/events", "test-cart-id")
+                .header("Last-Event-ID", "not-a-number"))
+                .andExpect(status().isBadRequest());
+
+        verify(cartService, never()).subscribeToCart(any(), any(), any());
+    }
+
+    @Test
+    public void testStreamCartEvents_CartNotFound() throws Exception {
+        when(cartService.subscribeToCart(eq("missing-cart-id"), isNull(), any()))
+                .thenThrow(new ResourceNotFoundException("Cart not found with id: missing-cart-id"));
+
+        mockMvc.perform(get("/api/carts/{cartId}/events", "missing-cart-id"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testGetCart_NotModified() throws Exception {
+        when(cartService.getCartVersion(eq("test-cart-id"))).thenReturn(5L);
+
+        mockMvc.perform(get("/api/carts/{cartId}", "test-cart-id")
+                .header("If-None-Match", "\"5\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"5\""))
+                .andExpect(content().string(""));
+
+        verify(cartService, never()).getCart(any());
+    }
+
+    @Test
+    public void testGetCart_ModifiedSinceETag() throws Exception {
+        testCart.setVersion(6L);
+        when(cartService.getCartVersion(eq("test-cart-id"))).thenReturn(6L);
+        when(cartService.getCart(eq("test-cart-id"))).thenReturn(testCart);
+
+        mockMvc.perform(get("/api/carts/{cartId}", "test-cart-id")
+                .header("If-None-Match", "\"5\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"6\""))
+                .andExpect(jsonPath("$.id").value("test-cart-id"));
+    }
+
     @Test
     public void testGetCart_NotFound() throws Exception {
         when(cartService.getCart(eq("non-existent-cart-id")))
@@ -101,7 +323,7 @@ public class ShoppingCartControllerTest {
         testCart.setItems(items);
         testCart.setTotalAmount(20.0);
 
-        when(cartService.addItemToCart(eq("test-cart-id"), any(CartItem.class)))
+        when(cartService.addItemToCart(eq("test-cart-id"), any(CartItem.class), isNull()))
                 .thenReturn(testCart);
 
         mockMvc.perform(post("/api/carts/{cartId}/items", "test-cart-id")
@@ -115,7 +337,7 @@ public class ShoppingCartControllerTest {
 
     @Test
     public void testAddItemToCart_CartNotFound() throws Exception {
-        when(cartService.addItemToCart(eq("non-existent-cart-id"), any(CartItem.class)))
+        when(cartService.addItemToCart(eq("non-existent-cart-id"), any(CartItem.class), isNull()))
                 .thenThrow(new RuntimeException("Cart not found"));
 
         mockMvc.perform(post("/api/carts/{cartId}/items", "non-existent-cart-id")
@@ -124,9 +346,136 @@ public class ShoppingCartControllerTest {
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    public void testAddItemToCart_ItemResponse() throws Exception {
+        when(cartService.addItem(eq("test-cart-id"), any(CartItem.class), isNull()))
+                .thenReturn(new CartItemMutationResponse("test-cart-id", testItem, 2000L));
+
+        mockMvc.perform(post("/api/carts/{cartId}/items", "test-cart-id")
+                .param("response", "item")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testItem)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartId").value("test-cart-id"))
+                .andExpect(jsonPath("$.item.id").value("test-item-id"))
+                .andExpect(jsonPath("$.totalAmount").value(20.0))
+                .andExpect(jsonPath("$.items").doesNotExist());
+    }
+
+    @Test
+    public void testRemoveItemFromCart_ItemResponse() throws Exception {
+        when(cartService.removeItem(eq("test-cart-id"), eq("test-item-id"), isNull()))
+                .thenReturn(new CartItemMutationResponse("test-cart-id", testItem, 0L));
+
+        mockMvc.perform(delete("/api/carts/{cartId}/items/{itemId}", "test-cart-id", "test-item-id")
+                .param("response", "item")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.item.id").value("test-item-id"))
+                .andExpect(jsonPath("$.totalAmount").value(0.0));
+    }
+
+    @Test
+    public void testAddItemToCart_ItemResponseChecksIfMatch() throws Exception {
+        when(cartService.addItem(eq("test-cart-id"), any(CartItem.class), eq(3L)))
+                .thenThrow(new PreconditionFailedException("Cart version does not match: test-cart-id"));
+
+        mockMvc.perform(post("/api/carts/{cartId}/items", "test-cart-id")
+                .param("response", "item")
+                .header("If-Match", "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testItem)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testRemoveItemFromCart_ItemResponseChecksIfMatch() throws Exception {
+        when(cartService.removeItem("test-cart-id", "test-item-id", 3L))
+                .thenReturn(new CartItemMutationResponse("test-cart-id", testItem, 0L));
+
+        mockMvc.perform(delete("/api/carts/{cartId}/items/{itemId}", "test-cart-id", "test-item-id")
+                .param("response", "item")
+                .header("If-Match", "\"3\""))
+                .andExpect(status().isOk());
+
+        verify(cartService).removeItem("test-cart-id", "test-item-id", 3L);
+    }
+
+    @Test
+    public void testUpdateItemQuantity() throws Exception {
+        testItem.setQuantity(5);
+        testCart.getItems().add(testItem);
+        testCart.setTotalAmount(50.0);
+        testCart.setVersion(2L);
+        when(cartService.updateItemQuantityInCart(eq("test-cart-id"), eq("test-item-id"), eq(5), eq(1L)))
+                .thenReturn(testCart);
+
+        mockMvc.perform(patch("/api/carts/{cartId}/items/{itemId}", "test-cart-id", "test-item-id")
+                .header("If-Match", "\"1\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new CartItemQuantityRequest(5))))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""))
+                .andExpect(jsonPath("$.items[0].quantity").value(5))
+                .andExpect(jsonPath("$.totalAmount").value(50.0));
+    }
+
+    @Test
+    public void testUpdateItemQuantity_ItemResponse() throws Exception {
+        testItem.setQuantity(5);
+        when(cartService.updateItemQuantity(eq("test-cart-id"), eq("test-item-id"), eq(5), isNull()))
+                .thenReturn(new CartItemMutationResponse("test-cart-id", testItem, 5000L));
+
+        mockMvc.perform(patch("/api/carts/{cartId}/items/{itemId}", "test-cart-id", "test-item-id")
+                .param("response", "item")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new CartItemQuantityRequest(5))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.item.quantity").value(5))
+                .andExpect(jsonPath("$.totalAmount").value(50.0));
+    }
+
+    @Test
+    public void testUpdateItemQuantity_ItemResponseChecksIfMatch() throws Exception {
+        when(cartService.updateItemQuantity(eq("test-cart-id"), eq("test-item-id"), eq(5), eq(3L)))
+                .thenThrow(new PreconditionFailedException("Cart version does not match: test-cart-id"));
+
+        mockMvc.perform(patch("/api/carts/{cartId}/items/{itemId}", "test-cart-id", "test-item-id")
+                .param("response", "item")
+                .header("If-Match", "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new CartItemQuantityRequest(5))))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testAddItemToCart_IfMatch() throws Exception {
+        testCart.setVersion(4L);
+        when(cartService.addItemToCart(eq("test-cart-id"), any(CartItem.class), eq(3L)))
+                .thenReturn(testCart);
+
+        mockMvc.perform(post("/api/carts/{cartId}/items", "test-cart-id")
+                .header("If-Match", "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testItem)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+    }
+
+    @Test
+    public void testAddItemToCart_Conflict() throws Exception {
+        when(cartService.addItemToCart(eq("test-cart-id"), any(CartItem.class), isNull()))
+                .thenThrow(new ConflictException("Cart was modified concurrently: test-cart-id"));
+
+        mockMvc.perform(post("/api/carts/{cartId}/items", "test-cart-id")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testItem)))
+                .andExpect(status().isConflict());
+    }
+
     @Test
     public void testRemoveItemFromCart() throws Exception {
-        when(cartService.removeItemFromCart(eq("test-cart-id"), eq("test-item-id")))
+        when(cartService.removeItemFromCart(eq("test-cart-id"), eq("test-item-id"), isNull()))
                 .thenReturn(testCart);
 
         mockMvc.perform(delete("/api/carts/{cartId}/items/{itemId}", "test-cart-id", "test-item-id")
@@ -137,7 +486,7 @@ public class ShoppingCartControllerTest {
 
     @Test
     public void testRemoveItemFromCart_CartNotFound() throws Exception {
-        when(cartService.removeItemFromCart(eq("non-existent-cart-id"), eq("test-item-id")))
+        when(cartService.removeItemFromCart(eq("non-existent-cart-id"), eq("test-item-id"), isNull()))
                 .thenThrow(new RuntimeException("Cart not found"));
 
         mockMvc.perform(delete("/api/carts/{cartId}/items/{itemId}", "non-existent-cart-id", "test-item-id")
@@ -147,7 +496,7 @@ public class ShoppingCartControllerTest {
 
     @Test
     public void testDeleteCart() throws Exception {
-        doNothing().when(cartService).deleteCart(eq("test-cart-id"));
+        doNothing().when(cartService).deleteCart(eq("test-cart-id"), isNull());
 
         mockMvc.perform(delete("/api/carts/{cartId}", "test-cart-id")
                 .contentType(MediaType.APPLICATION_JSON))
@@ -156,7 +505,7 @@ public class ShoppingCartControllerTest {
 
     @Test
     public void testDeleteCart_CartNotFound() throws Exception {
-        doNothing().when(cartService).deleteCart(eq("non-existent-cart-id"));
+        doNothing().when(cartService).deleteCart(eq("non-existent-cart-id"), isNull());
 
         mockMvc.perform(delete("/api/carts/{cartId}", "non-existent-cart-id")
                 .contentType(MediaType.APPLICATION_JSON))
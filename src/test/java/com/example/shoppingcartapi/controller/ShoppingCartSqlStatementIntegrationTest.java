@@ -0,0 +1,170 @@
+package com.example.shoppingcartapi.controller;
+
+import com.example.shoppingcartapi.dto.CartItemMutationResponse;
+import com.example.shoppingcartapi.dto.CartItemQuantityRequest;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.service.ShoppingCartService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Statement budgets per endpoint, read from the cart.http.sql.statements summary. Carts hold
+// CART_SIZE lines so any per-line select or update shows up as a blown budget. Every write also
+// inserts its cart event, and one write in 50 fetches the next block of event ids.
+@SpringBootTest(properties = {"cart.cache.enabled=false", "cart.totals.verification.enabled=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ShoppingCartSqlStatementIntegrationTest {
+
+    private static final int CART_SIZE = 25;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ShoppingCartService cartService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String userId;
+    private String cartId;
+    private String itemId;
+
+    @BeforeEach
+    public void setUp() {
+        userId = "sql-user-" + UUID.randomUUID();
+        cartId = cartService.createCart(userId).getId();
+        for (int i = 0; i < CART_SIZE; i++) {
+            CartItemMutationResponse added = cartService.addItem(cartId, item("sql-product-" + i));
+            itemId = added.getItem().getId();
+        }
+    }
+
+    private CartItem item(String productId) {
+        CartItem item = new CartItem();
+        item.setProductId(productId);
+        item.setProductName("SQL Product");
+        item.setPrice(2.5);
+        item.setQuantity(1);
+        return item;
+    }
+
+    private int statements(String method, String uri, RequestBuilder request) throws Exception {
+        double before = recorded(method, uri);
+        mockMvc.perform(request).andExpect(status().is2xxSuccessful());
+        return (int) (recorded(method, uri) - before);
+    }
+
+    private int statementsNotModified(String uri, RequestBuilder request) throws Exception {
+        double before = recorded("GET", uri);
+        mockMvc.perform(request).andExpect(status().isNotModified());
+        return (int) (recorded("GET", uri) - before);
+    }
+
+    private double recorded(String method, String uri) {
+        DistributionSummary summary = meterRegistry.find("cart.http.sql.statements")
+                .tag("method", method)
+                .tag("uri", uri)
+                .summary();
+        return summary == null ? 0 : summary.totalAmount();
+    }
+
+    @Test
+    public void testGetCart_SingleJoinedSelect() throws Exception {
+        assertEquals(1, statements("GET", "/api/carts/{cartId}", get("/api/carts/{cartId}", cartId)));
+    }
+
+    @Test
+    public void testGetCart_NotModifiedReadsVersionOnly() throws Exception {
+        Long version = cartService.getCartVersion(cartId);
+
+        assertEquals(1, statementsNotModified("/api/carts/{cartId}", get("/api/carts/{cartId}", cartId)
+                .header("If-None-Match", "\"" + version + "\"")));
+    }
+
+    @Test
+    public void testGetCartItems_SingleKeysetSelect() throws Exception {
+        assertEquals(1, statements("GET", "/api/carts/{cartId}/items", get("/api/carts/{cartId}/items", cartId)
+                .param("limit", "10")
+                .param("fields", "productId,quantity")));
+    }
+
+    @Test
+    public void testGetCartSummary_SingleSelect() throws Exception {
+        assertEquals(1, statements("GET", "/api/carts/{cartId}/summary", get("/api/carts/{cartId}/summary", cartId)));
+    }
+
+    @Test
+    public void testFindCarts_SingleHeaderSelect() throws Exception {
+        assertEquals(1, statements("GET", "/api/carts", get("/api/carts")
+                .param("userId", userId)
+                .param("status", "ACTIVE")));
+    }
+
+    @Test
+    public void testAddItem_ItemResponse() throws Exception {
+        // total update, line lookup, single-statement insert, total read
+        int count = statements("POST", "/api/carts/{cartId}/items", post("/api/carts/{cartId}/items", cartId)
+                .param("response", "item")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(item("sql-product-new"))));
+        assertTrue(count <= 6, "statements: " + count);
+    }
+
+    @Test
+    public void testAddItem_CartResponse() throws Exception {
+        // joined select, joined select on merge, single-statement insert, cart update
+        int count = statements("POST", "/api/carts/{cartId}/items", post("/api/carts/{cartId}/items", cartId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(item("sql-product-new"))));
+        assertTrue(count <= 6, "statements: " + count);
+
+        ShoppingCart cart = cartService.getCart(cartId);
+        assertEquals(CART_SIZE + 1, cart.getItems().size());
+        assertTrue(cart.getItems().stream().allMatch(line -> cartId.equals(line.getCartId())));
+    }
+
+    @Test
+    public void testUpdateItemQuantity_ItemResponse() throws Exception {
+        int count = statements("PATCH", "/api/carts/{cartId}/items/{itemId}",
+                patch("/api/carts/{cartId}/items/{itemId}", cartId, itemId)
+                        .param("response", "item")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CartItemQuantityRequest(3))));
+        assertTrue(count <= 6, "statements: " + count);
+    }
+
+    @Test
+    public void testRemoveItem_ItemResponse() throws Exception {
+        int count = statements("DELETE", "/api/carts/{cartId}/items/{itemId}",
+                delete("/api/carts/{cartId}/items/{itemId}", cartId, itemId).param("response", "item"));
+        assertTrue(count <= 6, "statements: " + count);
+    }
+
+    @Test
+    public void testDeleteCart_BulkDeletesWithoutLoadingItems() throws Exception {
+        // header select, version-checked update, one delete for the lines, one for the cart, event insert
+        int count = statements("DELETE", "/api/carts/{cartId}", delete("/api/carts/{cartId}", cartId));
+        assertTrue(count == 5 || count == 6, "statements: " + count);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.shoppingcartapi.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SampledRequestLoggingFilterTest {
+
+    private Logger logger;
+    private Level level;
+    private ListAppender<ILoggingEvent> appender;
+
+    @BeforeEach
+    public void setUp() {
+        logger = (Logger) LoggerFactory.getLogger(SampledRequestLoggingFilter.class);
+        level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(level);
+    }
+
+    private static MockHttpServletResponse filter(double sampleRate, MockFilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/carts");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(201);
+        new SampledRequestLoggingFilter(sampleRate).doFilter(request, response, chain);
+        return response;
+    }
+
+    @Test
+    public void testZeroRateNeverLogsButStillRunsTheChain() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        filter(0, chain);
+
+        assertNotNull(chain.getRequest());
+        assertTrue(appender.list.isEmpty());
+    }
+
+    @Test
+    public void testFullRateLogsEachRequestOnceWithItsStatus() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        filter(1, chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals(1, appender.list.size());
+        ILoggingEvent event = appender.list.get(0);
+        assertEquals(Level.INFO, event.getLevel());
+        assertTrue(event.getFormattedMessage().startsWith("POST /api/carts -> 201 in "),
+                event.getFormattedMessage());
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.shoppingcartapi.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CartIdsTest {
+
+    @Test
+    public void testIdsAreVersion7AndIncreasing() {
+        String previous = CartIds.next();
+        for (int i = 0; i < 10_000; i++) {
+            String id = CartIds.next();
+            UUID uuid = UUID.fromString(id);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            // String order is index order for both UUID and legacy varchar columns
+            assertTrue(id.compareTo(previous) > 0, id + " <= " + previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void testTimestampIsEmbedded() {
+        long before = System.currentTimeMillis();
+        String id = CartIds.next();
+        long after = System.currentTimeMillis();
+
+        long millis = CartIds.timestampMillis(id);
+        // A burst may borrow a few milliseconds ahead
+        assertTrue(millis >= before && millis <= after + 10);
+    }
+
+    @Test
+    public void testLegacyAndMalformedIds() {
+        String legacy = UUID.randomUUID().toString();
+        assertTrue(CartIds.isWellFormed(legacy));
+        assertEquals(UUID.fromString(legacy), CartIds.toUuid(legacy));
+
+        assertFalse(CartIds.isWellFormed(null));
+        assertFalse(CartIds.isWellFormed("test-cart-id"));
+        assertFalse(CartIds.isWellFormed("1-1-1-1-1"));
+        assertEquals(CartIds.NONE, CartIds.toUuid("test-cart-id"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.ArchivedCart;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartIds;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CartSnapshotsTest {
+
+    private CartItem item(String id, int n) {
+        CartItem item = new CartItem();
+        item.setId(id);
+        item.setProductId("test-product-" + n);
+        item.setProductName("Test Product " + n);
+        item.setPriceMinor(199L * n);
+        item.setQuantity(n);
+        return item;
+    }
+
+    private ShoppingCart cart(int lines) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(CartIds.next());
+        cart.setUserId("test-user-id");
+        cart.setStatus("EXPIRED");
+        cart.setCurrency("USD");
+        cart.setVersion(7L);
+        cart.setLastModified(Instant.parse("2026-01-01T00:00:00Z"));
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 1; i <= lines; i++) {
+            items.add(item(CartIds.next(), i));
+        }
+        cart.setItems(items);
+        cart.setTotalMinor(items.stream().mapToLong(i -> i.getPriceMinor() * i.getQuantity()).sum());
+        return cart;
+    }
+
+    @Test
+    public void testArchiveAndRestoreRoundTrip() {
+        ShoppingCart cart = cart(3);
+        Instant archivedAt = Instant.now();
+
+        ArchivedCart archived = CartSnapshots.archive(cart, archivedAt);
+        ShoppingCart restored = CartSnapshots.restore(archived);
+
+        assertEquals(3, archived.getItemCount());
+        assertEquals(archivedAt, archived.getArchivedAt());
+        assertEquals(CartSnapshots.FORMAT_V1, archived.getSnapshot()[0]);
+        assertEquals(cart.getId(), restored.getId());
+        assertEquals(cart.getUserId(), restored.getUserId());
+        assertEquals(cart.getStatus(), restored.getStatus());
+        assertEquals(cart.getTotalMinor(), restored.getTotalMinor());
+        assertEquals(cart.getVersion(), restored.getVersion());
+        assertEquals(cart.getLastModified(), restored.getLastModified());
+        for (CartItem item : cart.getItems()) {
+            item.setCartId(cart.getId());
+        }
+        assertEquals(cart.getItems(), restored.getItems());
+    }
+
+    @Test
+    public void testEventSnapshotRoundTrip() {
+        ShoppingCart cart = cart(2);
+
+        CartEventSnapshot snapshot = CartSnapshots.snapshot(cart, 42L, Instant.now());
+        ShoppingCart restored = CartSnapshots.restore(snapshot);
+
+        assertEquals(42L, snapshot.getLastSequence());
+        assertEquals(2, snapshot.getItemCount());
+        assertEquals(cart.getId(), restored.getId());
+        assertEquals(cart.getCurrency(), restored.getCurrency());
+        assertEquals(cart.getTotalMinor(), restored.getTotalMinor());
+        assertEquals(cart.getLastModified(), restored.getLastModified());
+        assertNull(restored.getVersion());
+        assertEquals(2, restored.getItems().size());
+        assertEquals(cart.getItems().get(1).getId(), restored.getItems().get(1).getId());
+    }
+
+    @Test
+    public void testLegacyLineIdsSurvive() {
+        List<CartItem> items = List.of(item("legacy-item-id", 1));
+
+        List<CartItem> decoded = CartSnapshots.decode("test-cart-id", CartSnapshots.encode(items));
+
+        assertEquals("legacy-item-id", decoded.get(0).getId());
+        assertEquals("test-cart-id", decoded.get(0).getCartId());
+    }
+
+    @Test
+    public void testSnapshotIsCompact() {
+        ShoppingCart cart = cart(100);
+
+        byte[] snapshot = CartSnapshots.encode(cart.getItems());
+
+        // Under 40 bytes a line; as cart_items rows the same lines take about twice that before any index entry
+        assertTrue(snapshot.length < 100 * 40, "snapshot of 100 lines took " + snapshot.length + " bytes");
+    }
+
+    @Test
+    public void testUnknownFormatIsRejected() {
+        byte[] snapshot = CartSnapshots.encode(List.of(item(CartIds.next(), 1)));
+        snapshot[0] = 99;
+
+        assertThrows(IllegalStateException.class, () -> CartSnapshots.decode("test-cart-id", snapshot));
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryCartStoreTest {
+
+    private InMemoryCartStore store;
+    private String cartId;
+    private int productSequence;
+
+    @BeforeEach
+    public void setUp() {
+        store = new InMemoryCartStore(8);
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId("test-user-id");
+        cart.setStatus("ACTIVE");
+        cart.setTotalAmount(0.0);
+        cart.setItems(new ArrayList<>());
+        cartId = store.save(cart).getId();
+    }
+
+    private CartEvent deleted(CartSummary cart) {
+        CartEvent event = new CartEvent();
+        event.setCartId(cart.getId());
+        event.setType(CartEventType.CART_DELETED);
+        event.setUserId(cart.getUserId());
+        event.setOccurredAt(Instant.now());
+        return event;
+    }
+
+    private static CartEventSnapshot snapshot(String cartId, long lastSequence) {
+        CartEventSnapshot snapshot = new CartEventSnapshot();
+        snapshot.setCartId(cartId);
+        snapshot.setLastSequence(lastSequence);
+        return snapshot;
+    }
+
+    private CartItem item(double price, int quantity) {
+        return item("test-product-" + (++productSequence), price, quantity);
+    }
+
+    private CartItem item(String productId, double price, int quantity) {
+        CartItem item = new CartItem();
+        item.setCartId(cartId);
+        item.setProductId(productId);
+        item.setProductName("Test Product");
+        item.setPrice(price);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    @Test
+    public void testStripeCountRoundedToPowerOfTwo() {
+        assertEquals(8, store.stripeCount());
+        assertEquals(16, new InMemoryCartStore(10).stripeCount());
+        assertEquals(1, new InMemoryCartStore(0).stripeCount());
+    }
+
+    @Test
+    public void testSaveItemAndAdjustTotal() {
+        CartItem saved = store.saveItem(item(10.0, 2));
+        assertEquals(1, store.adjustTotal(cartId, 2000L));
+
+        assertNotNull(saved.getId());
+        assertEquals(2000L, store.findTotalMinorById(cartId).orElseThrow());
+        assertEquals(1L, store.findVersionById(cartId).orElseThrow());
+        assertEquals(1, store.findById(cartId).orElseThrow().getItems().size());
+        assertEquals(0, store.adjustTotal("missing-cart-id", 100L));
+    }
+
+    @Test
+    public void testIdleCartsExpireAndPurge() {
+        store.saveItem(item(10.0, 1));
+        Instant later = Instant.now().plusSeconds(60);
+
+        assertTrue(store.findIdleCartIds("ACTIVE", Instant.now().minusSeconds(60), 10).isEmpty());
+        assertEquals(List.of(cartId), store.findIdleCartIds("ACTIVE", later, 10));
+
+        assertEquals(1, store.updateStatusIfIdle(List.of(cartId), "ACTIVE", "EXPIRED", later));
+        assertEquals("EXPIRED", store.findSummaryById(cartId).orElseThrow().getStatus());
+        assertEquals(0, store.updateStatusIfIdle(List.of(cartId), "ACTIVE", "EXPIRED", later));
+
+        // Written after the cutoff, so not idle yet
+        assertEquals(0, store.deleteIfIdle(List.of(cartId), "EXPIRED", Instant.now().minusSeconds(60), this::deleted));
+        assertEquals(1, store.deleteIfIdle(List.of(cartId), "EXPIRED", later, this::deleted));
+        assertFalse(store.contains(cartId));
+        assertTrue(store.findSummariesByUser("test-user-id", null).isEmpty());
+        // The deletion is logged with it, and its history can go once it is old enough
+        assertEquals(List.of(CartEventType.CART_DELETED),
+                store.findEvents(cartId, 0L, 10).stream().map(CartEvent::getType).toList());
+        assertTrue(store.findDeletedEventCartIds(Instant.now().minusSeconds(60), 10).isEmpty());
+        assertEquals(List.of(cartId), store.findDeletedEventCartIds(later, 10));
+        store.deleteEvents(List.of(cartId));
+        assertTrue(store.findEvents(cartId, 0L, 10).isEmpty());
+    }
+
+    @Test
+    public void testReadsReturnCopies() {
+        CartItem saved = store.saveItem(item(10.0, 2));
+        store.findItem(cartId, saved.getId()).orElseThrow().setQuantity(5);
+        store.findById(cartId).orElseThrow().getItems().clear();
+
+        assertEquals(2, store.findItem(cartId, saved.getId()).orElseThrow().getQuantity());
+        assertEquals(1, store.findById(cartId).orElseThrow().getItems().size());
+    }
+
+    @Test
+    public void testSaveRejectsStaleVersion() {
+        ShoppingCart first = store.findById(cartId).orElseThrow();
+        ShoppingCart second = store.findById(cartId).orElseThrow();
+        first.getItems().add(item(1.0, 1));
+        store.save(first);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> store.save(second));
+        assertEquals(0, store.adjustTotalIfVersion(cartId, 100L, 0L));
+        assertEquals(1, store.adjustTotalIfVersion(cartId, 100L, 1L));
+    }
+
+    @Test
+    public void testUpdateAndDeleteItems() {
+        CartItem first = store.saveItem(item(10.0, 1));
+        CartItem second = store.saveItem(item(5.0, 1));
+        first.setQuantity(3);
+        store.saveItems(List.of(first));
+        store.deleteItem(second);
+
+        List<CartItem> items = store.findItems(cartId, List.of(first.getId(), second.getId()));
+        assertEquals(1, items.size());
+        assertEquals(3, items.get(0).getQuantity());
+    }
+
+    @Test
+    public void testRejectsSecondLineForSameProduct() {
+        CartItem saved = store.saveItem(item("test-product-id", 10.0, 1));
+
+        assertThrows(DataIntegrityViolationException.class, () -> store.saveItem(item("test-product-id", 10.0, 1)));
+        assertEquals(List.of(saved.getId()),
+                store.findItemsByProduct(cartId, List.of("test-product-id")).stream().map(CartItem::getId).toList());
+    }
+
+    @Test
+    public void testRejectedSaveLeavesCartUnchanged() {
+        CartItem saved = store.saveItem(item("test-product-id", 10.0, 1));
+        store.adjustTotal(cartId, 1000L);
+        ShoppingCart cart = store.findById(cartId).orElseThrow();
+        cart.setStatus("CHECKED_OUT");
+        cart.setTotalAmount(30.0);
+        cart.getItems().add(item("other-product-id", 10.0, 1));
+        cart.getItems().add(item("other-product-id", 10.0, 1));
+
+        assertThrows(DataIntegrityViolationException.class, () -> store.save(cart));
+        ShoppingCart stored = store.findById(cartId).orElseThrow();
+        assertEquals(cart.getVersion(), stored.getVersion());
+        assertEquals("ACTIVE", stored.getStatus());
+        assertEquals(1000L, stored.getTotalMinor());
+        assertEquals(List.of(saved.getId()), stored.getItems().stream().map(CartItem::getId).toList());
+    }
+
+    @Test
+    public void testFindSummariesByUser() {
+        ShoppingCart other = new ShoppingCart();
+        other.setUserId("test-user-id");
+        other.setStatus("CHECKED_OUT");
+        other.setItems(new ArrayList<>());
+        store.save(other);
+
+        assertEquals(List.of(cartId),
+                store.findSummariesByUser("test-user-id", "ACTIVE").stream().map(CartSummary::getId).toList());
+        assertEquals(2, store.findSummariesByUser("test-user-id", null).size());
+
+        store.delete(store.findById(cartId).orElseThrow());
+        assertTrue(store.findSummariesByUser("test-user-id", "ACTIVE").isEmpty());
+    }
+
+    @Test
+    public void testFindItemPageOrdersById() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(store.saveItem(item(1.0, 1)).getId());
+        }
+        ids.sort(null);
+
+        List<CartItem> first = store.findItemPage(cartId, null, 3);
+        List<CartItem> rest = store.findItemPage(cartId, first.get(2).getId(), 3);
+
+        assertEquals(ids.subList(0, 3), first.stream().map(CartItem::getId).toList());
+        assertEquals(ids.subList(3, 5), rest.stream().map(CartItem::getId).toList());
+        assertEquals(5L, store.findOverviewById(cartId).orElseThrow().getItemCount());
+    }
+
+    @Test
+    public void testForEachItemVisitsAllPagesInOrder() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(store.saveItem(item(1.0, 1)).getId());
+        }
+        ids.sort(null);
+
+        List<String> visited = new ArrayList<>();
+        store.forEachItem(cartId, 2, item -> visited.add(item.getId()));
+
+        assertEquals(ids, visited);
+    }
+
+    @Test
+    public void testDeleteIfVersion() {
+        store.saveItem(item(10.0, 1));
+
+        assertEquals(0, store.deleteIfVersion(cartId, 1L));
+        assertEquals(1, store.deleteIfVersion(cartId, 0L));
+        assertTrue(store.findSummaryById(cartId).isEmpty());
+        assertTrue(store.findSummariesByUser("test-user-id", null).isEmpty());
+    }
+
+    @Test
+    public void testDriftDetectionAndRecompute() {
+        store.saveItem(item(10.0, 2));
+        assertEquals(List.of(cartId), store.findCartIdsWithTotalDrift());
+        long version = store.findVersionById(cartId).orElseThrow();
+
+        store.recomputeTotal(cartId);
+
+        assertEquals(2000L, store.findTotalMinorById(cartId).orElseThrow());
+        assertEquals(version + 1, store.findVersionById(cartId).orElseThrow());
+        assertTrue(store.findCartIdsWithTotalDrift().isEmpty());
+    }
+
+    @Test
+    public void testTotalsAreExactInMinorUnits() {
+        for (int i = 0; i < 100; i++) {
+            CartItem item = store.saveItem(item(0.1, 3));
+            store.adjustTotal(cartId, item.getPriceMinor() * item.getQuantity());
+        }
+
+        assertEquals(3000L, store.findTotalMinorById(cartId).orElseThrow());
+        assertEquals(30.0, store.findById(cartId).orElseThrow().getTotalAmount());
+        assertTrue(store.findCartIdsWithTotalDrift().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAdjustmentsAreSerialized() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> store.adjustTotal(cartId, 100L));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100000L, store.findTotalMinorById(cartId).orElseThrow());
+        assertEquals(1000L, store.findVersionById(cartId).orElseThrow());
+    }
+
+    @Test
+    public void testEventLogKeepsTheNewestEvents() {
+        InMemoryCartStore small = new InMemoryCartStore(8, 3);
+        List<CartEvent> events = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CartEvent event = new CartEvent();
+            event.setCartId(i % 2 == 0 ? cartId : "other-cart-id");
+            event.setType(CartEventType.ITEM_ADDED);
+            event.setOccurredAt(Instant.now());
+            events.add(event);
+        }
+        small.appendEvents(events.subList(0, 2));
+        small.appendEvents(events.subList(2, 4));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), events.stream().map(CartEvent::getId).toList());
+        assertEquals(List.of(1L, 1L, 2L, 2L), events.stream().map(CartEvent::getSequence).toList());
+        // Event 1 was dropped to keep the log at three, but its cart keeps it until a snapshot covers it
+        assertEquals(List.of(2L, 3L, 4L), small.findEventsAfter(0L, 10).stream().map(CartEvent::getId).toList());
+        assertEquals(List.of(1L, 3L), small.findEvents(cartId, 0L, 10).stream().map(CartEvent::getId).toList());
+        assertEquals(List.of(4L), small.findEvents("other-cart-id", 1L, 1).stream().map(CartEvent::getId).toList());
+        assertTrue(small.findEventsAfter(4L, 10).isEmpty());
+
+        small.saveEventSnapshot(snapshot(cartId, 1L));
+        assertEquals(List.of(3L), small.findEvents(cartId, 0L, 10).stream().map(CartEvent::getId).toList());
+    }
+
+    @Test
+    public void testEventSnapshotNeverMovesBack() {
+        store.saveEventSnapshot(snapshot(cartId, 5L));
+        store.saveEventSnapshot(snapshot(cartId, 3L));
+        assertEquals(5L, store.findEventSnapshot(cartId).orElseThrow().getLastSequence());
+
+        store.saveEventSnapshot(snapshot(cartId, 7L));
+        assertEquals(7L, store.findEventSnapshot(cartId).orElseThrow().getLastSequence());
+    }
+
+    @Test
+    public void testConcurrentAppendsNumberEachCartWithoutGaps() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 400; i++) {
+            String eventCartId = "cart-" + (i % 4);
+            executor.submit(() -> {
+                CartEvent event = new CartEvent();
+                event.setCartId(eventCartId);
+                event.setType(CartEventType.ITEM_ADDED);
+                event.setOccurredAt(Instant.now());
+                store.appendEvents(List.of(event));
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<Long> ids = store.findEventsAfter(0L, 1000).stream().map(CartEvent::getId).toList();
+        assertEquals(LongStream.rangeClosed(1, 400).boxed().toList(), ids);
+        for (int cart = 0; cart < 4; cart++) {
+            List<Long> sequences = store.findEvents("cart-" + cart, 0L, 1000).stream()
+                    .map(CartEvent::getSequence).toList();
+            assertEquals(LongStream.rangeClosed(1, 100).boxed().toList(), sequences);
+        }
+    }
+}
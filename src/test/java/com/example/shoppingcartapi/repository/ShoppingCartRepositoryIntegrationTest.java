@@ -1,16 +1,24 @@
 package com.example.shoppingcartapi.repository;
 
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
 import com.example.shoppingcartapi.model.CartItem;
 import com.example.shoppingcartapi.model.ShoppingCart;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,6 +30,18 @@ public class ShoppingCartRepositoryIntegrationTest {
     @Autowired
     private ShoppingCartRepository cartRepository;
 
+    @Autowired
+    private CartItemRepository itemRepository;
+
+    @Autowired
+    private ArchivedCartRepository archiveRepository;
+
+    @Autowired
+    private CartEventRepository eventRepository;
+
+    @Autowired
+    private CartEventSnapshotRepository snapshotRepository;
+
     private ShoppingCart testCart;
     private CartItem testItem;
 
@@ -80,6 +100,186 @@ public class ShoppingCartRepositoryIntegrationTest {
         assertEquals(20.0, foundCart.getTotalAmount());
     }
 
+    @Test
+    public void testFindSummariesByUser() {
+        ShoppingCart savedCart = cartRepository.save(testCart);
+        ShoppingCart otherCart = new ShoppingCart();
+        otherCart.setUserId("test-user-id");
+        otherCart.setItems(new ArrayList<>());
+        otherCart.setTotalAmount(0.0);
+        otherCart.setStatus("CHECKED_OUT");
+        cartRepository.save(otherCart);
+
+        List<CartSummary> active = cartRepository.findSummariesByUserIdAndStatus("test-user-id", "ACTIVE");
+        assertEquals(1, active.size());
+        assertEquals(savedCart.getId(), active.get(0).getId());
+        assertEquals("ACTIVE", active.get(0).getStatus());
+
+        assertEquals(2, cartRepository.findSummariesByUserId("test-user-id").size());
+        assertTrue(cartRepository.findSummariesByUserId("other-user-id").isEmpty());
+    }
+
+    @Test
+    public void testAdjustTotalIsExact() {
+        String cartId = cartRepository.saveAndFlush(testCart).getId();
+        for (int i = 0; i < 30; i++) {
+            assertEquals(1, cartRepository.adjustTotal(cartId, new BigDecimal("0.10")));
+        }
+
+        assertEquals(300L, cartRepository.findTotalMinorById(cartId).orElseThrow());
+        assertEquals(300L, cartRepository.findSummaryById(cartId).orElseThrow().getTotalMinor());
+    }
+
+    @Test
+    public void testIdsAreTimeOrderedUuids() {
+        String first = cartRepository.saveAndFlush(testCart).getId();
+        ShoppingCart second = new ShoppingCart();
+        second.setUserId("test-user-id");
+        second.setStatus("ACTIVE");
+        String secondId = cartRepository.saveAndFlush(second).getId();
+
+        assertEquals(7, UUID.fromString(first).version());
+        assertTrue(secondId.compareTo(first) > 0);
+        assertTrue(cartRepository.findById(first).isPresent());
+        assertFalse(cartRepository.findById("not-a-cart-id").isPresent());
+
+        // Native queries hand back the same string form as the entities
+        cartRepository.adjustTotal(first, new BigDecimal("1.00"));
+        assertEquals(List.of(first), cartRepository.findCartIdsWithTotalDrift());
+    }
+
+    @Test
+    public void testIdleCartsExpireAndPurgeSetBased() {
+        ShoppingCart saved = cartRepository.saveAndFlush(testCart);
+        String cartId = saved.getId();
+        assertNotNull(saved.getLastModified());
+        testItem.setCartId(cartId);
+        itemRepository.saveAndFlush(testItem);
+        Instant later = Instant.now().plusSeconds(60);
+
+        assertTrue(cartRepository.findIdleCartIds("ACTIVE", Instant.now().minusSeconds(60), Limit.of(10)).isEmpty());
+        List<String> idle = cartRepository.findIdleCartIds("ACTIVE", later, Limit.of(10));
+        assertEquals(List.of(cartId), idle);
+
+        assertEquals(1, cartRepository.updateStatusIfIdle(idle, "ACTIVE", "EXPIRED", later));
+        assertEquals("EXPIRED", cartRepository.findSummaryById(cartId).orElseThrow().getStatus());
+        assertEquals(0, cartRepository.deleteIfIdle(idle, "EXPIRED", Instant.now().minusSeconds(60)));
+        assertEquals(1, itemRepository.deleteByIdleCarts(idle, "EXPIRED", later));
+        assertEquals(1, cartRepository.deleteIfIdle(idle, "EXPIRED", later));
+        assertTrue(cartRepository.findSummaryById(cartId).isEmpty());
+    }
+
+    @Test
+    public void testExpiredCartMovesToTheArchiveTier() {
+        List<CartItem> items = new ArrayList<>();
+        items.add(testItem);
+        testCart.setItems(items);
+        testCart.setTotalAmount(20.0);
+        testCart.setStatus("EXPIRED");
+        ShoppingCart saved = cartRepository.saveAndFlush(testCart);
+        String cartId = saved.getId();
+        List<String> candidates = cartRepository.findIdsNotInStatus("ACTIVE", Limit.of(10));
+        assertEquals(List.of(cartId), candidates);
+
+        assertEquals(1, cartRepository.lockNotInStatus(candidates, "ACTIVE"));
+        List<ShoppingCart> carts = cartRepository.findByIdInAndStatusNot(candidates, "ACTIVE");
+        archiveRepository.saveAndFlush(CartSnapshots.archive(carts.get(0), Instant.now()));
+        assertEquals(1, itemRepository.deleteRowsByCartIds(candidates));
+        assertEquals(1, cartRepository.deleteRows(candidates));
+        assertTrue(cartRepository.findSummaryById(cartId).isEmpty());
+
+        ShoppingCart restored = CartSnapshots.restore(archiveRepository.findById(cartId).orElseThrow());
+        assertEquals(2000L, restored.getTotalMinor());
+        assertEquals(1, restored.getItems().size());
+        assertEquals("test-product-id", restored.getItems().get(0).getProductId());
+        assertEquals(List.of(cartId), archiveRepository.findSummariesByUserIdAndStatus("test-user-id", "EXPIRED")
+                .stream().map(CartSummary::getId).toList());
+
+        Instant later = Instant.now().plusSeconds(60);
+        assertEquals(List.of(cartId), archiveRepository.findIdleCartIds("EXPIRED", later, Limit.of(10)));
+        assertEquals(1, archiveRepository.deleteIfIdle(List.of(cartId), "EXPIRED", later));
+        assertTrue(archiveRepository.findById(cartId).isEmpty());
+    }
+
+    @Test
+    public void testEventsAreNumberedAndReadBackPerCart() {
+        JpaCartStore store = new JpaCartStore(cartRepository, itemRepository, archiveRepository, eventRepository,
+                snapshotRepository);
+        String cartId = cartRepository.save(testCart).getId();
+        String otherCartId = UUID.randomUUID().toString();
+        List<CartEvent> events = new ArrayList<>();
+        for (String id : List.of(cartId, otherCartId, cartId, cartId)) {
+            CartEvent event = new CartEvent();
+            event.setCartId(id);
+            event.setType(CartEventType.ITEM_ADDED);
+            event.setOccurredAt(Instant.now());
+            event.setItemId("test-item-id");
+            event.setPriceMinor(1000L);
+            event.setQuantity(1);
+            events.add(event);
+        }
+        store.appendEvents(events.subList(0, 3));
+        store.appendEvents(events.subList(3, 4));
+
+        assertEquals(List.of(1L, 1L, 2L, 3L), events.stream().map(CartEvent::getSequence).toList());
+        List<CartEvent> page = store.findEvents(cartId, 1L, 10);
+        assertEquals(List.of(events.get(2).getId(), events.get(3).getId()), page.stream().map(CartEvent::getId).toList());
+        assertEquals(10.0, page.get(0).getPrice());
+        long first = events.get(0).getId();
+        assertEquals(3, store.findEventsAfter(first, 3).size());
+        assertEquals(1, store.findEventsAfter(first, 1).size());
+
+        List<String> cartIds = eventRepository.findCartIds(Limit.of(10));
+        assertEquals(Set.of(cartId, otherCartId), Set.copyOf(cartIds));
+        assertEquals(List.of(cartIds.get(1)), eventRepository.findCartIdsAfter(cartIds.get(0), Limit.of(10)));
+    }
+
+    @Test
+    public void testCartCannotLogTwoEventsAtOneSequence() {
+        String cartId = UUID.randomUUID().toString();
+        List<CartEvent> events = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            CartEvent event = new CartEvent();
+            event.setCartId(cartId);
+            event.setSequence(1L);
+            event.setType(CartEventType.CART_CREATED);
+            event.setOccurredAt(Instant.now());
+            events.add(event);
+        }
+
+        assertThrows(DataIntegrityViolationException.class, () -> eventRepository.saveAllAndFlush(events));
+    }
+
+    @Test
+    public void testHistoryOfDeletedCartsIsFoundAndDropped() {
+        String deletedCartId = UUID.randomUUID().toString();
+        String liveCartId = UUID.randomUUID().toString();
+        List<CartEvent> events = new ArrayList<>();
+        for (String type : List.of(CartEventType.CART_CREATED, CartEventType.CART_DELETED)) {
+            CartEvent event = new CartEvent();
+            event.setCartId(deletedCartId);
+            event.setSequence(events.size() + 1L);
+            event.setType(type);
+            event.setOccurredAt(Instant.now());
+            events.add(event);
+        }
+        CartEvent live = new CartEvent();
+        live.setCartId(liveCartId);
+        live.setSequence(1L);
+        live.setType(CartEventType.CART_CREATED);
+        live.setOccurredAt(Instant.now());
+        events.add(live);
+        eventRepository.saveAll(events);
+
+        Instant later = Instant.now().plusSeconds(60);
+        assertTrue(eventRepository.findCartIdsByTypeBefore(CartEventType.CART_DELETED, Instant.now().minusSeconds(60),
+                Limit.of(10)).isEmpty());
+        assertEquals(List.of(deletedCartId),
+                eventRepository.findCartIdsByTypeBefore(CartEventType.CART_DELETED, later, Limit.of(10)));
+        assertEquals(2, eventRepository.deleteByCartIds(List.of(deletedCartId)));
+        assertEquals(List.of(liveCartId), eventRepository.findCartIds(Limit.of(10)));
+    }
+
     @Test
     public void testDelete() {
         // Save the cart
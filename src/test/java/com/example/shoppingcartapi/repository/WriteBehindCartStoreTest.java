@@ -0,0 +1,239 @@
+package com.example.shoppingcartapi.repository;
+
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class WriteBehindCartStoreTest {
+
+    @Mock
+    private ShoppingCartRepository cartRepository;
+
+    @Mock
+    private CartItemRepository itemRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path logDir;
+
+    private WriteBehindCartStore store;
+
+    @BeforeEach
+    public void setUp() {
+        store = newStore();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    private WriteBehindCartStore newStore() {
+        return new WriteBehindCartStore(cartRepository, itemRepository, transactionManager, new ObjectMapper(),
+                8, 100, 1000, logDir.toString(), false);
+    }
+
+    private ShoppingCart newCart() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId("test-user-id");
+        cart.setStatus("ACTIVE");
+        cart.setTotalAmount(0.0);
+        cart.setCurrency("USD");
+        cart.setItems(new ArrayList<>());
+        return cart;
+    }
+
+    private CartItem item(String cartId, String productId) {
+        CartItem item = new CartItem();
+        item.setCartId(cartId);
+        item.setProductId(productId);
+        item.setProductName("Test Product");
+        item.setPrice(10.0);
+        item.setQuantity(2);
+        return item;
+    }
+
+    @Test
+    public void testWritesAreCoalescedUntilFlush() {
+        String cartId = store.save(newCart()).getId();
+        for (int i = 0; i < 5; i++) {
+            String productId = "test-product-" + i;
+            store.inCartScope(cartId, () -> {
+                store.adjustTotal(cartId, 2000L);
+                return store.saveItem(item(cartId, productId));
+            });
+        }
+
+        verifyNoInteractions(cartRepository, itemRepository);
+        assertEquals(1, store.pendingCount());
+        assertEquals(10000L, store.findTotalMinorById(cartId).orElseThrow());
+
+        assertEquals(1, store.flush());
+
+        verify(cartRepository, times(1)).upsertRow(eq(cartId), eq("test-user-id"), eq(new BigDecimal("100.00")),
+                eq("USD"), eq("ACTIVE"), eq(5L), notNull());
+        verify(itemRepository, times(5)).insertRow(anyString(), eq(cartId), any(), any(), any(), any());
+        assertEquals(0, store.pendingCount());
+        assertEquals(0, store.flush());
+    }
+
+    @Test
+    public void testDeleteFlushesAsRowDeletion() {
+        ShoppingCart cart = store.save(newCart());
+        store.delete(cart);
+        store.flush();
+
+        verify(cartRepository).deleteRow(cart.getId());
+        verify(cartRepository, never()).upsertRow(any(), any(), any(), any(), any(), any(), any());
+        assertTrue(store.findById(cart.getId()).isEmpty());
+    }
+
+    @Test
+    public void testLoadsUnknownCartFromDatabase() {
+        ShoppingCart stored = newCart();
+        stored.setId("stored-cart-id");
+        stored.setVersion(4L);
+        when(cartRepository.findById("stored-cart-id")).thenReturn(Optional.of(stored));
+
+        assertEquals(4L, store.findVersionById("stored-cart-id").orElseThrow());
+        assertEquals(1, store.adjustTotal("stored-cart-id", 100L));
+        assertEquals(5L, store.findVersionById("stored-cart-id").orElseThrow());
+        verify(cartRepository, times(1)).findById("stored-cart-id");
+    }
+
+    @Test
+    public void testFlushedCartsLeaveMemory() {
+        ShoppingCart stored = newCart();
+        stored.setId("stored-cart-id");
+        stored.setVersion(4L);
+        when(cartRepository.findById("stored-cart-id")).thenReturn(Optional.of(stored));
+        String cartId = store.save(newCart()).getId();
+
+        assertEquals(4L, store.findVersionById("stored-cart-id").orElseThrow());
+        assertEquals(1, store.flush());
+
+        // Both rows are current, so both carts are read from the database again
+        assertTrue(store.findById(cartId).isEmpty());
+        assertEquals(4L, store.findVersionById("stored-cart-id").orElseThrow());
+        verify(cartRepository).findById(cartId);
+        verify(cartRepository, times(2)).findById("stored-cart-id");
+    }
+
+    @Test
+    public void testFullQueueBlocksWritersBeforeTheyLockTheCart() throws Exception {
+        ShoppingCart stored = newCart();
+        stored.setId("stored-cart-id");
+        stored.setVersion(4L);
+        when(cartRepository.findById("stored-cart-id")).thenReturn(Optional.of(stored));
+        WriteBehindCartStore small = new WriteBehindCartStore(cartRepository, itemRepository, transactionManager,
+                new ObjectMapper(), 8, 100, 1, logDir.resolve("small").toString(), false);
+        try {
+            small.save(newCart());
+            Thread writer = new Thread(() -> small.adjustTotal("stored-cart-id", 100L));
+            writer.start();
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (writer.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(Thread.State.WAITING, writer.getState());
+
+            // The blocked writer holds no lock on the cart, so it can still be read
+            assertEquals(4L, small.findVersionById("stored-cart-id").orElseThrow());
+            small.flush();
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+            assertEquals(5L, small.findVersionById("stored-cart-id").orElseThrow());
+        } finally {
+            small.shutdown();
+        }
+    }
+
+    @Test
+    public void testIdleStoredCartIsPurgedThroughTheQueue() {
+        ShoppingCart stored = newCart();
+        stored.setId("stored-cart-id");
+        stored.setStatus("EXPIRED");
+        stored.setVersion(2L);
+        stored.setLastModified(Instant.now().minus(Duration.ofDays(100)));
+        Instant cutoff = Instant.now().minus(Duration.ofDays(90));
+        when(cartRepository.findIdleCartIds(eq("EXPIRED"), eq(cutoff), any(Limit.class)))
+                .thenReturn(List.of("stored-cart-id"));
+        when(cartRepository.findById("stored-cart-id")).thenReturn(Optional.of(stored));
+
+        List<String> idle = store.findIdleCartIds("EXPIRED", cutoff, 10);
+        assertEquals(List.of("stored-cart-id"), idle);
+        assertEquals(1, store.deleteIfIdle(idle, "EXPIRED", cutoff, cart -> {
+            CartEvent event = new CartEvent();
+            event.setCartId(cart.getId());
+            event.setType(CartEventType.CART_DELETED);
+            event.setOccurredAt(Instant.now());
+            return event;
+        }));
+        assertTrue(store.findById("stored-cart-id").isEmpty());
+        assertEquals(1, store.findEvents("stored-cart-id", 0L, 10).size());
+        store.flush();
+
+        verify(cartRepository).deleteRow("stored-cart-id");
+        verify(itemRepository).deleteRowsByCartId("stored-cart-id");
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() {
+        String cartId = store.save(newCart()).getId();
+        when(cartRepository.upsertRow(any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(1);
+
+        assertEquals(0, store.flush());
+        assertEquals(1, store.pendingCount());
+        assertEquals(1, store.flush());
+        verify(cartRepository, times(2)).upsertRow(eq(cartId), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testUnflushedSnapshotsAreReplayedOnRestart() throws Exception {
+        String cartId = store.save(newCart()).getId();
+        store.adjustTotal(cartId, 2000L);
+        // Simulate a crash: the queue is lost, only the log survives
+        WriteBehindCartStore restarted = newStore();
+        restarted.recover();
+
+        verify(cartRepository).upsertRow(eq(cartId), eq("test-user-id"), eq(new BigDecimal("20.00")),
+                eq("USD"), eq("ACTIVE"), eq(1L), any());
+        assertEquals(0, restarted.pendingCount());
+        try (Stream<Path> segments = Files.list(logDir)) {
+            assertEquals(0, segments.count());
+        }
+        restarted.shutdown();
+    }
+}
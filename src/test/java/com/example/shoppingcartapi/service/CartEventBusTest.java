@@ -0,0 +1,167 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.repository.CartStore;
+import com.example.shoppingcartapi.repository.InMemoryCartStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CartEventBusTest {
+
+    private InMemoryCartStore store;
+    private SimpleMeterRegistry registry;
+    private CartEventBus bus;
+
+    @BeforeEach
+    public void setUp() {
+        store = new InMemoryCartStore(8);
+        registry = new SimpleMeterRegistry();
+        bus = new CartEventBus(store, new CartMetrics(registry), 1, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown();
+    }
+
+    // Appends to the log, then publishes, as the service does once a write commits
+    private CartEvent commit(String cartId) {
+        CartEvent event = new CartEvent();
+        event.setCartId(cartId);
+        event.setType(CartEventType.ITEM_ADDED);
+        event.setOccurredAt(Instant.now());
+        store.appendEvents(List.of(event));
+        bus.publish(List.of(event));
+        return event;
+    }
+
+    private static List<Long> take(BlockingQueue<CartEvent> received, int count) throws InterruptedException {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CartEvent event = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "timed out waiting for event " + (i + 1));
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testCartSubscriptionReplaysThenFollows() throws Exception {
+        commit("cart-a");
+        commit("cart-b");
+        commit("cart-a");
+        commit("cart-a");
+        BlockingQueue<CartEvent> received = new LinkedBlockingQueue<>();
+
+        try (CartEventBus.Subscription subscription = bus.subscribe("cart-a", 1L, received::addAll)) {
+            assertEquals(List.of(3L, 4L), take(received, 2));
+            commit("cart-b");
+            commit("cart-a");
+            assertEquals(List.of(6L), take(received, 1));
+            assertTrue(subscription.isOpen());
+        }
+
+        assertEquals(0, bus.subscriberCount());
+    }
+
+    @Test
+    public void testNewCartSubscriptionStartsAtTheNextEvent() throws Exception {
+        commit("cart-a");
+        BlockingQueue<CartEvent> received = new LinkedBlockingQueue<>();
+
+        try (CartEventBus.Subscription ignored = bus.subscribe("cart-a", null, received::addAll)) {
+            commit("cart-a");
+            assertEquals(List.of(2L), take(received, 1));
+            assertNull(received.poll(50, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testAllCartsSubscriptionReadsOverflowBackFromTheLog() throws Exception {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<CartEvent> received = new LinkedBlockingQueue<>();
+
+        try (CartEventBus.Subscription ignored = bus.subscribe(null, null, batch -> {
+            delivering.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.addAll(batch);
+        })) {
+            commit("cart-a");
+            assertTrue(delivering.await(5, TimeUnit.SECONDS));
+            // The listener is busy: the next event fills the one-slot queue and the two after it overflow
+            commit("cart-b");
+            commit("cart-a");
+            commit("cart-b");
+            release.countDown();
+
+            assertEquals(List.of(1L, 2L, 3L, 4L), take(received, 4));
+        }
+
+        assertEquals(2.0, registry.get("cart.events.replayed").counter().count());
+        assertEquals(4.0, registry.get("cart.events.published").counter().count());
+    }
+
+    @Test
+    public void testCartSubscriptionFollowsSequenceNotId() throws Exception {
+        // On jpa a transaction can commit after one that drew a greater id from the pooled sequence
+        CartEvent earlier = new CartEvent();
+        earlier.setId(60L);
+        earlier.setSequence(1L);
+        earlier.setCartId("cart-a");
+        CartEvent later = new CartEvent();
+        later.setId(55L);
+        later.setSequence(2L);
+        later.setCartId("cart-a");
+        CartStore log = mock(CartStore.class);
+        when(log.findEvents("cart-a", 0L, 2)).thenReturn(List.of(earlier));
+        when(log.findEvents("cart-a", 1L, 2)).thenReturn(List.of(later));
+        CartEventBus sequenced = new CartEventBus(log, new CartMetrics(registry), 1, 2);
+        BlockingQueue<CartEvent> received = new LinkedBlockingQueue<>();
+
+        try (CartEventBus.Subscription ignored = sequenced.subscribe("cart-a", 0L, received::addAll)) {
+            assertEquals(List.of(60L), take(received, 1));
+            sequenced.publish(List.of(later));
+            assertEquals(List.of(55L), take(received, 1));
+        } finally {
+            sequenced.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingListenerClosesItsSubscription() throws Exception {
+        CartEventBus.Subscription subscription = bus.subscribe("cart-a", null, batch -> {
+            throw new IllegalStateException("client went away");
+        });
+        assertEquals(1, bus.subscriberCount());
+
+        commit("cart-a");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (subscription.isOpen() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(subscription.isOpen());
+        assertEquals(0, bus.subscriberCount());
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartEventType;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.repository.CartStore;
+import com.example.shoppingcartapi.repository.InMemoryCartStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CartExpirySweeperTest {
+
+    private static final Duration TTL = Duration.ofDays(30);
+    private static final Duration PURGE_AFTER = Duration.ofDays(90);
+    // Long enough that the history of carts purged in these tests stays unless a test asks otherwise
+    private static final Duration HISTORY_RETENTION = Duration.ofDays(365);
+
+    @Mock
+    private CartCache cartCache;
+
+    private InMemoryCartStore store;
+    private SimpleMeterRegistry registry;
+    private CartMetrics metrics;
+    private CartEventBus eventBus;
+
+    @BeforeEach
+    public void setUp() {
+        store = new InMemoryCartStore(8);
+        registry = new SimpleMeterRegistry();
+        metrics = new CartMetrics(registry);
+        eventBus = new CartEventBus(store, metrics, 100, 100);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        eventBus.shutdown();
+    }
+
+    private String newCart() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId("test-user-id");
+        cart.setStatus("ACTIVE");
+        cart.setCurrency("USD");
+        cart.setItems(new ArrayList<>());
+        return store.save(cart).getId();
+    }
+
+    private CartExpirySweeper sweeperAt(Duration ahead, int chunkSize) {
+        return sweeperAt(ahead, chunkSize, HISTORY_RETENTION);
+    }
+
+    private CartExpirySweeper sweeperAt(Duration ahead, int chunkSize, Duration historyRetention) {
+        return new CartExpirySweeper(store, cartCache, eventBus, metrics, TTL, PURGE_AFTER, historyRetention,
+                chunkSize, 100, 0, true, Clock.offset(Clock.systemUTC(), ahead));
+    }
+
+    @Test
+    public void testFreshCartsAreLeftAlone() {
+        String cartId = newCart();
+
+        CartExpirySweeper.Progress progress = sweeperAt(Duration.ZERO, 10).sweep();
+
+        assertEquals(new CartExpirySweeper.Progress(0, 0, 0, 0), progress);
+        assertEquals("ACTIVE", store.findSummaryById(cartId).orElseThrow().getStatus());
+        verifyNoInteractions(cartCache);
+    }
+
+    @Test
+    public void testIdleCartsExpireThenPurgeInChunks() {
+        List<String> cartIds = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            cartIds.add(newCart());
+        }
+
+        CartExpirySweeper.Progress expired = sweeperAt(TTL.plusDays(1), 3).sweep();
+
+        // The heap engine has no archive tier, so expired carts stay hot
+        assertEquals(new CartExpirySweeper.Progress(7, 0, 0, 0), expired);
+        for (String cartId : cartIds) {
+            assertEquals("EXPIRED", store.findSummaryById(cartId).orElseThrow().getStatus());
+            verify(cartCache).evict(cartId);
+        }
+
+        CartExpirySweeper.Progress purged = sweeperAt(PURGE_AFTER.plusDays(1), 3).sweep();
+
+        assertEquals(new CartExpirySweeper.Progress(0, 0, 7, 0), purged);
+        assertTrue(store.findSummariesByUser("test-user-id", null).isEmpty());
+        assertEquals(7.0, registry.get("cart.expiry.expired").counter().count());
+        assertEquals(7.0, registry.get("cart.expiry.purged").counter().count());
+        // 3 + 3 + 1 carts per pass
+        assertEquals(6L, registry.get("cart.expiry.chunk").timer().count());
+    }
+
+    @Test
+    public void testPurgeLogsAndPublishesCartDeleted() throws Exception {
+        String cartId = newCart();
+        sweeperAt(TTL.plusDays(1), 10).sweep();
+        List<CartEvent> received = new CopyOnWriteArrayList<>();
+        CartEventBus.Subscription subscription = eventBus.subscribe(cartId, null, received::addAll);
+        try {
+            sweeperAt(PURGE_AFTER.plusDays(1), 10).sweep();
+
+            List<CartEvent> logged = store.findEvents(cartId, 0L, 10);
+            assertEquals(List.of(CartEventType.CART_DELETED), logged.stream().map(CartEvent::getType).toList());
+            assertEquals("test-user-id", logged.get(0).getUserId());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(logged.get(0).getId(), received.get(0).getId());
+        } finally {
+            subscription.close();
+        }
+    }
+
+    @Test
+    public void testHistoryOfDeletedCartsGoesAfterRetention() {
+        String purged = newCart();
+        store.appendEvents(List.of(event(purged, CartEventType.CART_CREATED)));
+        // A history that does not end in a deletion stays however old it is
+        String kept = "kept-cart-id";
+        store.appendEvents(List.of(event(kept, CartEventType.CART_CREATED)));
+        sweeperAt(TTL.plusDays(1), 10).sweep();
+        sweeperAt(PURGE_AFTER.plusDays(1), 10).sweep();
+        CartEventSnapshot snapshot = new CartEventSnapshot();
+        snapshot.setCartId(purged);
+        store.saveEventSnapshot(snapshot);
+
+        // Still within the retention: subscribers may yet read the CART_DELETED
+        assertEquals(0, sweeperAt(Duration.ZERO, 10, Duration.ofHours(1)).sweep().compacted());
+        assertEquals(2, store.findEvents(purged, 0L, 10).size());
+
+        CartExpirySweeper.Progress progress = sweeperAt(Duration.ofHours(2), 10, Duration.ofHours(1)).sweep();
+
+        assertEquals(1, progress.compacted());
+        assertTrue(store.findEvents(purged, 0L, 10).isEmpty());
+        assertTrue(store.findEventSnapshot(purged).isEmpty());
+        assertEquals(List.of(kept), store.findEventCartIds(null, 10));
+        assertEquals(1.0, registry.get("cart.expiry.compacted").counter().count());
+    }
+
+    private static CartEvent event(String cartId, String type) {
+        CartEvent event = new CartEvent();
+        event.setCartId(cartId);
+        event.setType(type);
+        event.setUserId("test-user-id");
+        event.setOccurredAt(Instant.now());
+        return event;
+    }
+
+    @Test
+    public void testChunkBudgetBoundsOneRun() {
+        for (int i = 0; i < 5; i++) {
+            newCart();
+        }
+        CartExpirySweeper sweeper = new CartExpirySweeper(store, cartCache, eventBus, metrics, TTL, PURGE_AFTER,
+                HISTORY_RETENTION, 2, 1, 0, true, Clock.offset(Clock.systemUTC(), TTL.plusDays(1)));
+
+        assertEquals(2, sweeper.sweep().expired());
+        assertEquals(2, sweeper.sweep().expired());
+        assertEquals(1, sweeper.sweep().expired());
+    }
+
+    @Test
+    public void testArchivePassMovesCartsThatAreNoLongerActive() {
+        CartStore tiered = mock(CartStore.class);
+        when(tiered.findArchivableCartIds(10)).thenReturn(List.of("cart-1", "cart-2"));
+        when(tiered.archive(List.of("cart-1", "cart-2"))).thenReturn(2);
+        CartExpirySweeper sweeper = new CartExpirySweeper(tiered, cartCache, eventBus, metrics, TTL, PURGE_AFTER,
+                HISTORY_RETENTION, 10, 100, 0, true, Clock.systemUTC());
+
+        assertEquals(new CartExpirySweeper.Progress(0, 2, 0, 0), sweeper.sweep());
+        verify(cartCache).evict("cart-1");
+        verify(cartCache).evict("cart-2");
+        assertEquals(2.0, registry.get("cart.expiry.archived").counter().count());
+    }
+
+    @Test
+    public void testArchivePassCanBeDisabled() {
+        CartStore tiered = mock(CartStore.class);
+        CartExpirySweeper sweeper = new CartExpirySweeper(tiered, cartCache, eventBus, metrics, TTL, PURGE_AFTER,
+                HISTORY_RETENTION, 10, 100, 0, false, Clock.systemUTC());
+
+        sweeper.sweep();
+
+        verify(tiered, never()).findArchivableCartIds(anyInt());
+        verify(tiered, never()).archive(any());
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.cache.NoOpCartCache;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventSnapshot;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.repository.InMemoryCartStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CartHistoryTest {
+
+    private InMemoryCartStore store;
+    private SimpleMeterRegistry registry;
+    private CartEventBus bus;
+    private ShoppingCartService cartService;
+
+    @BeforeEach
+    public void setUp() {
+        store = new InMemoryCartStore(8);
+        registry = new SimpleMeterRegistry();
+        CartMetrics metrics = new CartMetrics(registry);
+        bus = new CartEventBus(store, metrics, 100, 100);
+        cartService = new ShoppingCartService(store, new NoOpCartCache(), new OptimisticLockRetry(3, 0, metrics),
+                metrics, bus, new CartMailboxes(store, metrics, false, 1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bus.shutdown();
+    }
+
+    private CartHistory history(int snapshotEvery) {
+        return new CartHistory(store, bus, new CartMetrics(registry), snapshotEvery, 2);
+    }
+
+    private CartItem item(String productId, double price, int quantity) {
+        CartItem item = new CartItem();
+        item.setProductId(productId);
+        item.setProductName("Product " + productId);
+        item.setPrice(price);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    private static List<CartItem> byProduct(ShoppingCart cart) {
+        return cart.getItems().stream().sorted(Comparator.comparing(CartItem::getProductId)).toList();
+    }
+
+    @Test
+    public void testReplayFoldsEveryKindOfWrite() {
+        String cartId = cartService.createCart("test-user-id", "EUR").getId();
+        String first = cartService.addItem(cartId, item("p1", 10.0, 2)).getItem().getId();
+        cartService.addItemToCart(cartId, item("p1", 12.0, 3));
+        String second = cartService.addItem(cartId, item("p2", 5.0, 1)).getItem().getId();
+        cartService.updateItemQuantity(cartId, second, 4);
+        cartService.addItem(cartId, item("p3", 1.0, 1));
+        cartService.removeItem(cartId, first);
+
+        ShoppingCart replayed = history(0).replay(cartId).orElseThrow();
+        ShoppingCart stored = store.findById(cartId).orElseThrow();
+
+        assertEquals("test-user-id", replayed.getUserId());
+        assertEquals("EUR", replayed.getCurrency());
+        assertEquals("ACTIVE", replayed.getStatus());
+        assertEquals(stored.getTotalMinor(), replayed.getTotalMinor());
+        assertEquals(2, replayed.getItems().size());
+        List<CartItem> lines = byProduct(replayed);
+        assertEquals(second, lines.get(0).getId());
+        assertEquals(4, lines.get(0).getQuantity());
+        assertEquals(500L, lines.get(0).getPriceMinor());
+        assertEquals("p3", lines.get(1).getProductId());
+        assertEquals(2100L, replayed.getTotalMinor());
+    }
+
+    @Test
+    public void testReplayOfDeletedCartIsEmpty() {
+        String cartId = cartService.createCart("test-user-id").getId();
+        cartService.addItem(cartId, item("p1", 10.0, 1));
+        cartService.deleteCart(cartId);
+
+        assertTrue(history(0).replay(cartId).isEmpty());
+        assertTrue(history(0).replay("missing-cart-id").isEmpty());
+    }
+
+    @Test
+    public void testLongTailIsSnapshottedAndReplayedFromThere() {
+        String cartId = cartService.createCart("test-user-id").getId();
+        for (int i = 0; i < 4; i++) {
+            cartService.addItem(cartId, item("p" + i, 1.0, 1));
+        }
+        CartHistory history = history(3);
+
+        assertEquals(4, history.replay(cartId).orElseThrow().getItems().size());
+        CartEventSnapshot snapshot = store.findEventSnapshot(cartId).orElseThrow();
+        assertEquals(5L, snapshot.getLastSequence());
+        assertEquals(4, snapshot.getItemCount());
+
+        cartService.addItem(cartId, item("p0", 1.0, 1));
+        ShoppingCart replayed = history.replay(cartId).orElseThrow();
+        assertEquals(4, replayed.getItems().size());
+        assertEquals(500L, replayed.getTotalMinor());
+        // Only the event after the snapshot was folded, too few for a new snapshot
+        assertEquals(5L, store.findEventSnapshot(cartId).orElseThrow().getLastSequence());
+        assertEquals(1.0, registry.get("cart.history.snapshots").counter().count());
+    }
+
+    @Test
+    public void testSubscriberSnapshotsEveryFewEvents() throws Exception {
+        CartHistory history = history(3);
+        history.start();
+        try {
+            String cartId = cartService.createCart("test-user-id").getId();
+            cartService.addItem(cartId, item("p1", 1.0, 1));
+            cartService.addItem(cartId, item("p2", 1.0, 1));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            Optional<CartEventSnapshot> snapshot = store.findEventSnapshot(cartId);
+            while (snapshot.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+                snapshot = store.findEventSnapshot(cartId);
+            }
+            assertEquals(3L, snapshot.orElseThrow().getLastSequence());
+
+            cartService.deleteCart(cartId);
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (store.findEventSnapshot(cartId).isPresent() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(store.findEventSnapshot(cartId).isEmpty());
+        } finally {
+            history.stop();
+        }
+    }
+
+    @Test
+    public void testRebuildAllSnapshotsEveryCartAndReportsDrift() {
+        CartHistory history = history(0);
+        String[] cartIds = new String[5];
+        for (int i = 0; i < cartIds.length; i++) {
+            cartIds[i] = cartService.createCart("test-user-" + i).getId();
+            cartService.addItem(cartIds[i], item("p1", 2.5, i + 1));
+        }
+        cartService.deleteCart(cartIds[4]);
+        // A write that bypasses the service leaves no event behind
+        store.adjustTotal(cartIds[0], 100L);
+
+        CartHistoryRebuilder.Report report = new CartHistoryRebuilder(store, history, false, 2, 2).rebuildAll();
+
+        assertEquals(5, report.carts());
+        assertEquals(1, report.mismatched());
+        assertEquals(0, report.missing());
+        assertEquals(0, report.failed());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(store.findEventSnapshot(cartIds[i]).isPresent());
+        }
+        assertTrue(store.findEventSnapshot(cartIds[4]).isEmpty());
+    }
+
+    @Test
+    public void testPurgedCartRebuildsAsDeletedUntilItsHistoryGoes() {
+        CartHistory history = history(0);
+        String cartId = cartService.createCart("test-user-id").getId();
+        cartService.addItem(cartId, item("p1", 2.5, 1));
+        history.snapshot(cartId);
+        sweeper(Duration.ofDays(31), Duration.ofDays(365)).sweep();
+        assertEquals(1, sweeper(Duration.ofDays(91), Duration.ofDays(365)).sweep().purged());
+
+        assertTrue(history.replay(cartId).isEmpty());
+        CartHistoryRebuilder rebuilder = new CartHistoryRebuilder(store, history, false, 2, 2);
+        CartHistoryRebuilder.Report report = rebuilder.rebuildAll();
+
+        assertEquals(1, report.carts());
+        assertEquals(0, report.missing());
+        assertEquals(0, report.mismatched());
+        assertTrue(store.findEventSnapshot(cartId).isEmpty());
+
+        assertEquals(1, sweeper(Duration.ofHours(2), Duration.ofHours(1)).sweep().compacted());
+        assertEquals(0, rebuilder.rebuildAll().carts());
+    }
+
+    @Test
+    public void testCartRebuildsOnceItsEventsLeaveTheLog() {
+        bus.shutdown();
+        store = new InMemoryCartStore(8, 3);
+        CartMetrics metrics = new CartMetrics(registry);
+        bus = new CartEventBus(store, metrics, 100, 100);
+        cartService = new ShoppingCartService(store, new NoOpCartCache(), new OptimisticLockRetry(3, 0, metrics),
+                metrics, bus, new CartMailboxes(store, metrics, false, 1));
+        CartHistory history = history(0);
+        String cartId = cartService.createCart("test-user-id").getId();
+        cartService.addItem(cartId, item("p1", 2.5, 1));
+        cartService.addItem(cartId, item("p2", 1.0, 2));
+        String otherId = cartService.createCart("other-user-id").getId();
+        cartService.addItem(otherId, item("p1", 2.5, 1));
+
+        // CART_CREATED has left the log of three, yet the cart still rebuilds from it
+        assertEquals(2, history.replay(cartId).orElseThrow().getItems().size());
+        CartHistoryRebuilder.Report report = new CartHistoryRebuilder(store, history, false, 2, 2).rebuildAll();
+        assertEquals(2, report.carts());
+        assertEquals(0, report.mismatched());
+        assertEquals(0, report.missing());
+
+        // Once the snapshot covers them, only the events still in the log stay
+        assertEquals(List.of(3L), store.findEvents(cartId, 0L, 10).stream().map(CartEvent::getSequence).toList());
+        ShoppingCart replayed = history.replay(cartId).orElseThrow();
+        assertEquals(2, replayed.getItems().size());
+        assertEquals(450L, replayed.getTotalMinor());
+    }
+
+    private CartExpirySweeper sweeper(Duration ahead, Duration historyRetention) {
+        CartMetrics metrics = new CartMetrics(registry);
+        return new CartExpirySweeper(store, new NoOpCartCache(), bus, metrics, Duration.ofDays(30),
+                Duration.ofDays(90), historyRetention, 10, 100, 0, false, Clock.offset(Clock.systemUTC(), ahead));
+    }
+}
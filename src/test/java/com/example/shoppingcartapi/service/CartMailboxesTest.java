@@ -0,0 +1,317 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.cache.NoOpCartCache;
+import com.example.shoppingcartapi.exception.BadRequestException;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.CartItem;
+import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.repository.CartStore;
+import com.example.shoppingcartapi.repository.InMemoryCartStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CartMailboxesTest {
+
+    private SimpleMeterRegistry registry;
+    private CartMetrics metrics;
+    private ExecutorService callers;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new CartMetrics(registry);
+        callers = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS), "timed out waiting for a mutation");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitQueued(CartMailboxes mailboxes, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mailboxes.queuedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, mailboxes.queuedCount());
+    }
+
+    private static void awaitIdle(CartMailboxes mailboxes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mailboxes.activeCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, mailboxes.activeCount());
+    }
+
+    // A store whose scopes run the work as they are, counting how often one is opened
+    @SuppressWarnings("unchecked")
+    private static CartStore scopedStore(boolean transactional) {
+        CartStore store = mock(CartStore.class);
+        when(store.isTransactional()).thenReturn(transactional);
+        when(store.inCartScope(any(), any()))
+                .thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(1)).get());
+        return store;
+    }
+
+    @Test
+    public void testMutationsOfOneCartRunOneAtATime() throws Exception {
+        CartMailboxes mailboxes = new CartMailboxes(new InMemoryCartStore(8), metrics, true, 4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlapped = new AtomicInteger();
+        int[] counter = new int[1];
+        List<Future<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            results.add(callers.submit(() -> mailboxes.execute("cart-a", () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlapped.incrementAndGet();
+                }
+                int seen = counter[0];
+                Thread.yield();
+                counter[0] = seen + 1;
+                running.decrementAndGet();
+                return seen;
+            })));
+        }
+        for (Future<Integer> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(200, counter[0]);
+        assertEquals(0, overlapped.get());
+        awaitIdle(mailboxes);
+        assertEquals(200, registry.get("cart.mailbox.wait").timer().count());
+    }
+
+    @Test
+    public void testDifferentCartsRunInParallel() throws Exception {
+        CartMailboxes mailboxes = new CartMailboxes(new InMemoryCartStore(8), metrics, true, 4);
+        CountDownLatch otherCartRan = new CountDownLatch(1);
+
+        Future<String> blocked = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            await(otherCartRan);
+            return "a";
+        }));
+        String other = mailboxes.execute("cart-b", () -> {
+            otherCartRan.countDown();
+            return "b";
+        });
+
+        assertEquals("b", other);
+        assertEquals("a", blocked.get(5, TimeUnit.SECONDS));
+        awaitIdle(mailboxes);
+    }
+
+    @Test
+    public void testQueuedMutationsShareOneScope() throws Exception {
+        CartStore store = scopedStore(true);
+        CartMailboxes mailboxes = new CartMailboxes(store, metrics, true, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+
+        Future<Integer> first = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            started.countDown();
+            await(release);
+            return ran.incrementAndGet();
+        }));
+        await(started);
+        List<Future<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queued.add(callers.submit(() -> mailboxes.execute("cart-a", ran::incrementAndGet)));
+        }
+        awaitQueued(mailboxes, 3);
+        release.countDown();
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        for (Future<Integer> result : queued) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(4, ran.get());
+        // The first ran alone; the three that queued behind it ran in one scope
+        verify(store, times(1)).inCartScope(eq("cart-a"), any());
+        assertEquals(3.0, registry.get("cart.mailbox.batch").summary().max());
+        awaitIdle(mailboxes);
+    }
+
+    @Test
+    public void testFailedBatchRunsEachMutationAgainOnItsOwn() throws Exception {
+        CartStore store = scopedStore(true);
+        CartMailboxes mailboxes = new CartMailboxes(store, metrics, true, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Future<String> first = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            started.countDown();
+            await(release);
+            return "first";
+        }));
+        await(started);
+        Future<String> succeeding = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            attempts.incrementAndGet();
+            return "ok";
+        }));
+        awaitQueued(mailboxes, 1);
+        Future<String> failing = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            throw new BadRequestException("rejected");
+        }));
+        awaitQueued(mailboxes, 2);
+        release.countDown();
+
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("ok", succeeding.get(5, TimeUnit.SECONDS));
+        Exception failure = assertThrows(Exception.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(BadRequestException.class, failure.getCause());
+        // Once in the rolled-back batch, once more on its own
+        assertEquals(2, attempts.get());
+        awaitIdle(mailboxes);
+    }
+
+    @Test
+    public void testConflictInBatchIsPaidForByItsOwnMutation() throws Exception {
+        CartStore store = scopedStore(true);
+        CartMailboxes mailboxes = new CartMailboxes(store, metrics, true, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger before = new AtomicInteger();
+        AtomicInteger conflicting = new AtomicInteger();
+        AtomicInteger after = new AtomicInteger();
+
+        Future<String> first = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            started.countDown();
+            await(release);
+            return "first";
+        }));
+        await(started);
+        Future<Integer> earlier = callers.submit(() -> mailboxes.execute("cart-a", before::incrementAndGet));
+        awaitQueued(mailboxes, 1);
+        Future<Integer> stale = callers.submit(() -> mailboxes.execute("cart-a", () -> {
+            if (conflicting.incrementAndGet() == 1) {
+                throw new ObjectOptimisticLockingFailureException(ShoppingCart.class, "cart-a");
+            }
+            return conflicting.get();
+        }));
+        awaitQueued(mailboxes, 2);
+        List<Future<Integer>> later = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            later.add(callers.submit(() -> mailboxes.execute("cart-a", after::incrementAndGet)));
+        }
+        awaitQueued(mailboxes, 5);
+        release.countDown();
+
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals(2, earlier.get(5, TimeUnit.SECONDS));
+        assertEquals(2, stale.get(5, TimeUnit.SECONDS));
+        for (Future<Integer> result : later) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        // The one before reran with the rollback; the ones after never ran in the rolled-back scope
+        assertEquals(2, before.get());
+        assertEquals(2, conflicting.get());
+        assertEquals(3, after.get());
+        // The failed batch, then the three after it together
+        verify(store, times(2)).inCartScope(eq("cart-a"), any());
+        awaitIdle(mailboxes);
+    }
+
+    @Test
+    public void testMutationWithinATransactionRunsOnTheCaller() {
+        CartMailboxes mailboxes = new CartMailboxes(new InMemoryCartStore(8), metrics, true, 4);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            // Queued, it would wait on a mailbox thread that may wait on the caller's row lock
+            assertSame(Thread.currentThread(), mailboxes.execute("cart-a", Thread::currentThread));
+            assertEquals(0, mailboxes.activeCount());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    @Test
+    public void testFailureReachesOnlyItsOwnCaller() {
+        CartMailboxes mailboxes = new CartMailboxes(new InMemoryCartStore(8), metrics, true, 4);
+
+        BadRequestException failure = assertThrows(BadRequestException.class,
+                () -> mailboxes.execute("cart-a", () -> {
+                    throw new BadRequestException("rejected");
+                }));
+
+        assertEquals("rejected", failure.getMessage());
+        assertEquals("ok", mailboxes.execute("cart-a", () -> "ok"));
+    }
+
+    @Test
+    public void testDisabledMailboxesRunOnTheCaller() {
+        CartMailboxes mailboxes = new CartMailboxes(new InMemoryCartStore(8), metrics, false, 4);
+
+        assertSame(Thread.currentThread(), mailboxes.execute("cart-a", Thread::currentThread));
+        assertEquals(0, mailboxes.activeCount());
+    }
+
+    @Test
+    public void testConcurrentCartWritesAreNeverLost() throws Exception {
+        InMemoryCartStore store = new InMemoryCartStore(8);
+        CartEventBus bus = new CartEventBus(store, metrics, 100, 100);
+        CartMailboxes mailboxes = new CartMailboxes(store, metrics, true, 8);
+        ShoppingCartService cartService = new ShoppingCartService(store, new NoOpCartCache(),
+                new OptimisticLockRetry(1, 0, metrics), metrics, bus, mailboxes);
+        try {
+            String cartId = cartService.createCart("test-user-id").getId();
+            List<Future<ShoppingCart>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                CartItem item = new CartItem();
+                item.setProductId("p" + (i % 5));
+                item.setProductName("Product " + i);
+                item.setPrice(1.0);
+                item.setQuantity(1);
+                results.add(callers.submit(() -> cartService.addItemToCart(cartId, item)));
+            }
+            for (Future<ShoppingCart> result : results) {
+                result.get(5, TimeUnit.SECONDS);
+            }
+
+            // A single attempt each and still no conflict: no two writes read the same version
+            ShoppingCart cart = store.findById(cartId).orElseThrow();
+            assertEquals(5, cart.getItems().size());
+            assertEquals(50, cart.getItems().stream().mapToInt(CartItem::getQuantity).sum());
+            assertEquals(5000L, cart.getTotalMinor());
+            assertEquals(0.0, registry.get("cart.optimistic_lock.conflicts").counter().count());
+            awaitIdle(mailboxes);
+        } finally {
+            bus.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.shoppingcartapi.service;
+
+import com.example.shoppingcartapi.model.CartItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CartTotalsTest {
+
+    private CartItem item(double price, int quantity) {
+        CartItem item = new CartItem();
+        item.setProductId("product-" + price);
+        item.setProductName("Product");
+        item.setPrice(price);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    @Test
+    public void testAddLine() {
+        assertEquals(2000L, CartTotals.addLine(0L, item(10.0, 2)));
+        assertEquals(2500L, CartTotals.addLine(500L, item(10.0, 2)));
+    }
+
+    @Test
+    public void testAddAndRemoveLinesIsExact() {
+        long total = 0L;
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CartItem item = item(0.1, 3);
+            items.add(item);
+            total = CartTotals.addLine(total, item);
+        }
+        assertEquals(3000L, total);
+        assertEquals(CartTotals.recompute(items), total);
+
+        for (CartItem item : items) {
+            total = CartTotals.removeLine(total, item);
+        }
+        assertEquals(0L, total);
+    }
+
+    @Test
+    public void testChangeQuantity() {
+        CartItem item = item(2.5, 2);
+        assertEquals(1250L, CartTotals.changeQuantity(500L, item, 5));
+        assertEquals(250L, CartTotals.changeQuantity(500L, item, 1));
+    }
+
+    @Test
+    public void testRecomputeEmpty() {
+        assertEquals(0L, CartTotals.recompute(null));
+        assertEquals(0L, CartTotals.recompute(new ArrayList<>()));
+    }
+
+    @Test
+    public void testPricesConvertToMinorUnits() {
+        assertEquals(1099L, item(10.99, 1).getPriceMinor());
+        assertEquals(29L, item(0.285, 1).getPriceMinor());
+        assertEquals(10.99, item(10.99, 1).getPrice());
+    }
+
+    @Test
+    public void testLineTotalOverflowIsRejected() {
+        CartItem item = item(0.0, 2);
+        item.setPriceMinor(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> CartTotals.lineTotal(item));
+    }
+}
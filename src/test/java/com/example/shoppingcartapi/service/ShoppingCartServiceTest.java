@@ -1,31 +1,88 @@
 package com.example.shoppingcartapi.service;
 
+import com.example.shoppingcartapi.cache.CartCache;
+import com.example.shoppingcartapi.dto.CartBatchRequest;
+import com.example.shoppingcartapi.dto.CartBatchResponse;
+import com.example.shoppingcartapi.dto.CartItemMutationResponse;
+import com.example.shoppingcartapi.dto.CartItemOperation;
+import com.example.shoppingcartapi.dto.CartItemOperationResult;
+import com.example.shoppingcartapi.dto.CartItemPage;
+import com.example.shoppingcartapi.dto.CartOverview;
+import com.example.shoppingcartapi.dto.CartSummary;
+import com.example.shoppingcartapi.exception.BadRequestException;
+import com.example.shoppingcartapi.exception.ConflictException;
+import com.example.shoppingcartapi.exception.PreconditionFailedException;
 import com.example.shoppingcartapi.exception.ResourceNotFoundException;
+import com.example.shoppingcartapi.metrics.CartMetrics;
+import com.example.shoppingcartapi.model.ArchivedCart;
+import com.example.shoppingcartapi.model.CartEvent;
+import com.example.shoppingcartapi.model.CartEventType;
 import com.example.shoppingcartapi.model.CartItem;
 import com.example.shoppingcartapi.model.ShoppingCart;
+import com.example.shoppingcartapi.repository.ArchivedCartRepository;
+import com.example.shoppingcartapi.repository.CartEventRepository;
+import com.example.shoppingcartapi.repository.CartEventSnapshotRepository;
+import com.example.shoppingcartapi.repository.CartItemRepository;
+import com.example.shoppingcartapi.repository.CartSnapshots;
+import com.example.shoppingcartapi.repository.JpaCartStore;
 import com.example.shoppingcartapi.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class ShoppingCartServiceTest {
 
+    // Cart ids are UUIDs; the relational engine treats anything else as a cart that does not exist
+    private static final String CART_ID = "0190f3a2-5c1e-7a3b-8f00-1a2b3c4d5e6f";
+    private static final String MISSING_CART_ID = "0190f3a2-5c1e-7a3b-8f00-000000000000";
+
     @Mock
     private ShoppingCartRepository cartRepository;
 
-    @InjectMocks
+    @Mock
+    private CartItemRepository itemRepository;
+
+    @Mock
+    private ArchivedCartRepository archiveRepository;
+
+    @Mock
+    private CartEventRepository eventRepository;
+
+    @Mock
+    private CartEventSnapshotRepository snapshotRepository;
+
+    @Mock
+    private CartCache cartCache;
+
+    @Mock
+    private CartEventBus eventBus;
+
+    @Spy
+    private CartMetrics metrics = new CartMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private OptimisticLockRetry optimisticLockRetry = new OptimisticLockRetry(3, 0, metrics);
+
     private ShoppingCartService cartService;
 
     private ShoppingCart testCart;
@@ -33,8 +90,13 @@ public class ShoppingCartServiceTest {
 
     @BeforeEach
     public void setUp() {
+        JpaCartStore store = new JpaCartStore(cartRepository, itemRepository, archiveRepository, eventRepository,
+                snapshotRepository);
+        cartService = new ShoppingCartService(store, cartCache, optimisticLockRetry, metrics, eventBus,
+                new CartMailboxes(store, metrics, false, 1));
+
         testCart = new ShoppingCart();
-        testCart.setId("test-cart-id");
+        testCart.setId(CART_ID);
         testCart.setUserId("test-user-id");
         testCart.setItems(new ArrayList<>());
         testCart.setTotalAmount(0.0);
@@ -42,7 +104,7 @@ public class ShoppingCartServiceTest {
 
         testItem = new CartItem();
         testItem.setId("test-item-id");
-        testItem.setCartId("test-cart-id");
+        testItem.setCartId(CART_ID);
         testItem.setProductId("test-product-id");
         testItem.setProductName("Test Product");
         testItem.setPrice(10.0);
@@ -62,32 +124,92 @@ public class ShoppingCartServiceTest {
         assertTrue(result.getItems().isEmpty());
 
         verify(cartRepository, times(1)).save(any(ShoppingCart.class));
+        CartEvent created = publishedEvent();
+        assertEquals(CartEventType.CART_CREATED, created.getType());
+        assertEquals("test-user-id", created.getUserId());
+    }
+
+    @Test
+    public void testCreateCart_WithCurrency() {
+        when(cartRepository.save(any(ShoppingCart.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertEquals("EUR", cartService.createCart("test-user-id", "eur").getCurrency());
+        assertEquals("USD", cartService.createCart("test-user-id").getCurrency());
+    }
+
+    @Test
+    public void testCreateCart_UnsupportedCurrency() {
+        assertThrows(BadRequestException.class, () -> cartService.createCart("test-user-id", "BHD"));
+        assertThrows(BadRequestException.class, () -> cartService.createCart("test-user-id", "XYZ"));
+
+        verify(cartRepository, never()).save(any(ShoppingCart.class));
     }
 
     @Test
     public void testAddItemToCart() {
-        when(cartRepository.findById("test-cart-id")).thenReturn(Optional.of(testCart));
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
         when(cartRepository.save(any(ShoppingCart.class))).thenReturn(testCart);
 
-        ShoppingCart result = cartService.addItemToCart("test-cart-id", testItem);
+        ShoppingCart result = cartService.addItemToCart(CART_ID, testItem);
 
         assertNotNull(result);
         assertEquals(1, result.getItems().size());
         assertEquals(20.0, result.getTotalAmount()); // 10.0 * 2
 
-        verify(cartRepository, times(1)).findById("test-cart-id");
+        verify(cartRepository, times(1)).findById(CART_ID);
         verify(cartRepository, times(1)).save(any(ShoppingCart.class));
     }
 
+    @Test
+    public void testAddItemToCart_RetriesOnOptimisticLockFailure() {
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
+        when(cartRepository.save(any(ShoppingCart.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(ShoppingCart.class, CART_ID))
+                .thenReturn(testCart);
+
+        ShoppingCart result = cartService.addItemToCart(CART_ID, testItem);
+
+        assertNotNull(result);
+        verify(cartRepository, times(2)).findById(CART_ID);
+        verify(cartRepository, times(2)).save(any(ShoppingCart.class));
+    }
+
+    @Test
+    public void testAddItemToCart_ConflictAfterRetries() {
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
+        when(cartRepository.save(any(ShoppingCart.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(ShoppingCart.class, CART_ID));
+
+        assertThrows(ConflictException.class, () -> {
+            cartService.addItemToCart(CART_ID, testItem);
+        });
+
+        verify(cartRepository, times(3)).save(any(ShoppingCart.class));
+        verify(eventRepository, never()).saveAll(any());
+        verify(eventBus, never()).publish(any());
+    }
+
+    @Test
+    public void testAddItemToCart_VersionMismatch() {
+        testCart.setVersion(2L);
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
+
+        assertThrows(PreconditionFailedException.class, () -> {
+            cartService.addItemToCart(CART_ID, testItem, 1L);
+        });
+
+        verify(cartRepository, never()).save(any(ShoppingCart.class));
+    }
+
     @Test
     public void testAddItemToCart_CartNotFound() {
-        when(cartRepository.findById("non-existent-cart-id")).thenReturn(Optional.empty());
+        when(cartRepository.findById(MISSING_CART_ID)).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () -> {
-            cartService.addItemToCart("non-existent-cart-id", testItem);
+            cartService.addItemToCart(MISSING_CART_ID, testItem);
         });
 
-        verify(cartRepository, times(1)).findById("non-existent-cart-id");
+        verify(cartRepository, times(1)).findById(MISSING_CART_ID);
         verify(cartRepository, never()).save(any(ShoppingCart.class));
     }
 
@@ -98,75 +220,571 @@ public class ShoppingCartServiceTest {
         testCart.setItems(items);
         testCart.setTotalAmount(20.0);
 
-        when(cartRepository.findById("test-cart-id")).thenReturn(Optional.of(testCart));
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
         when(cartRepository.save(any(ShoppingCart.class))).thenReturn(testCart);
 
-        ShoppingCart result = cartService.removeItemFromCart("test-cart-id", "test-item-id");
+        ShoppingCart result = cartService.removeItemFromCart(CART_ID, "test-item-id");
 
         assertNotNull(result);
         assertTrue(result.getItems().isEmpty());
         assertEquals(0.0, result.getTotalAmount());
 
-        verify(cartRepository, times(1)).findById("test-cart-id");
+        verify(cartRepository, times(1)).findById(CART_ID);
         verify(cartRepository, times(1)).save(any(ShoppingCart.class));
     }
 
     @Test
     public void testRemoveItemFromCart_CartNotFound() {
-        when(cartRepository.findById("non-existent-cart-id")).thenReturn(Optional.empty());
+        when(cartRepository.findById(MISSING_CART_ID)).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () -> {
-            cartService.removeItemFromCart("non-existent-cart-id", "test-item-id");
+            cartService.removeItemFromCart(MISSING_CART_ID, "test-item-id");
+        });
+
+        verify(cartRepository, times(1)).findById(MISSING_CART_ID);
+        verify(cartRepository, never()).save(any(ShoppingCart.class));
+    }
+
+    @Test
+    public void testAddItem() {
+        when(cartRepository.adjustTotal(CART_ID, new BigDecimal("20.00"))).thenReturn(1);
+        when(itemRepository.save(any(CartItem.class))).thenReturn(testItem);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(2000L));
+
+        CartItemMutationResponse result = cartService.addItem(CART_ID, testItem);
+
+        assertEquals(CART_ID, result.getCartId());
+        assertEquals(testItem, result.getItem());
+        assertEquals(20.0, result.getTotalAmount());
+
+        verify(cartRepository, never()).findById(anyString());
+        verify(cartRepository, never()).save(any(ShoppingCart.class));
+        verify(eventRepository, times(1)).saveAll(any());
+        CartEvent added = publishedEvent();
+        assertEquals(CartEventType.ITEM_ADDED, added.getType());
+        assertEquals(CART_ID, added.getCartId());
+        assertEquals("test-item-id", added.getItemId());
+        assertEquals(2, added.getQuantity());
+        assertEquals(10.0, added.getPrice());
+    }
+
+    @Test
+    public void testAddItemToCart_MergesSameProduct() {
+        List<CartItem> items = new ArrayList<>();
+        items.add(testItem);
+        testCart.setItems(items);
+        testCart.setTotalAmount(20.0);
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
+        when(cartRepository.save(any(ShoppingCart.class))).thenReturn(testCart);
+
+        CartItem sameProduct = new CartItem();
+        sameProduct.setProductId("test-product-id");
+        sameProduct.setProductName("Test Product");
+        sameProduct.setPrice(10.0);
+        sameProduct.setQuantity(3);
+        ShoppingCart result = cartService.addItemToCart(CART_ID, sameProduct);
+
+        assertEquals(1, result.getItems().size());
+        assertEquals(5, result.getItems().get(0).getQuantity());
+        assertEquals(50.0, result.getTotalAmount());
+        // The event carries the quantity added and the line it went into
+        CartEvent added = publishedEvent();
+        assertEquals("test-item-id", added.getItemId());
+        assertEquals(3, added.getQuantity());
+    }
+
+    @Test
+    public void testAddItem_MergesSameProduct() {
+        CartItem sameProduct = new CartItem();
+        sameProduct.setProductId("test-product-id");
+        sameProduct.setProductName("Test Product");
+        sameProduct.setPrice(12.0);
+        sameProduct.setQuantity(1);
+        when(cartRepository.adjustTotal(CART_ID, new BigDecimal("12.00"))).thenReturn(1);
+        when(itemRepository.findByCartIdAndProductIdIn(CART_ID, List.of("test-product-id")))
+                .thenReturn(List.of(testItem));
+        when(itemRepository.save(testItem)).thenReturn(testItem);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(3600L));
+
+        CartItemMutationResponse result = cartService.addItem(CART_ID, sameProduct);
+
+        assertEquals("test-item-id", result.getItem().getId());
+        assertEquals(3, testItem.getQuantity());
+        assertEquals(12.0, testItem.getPrice());
+        // The two existing units are repriced from 10.0 to 12.0
+        verify(cartRepository, times(1)).adjustTotal(CART_ID, new BigDecimal("4.00"));
+        verify(itemRepository, never()).save(sameProduct);
+    }
+
+    @Test
+    public void testUpdateItemQuantity() {
+        when(itemRepository.findByIdAndCartId("test-item-id", CART_ID)).thenReturn(Optional.of(testItem));
+        when(itemRepository.save(testItem)).thenReturn(testItem);
+        when(cartRepository.adjustTotal(CART_ID, new BigDecimal("30.00"))).thenReturn(1);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(5000L));
+
+        CartItemMutationResponse result = cartService.updateItemQuantity(CART_ID, "test-item-id", 5);
+
+        assertEquals(5, result.getItem().getQuantity());
+        assertEquals(50.0, result.getTotalAmount());
+        verify(cartRepository, times(1)).adjustTotal(CART_ID, new BigDecimal("30.00"));
+    }
+
+    @Test
+    public void testUpdateItemQuantity_VersionMismatch() {
+        when(itemRepository.findByIdAndCartId("test-item-id", CART_ID)).thenReturn(Optional.of(testItem));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("30.00"), 1L)).thenReturn(0);
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(2L));
+
+        assertThrows(PreconditionFailedException.class, () -> {
+            cartService.updateItemQuantity(CART_ID, "test-item-id", 5, 1L);
+        });
+
+        assertEquals(2, testItem.getQuantity());
+        verify(itemRepository, never()).save(any(CartItem.class));
+    }
+
+    @Test
+    public void testUpdateItemQuantity_InvalidQuantity() {
+        assertThrows(BadRequestException.class, () -> {
+            cartService.updateItemQuantity(CART_ID, "test-item-id", 0);
         });
 
-        verify(cartRepository, times(1)).findById("non-existent-cart-id");
+        verify(itemRepository, never()).save(any(CartItem.class));
+    }
+
+    @Test
+    public void testAddItemToCart_HugeAmountsAreBadRequests() {
+        CartItem huge = new CartItem();
+        huge.setProductId("test-product-id");
+        huge.setProductName("Test Product");
+        huge.setPrice(1e300);
+        huge.setQuantity(1);
+        assertThrows(BadRequestException.class, () -> cartService.addItemToCart(CART_ID, huge));
+
+        huge.setPrice(1_000_000.0);
+        huge.setQuantity(Integer.MAX_VALUE);
+        assertThrows(BadRequestException.class, () -> cartService.addItemToCart(CART_ID, huge));
+
         verify(cartRepository, never()).save(any(ShoppingCart.class));
     }
 
+    @Test
+    public void testUpdateItemQuantity_LineTotalTooLarge() {
+        testItem.setPrice(1_000_000.0);
+        when(itemRepository.findByIdAndCartId("test-item-id", CART_ID)).thenReturn(Optional.of(testItem));
+
+        assertThrows(BadRequestException.class, () -> {
+            cartService.updateItemQuantity(CART_ID, "test-item-id", Integer.MAX_VALUE);
+        });
+
+        verify(cartRepository, never()).adjustTotal(anyString(), any(BigDecimal.class));
+        verify(itemRepository, never()).save(any(CartItem.class));
+    }
+
+    @Test
+    public void testAddItem_CartNotFound() {
+        when(cartRepository.adjustTotal(eq(MISSING_CART_ID), any(BigDecimal.class))).thenReturn(0);
+
+        assertThrows(ResourceNotFoundException.class, () -> {
+            cartService.addItem(MISSING_CART_ID, testItem);
+        });
+
+        verify(itemRepository, never()).save(any(CartItem.class));
+    }
+
+    @Test
+    public void testAddItem_MalformedCartIdIsNotFound() {
+        assertThrows(ResourceNotFoundException.class, () -> {
+            cartService.addItem("not-a-cart-id", testItem);
+        });
+
+        verify(cartRepository, never()).adjustTotal(anyString(), any(BigDecimal.class));
+        verify(itemRepository, never()).save(any(CartItem.class));
+    }
+
+    @Test
+    public void testAddItem_VersionMismatch() {
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("20.00"), 1L)).thenReturn(0);
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(2L));
+
+        assertThrows(PreconditionFailedException.class, () -> {
+            cartService.addItem(CART_ID, testItem, 1L);
+        });
+
+        verify(itemRepository, never()).save(any(CartItem.class));
+        verify(eventRepository, never()).saveAll(any());
+    }
+
+    @Test
+    public void testAddItem_AtExpectedVersion() {
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("20.00"), 2L)).thenReturn(1);
+        when(itemRepository.save(any(CartItem.class))).thenReturn(testItem);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(2000L));
+
+        CartItemMutationResponse result = cartService.addItem(CART_ID, testItem, 2L);
+
+        assertEquals(20.0, result.getTotalAmount());
+        verify(cartRepository, never()).adjustTotal(anyString(), any(BigDecimal.class));
+    }
+
+    @Test
+    public void testRemoveItem() {
+        when(itemRepository.findByIdAndCartId("test-item-id", CART_ID)).thenReturn(Optional.of(testItem));
+        when(cartRepository.adjustTotal(CART_ID, new BigDecimal("-20.00"))).thenReturn(1);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(0L));
+
+        CartItemMutationResponse result = cartService.removeItem(CART_ID, "test-item-id");
+
+        assertEquals(0.0, result.getTotalAmount());
+        verify(itemRepository, times(1)).delete(testItem);
+        verify(cartRepository, times(1)).adjustTotal(CART_ID, new BigDecimal("-20.00"));
+        verify(cartRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void testRemoveItem_VersionMismatch() {
+        when(itemRepository.findByIdAndCartId("test-item-id", CART_ID)).thenReturn(Optional.of(testItem));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("-20.00"), 1L)).thenReturn(0);
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(2L));
+
+        assertThrows(PreconditionFailedException.class, () -> {
+            cartService.removeItem(CART_ID, "test-item-id", 1L);
+        });
+
+        verify(itemRepository, never()).delete(any(CartItem.class));
+    }
+
+    @Test
+    public void testRemoveItem_ItemNotFound() {
+        when(itemRepository.findByIdAndCartId("missing-item-id", CART_ID)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> {
+            cartService.removeItem(CART_ID, "missing-item-id");
+        });
+
+        verify(cartRepository, never()).adjustTotal(anyString(), any(BigDecimal.class));
+    }
+
+    @Test
+    public void testApplyBatch() {
+        CartItem newItem = new CartItem();
+        newItem.setProductId("other-product-id");
+        newItem.setProductName("Other Product");
+        newItem.setPrice(5.0);
+        newItem.setQuantity(1);
+
+        CartBatchRequest request = new CartBatchRequest();
+        request.setOperations(List.of(
+                new CartItemOperation(CartItemOperation.Type.ADD, null, newItem, null),
+                new CartItemOperation(CartItemOperation.Type.UPDATE_QUANTITY, "test-item-id", null, 3),
+                new CartItemOperation(CartItemOperation.Type.REMOVE, "missing-item-id", null, null)));
+
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(7L));
+        when(itemRepository.findByCartIdAndIdIn(eq(CART_ID), any()))
+                .thenReturn(List.of(testItem));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("15.00"), 7L)).thenReturn(1);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(3500L));
+
+        CartBatchResponse response = cartService.applyBatch(CART_ID, request);
+
+        assertEquals(35.0, response.getTotalAmount());
+        assertEquals(3, response.getResults().size());
+        assertEquals(CartItemOperationResult.Status.APPLIED, response.getResults().get(0).getStatus());
+        assertEquals(CartItemOperationResult.Status.APPLIED, response.getResults().get(1).getStatus());
+        assertEquals(CartItemOperationResult.Status.FAILED, response.getResults().get(2).getStatus());
+        assertEquals(3, testItem.getQuantity());
+
+        // +5.0 for the new line, +10.0 for the quantity change, single adjustment
+        verify(cartRepository, times(1)).adjustTotalIfVersion(CART_ID, new BigDecimal("15.00"), 7L);
+        verify(itemRepository, times(1)).saveAll(any());
+        verify(cartRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void testApplyBatch_MergesAddsOfSameProduct() {
+        CartItem first = new CartItem();
+        first.setProductId("test-product-id");
+        first.setProductName("Test Product");
+        first.setPrice(10.0);
+        first.setQuantity(1);
+        CartItem second = new CartItem();
+        second.setProductId("test-product-id");
+        second.setProductName("Test Product");
+        second.setPrice(10.0);
+        second.setQuantity(2);
+
+        CartBatchRequest request = new CartBatchRequest();
+        request.setOperations(List.of(
+                new CartItemOperation(CartItemOperation.Type.ADD, null, first, null),
+                new CartItemOperation(CartItemOperation.Type.ADD, null, second, null)));
+
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(7L));
+        when(itemRepository.findByCartIdAndProductIdIn(eq(CART_ID), any()))
+                .thenReturn(List.of(testItem));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("30.00"), 7L)).thenReturn(1);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(5000L));
+
+        CartBatchResponse response = cartService.applyBatch(CART_ID, request);
+
+        assertEquals(5, testItem.getQuantity());
+        assertEquals("test-item-id", response.getResults().get(0).getItemId());
+        assertEquals("test-item-id", response.getResults().get(1).getItemId());
+        verify(itemRepository, times(1)).saveAll(List.of(testItem));
+    }
+
+    @Test
+    public void testApplyBatch_ReAddAfterRemoveTakesNewName() {
+        CartItem readded = new CartItem();
+        readded.setProductId("test-product-id");
+        readded.setProductName("Renamed Product");
+        readded.setPrice(12.0);
+        readded.setQuantity(1);
+
+        CartBatchRequest request = new CartBatchRequest();
+        request.setOperations(List.of(
+                new CartItemOperation(CartItemOperation.Type.REMOVE, "test-item-id", null, null),
+                new CartItemOperation(CartItemOperation.Type.ADD, null, readded, null)));
+
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(7L));
+        when(itemRepository.findByCartIdAndIdIn(eq(CART_ID), any())).thenReturn(List.of(testItem));
+        when(itemRepository.findByCartIdAndProductIdIn(eq(CART_ID), any())).thenReturn(List.of(testItem));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, new BigDecimal("-8.00"), 7L)).thenReturn(1);
+        when(cartRepository.findTotalMinorById(CART_ID)).thenReturn(Optional.of(1200L));
+
+        CartBatchResponse response = cartService.applyBatch(CART_ID, request);
+
+        assertEquals(CartItemOperationResult.Status.APPLIED, response.getResults().get(0).getStatus());
+        assertEquals(CartItemOperationResult.Status.APPLIED, response.getResults().get(1).getStatus());
+        // The removed row is reused and takes the re-added line's name, price and quantity
+        assertEquals("test-item-id", response.getResults().get(1).getItemId());
+        assertEquals("Renamed Product", testItem.getProductName());
+        assertEquals(1200L, testItem.getPriceMinor());
+        assertEquals(1, testItem.getQuantity());
+        verify(cartRepository, times(1)).adjustTotalIfVersion(CART_ID, new BigDecimal("-8.00"), 7L);
+    }
+
+    @Test
+    public void testApplyBatch_CartNotFound() {
+        CartBatchRequest request = new CartBatchRequest();
+        request.setOperations(List.of(new CartItemOperation(CartItemOperation.Type.ADD, null, testItem, null)));
+        when(cartRepository.findVersionById(MISSING_CART_ID)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> {
+            cartService.applyBatch(MISSING_CART_ID, request);
+        });
+
+        verify(itemRepository, never()).saveAll(any());
+    }
+
+    @Test
+    public void testFindCarts() {
+        CartSummary summary = new CartSummary(CART_ID, "test-user-id", "ACTIVE", 2000L, "USD", 3L);
+        when(cartRepository.findSummariesByUserIdAndStatus("test-user-id", "ACTIVE")).thenReturn(List.of(summary));
+
+        List<CartSummary> result = cartService.findCarts("test-user-id", "ACTIVE");
+
+        assertEquals(List.of(summary), result);
+        verify(cartRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void testFindCarts_EmptyUserId() {
+        assertThrows(BadRequestException.class, () -> {
+            cartService.findCarts(" ", "ACTIVE");
+        });
+    }
+
+    @Test
+    public void testGetCartItems_ProjectsFieldsAndReturnsCursor() {
+        CartItem second = new CartItem();
+        second.setId("test-item-id-2");
+        second.setProductId("other-product-id");
+        second.setPrice(5.0);
+        second.setQuantity(1);
+        when(itemRepository.findByCartIdAndIdGreaterThanOrderByIdAsc(eq(CART_ID), eq("a-item-id"), any()))
+                .thenReturn(List.of(testItem, second));
+
+        CartItemPage page = cartService.getCartItems(CART_ID, "a-item-id", 1, List.of("productId", "quantity"));
+
+        assertEquals(1, page.getItems().size());
+        assertEquals(Map.of("productId", "test-product-id", "quantity", 2), page.getItems().get(0));
+        assertEquals("test-item-id", page.getNextCursor());
+    }
+
+    @Test
+    public void testGetCartItems_LastPage() {
+        when(itemRepository.findByCartIdOrderByIdAsc(eq(CART_ID), any())).thenReturn(List.of(testItem));
+
+        CartItemPage page = cartService.getCartItems(CART_ID, null, null, null);
+
+        assertEquals(1, page.getItems().size());
+        assertEquals("Test Product", page.getItems().get(0).get("productName"));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testGetCartItems_UnknownField() {
+        assertThrows(BadRequestException.class, () -> {
+            cartService.getCartItems(CART_ID, null, 10, List.of("productId", "secret"));
+        });
+
+        verify(itemRepository, never()).findByCartIdOrderByIdAsc(anyString(), any());
+    }
+
+    @Test
+    public void testGetCartItems_CartNotFound() {
+        when(itemRepository.findByCartIdOrderByIdAsc(eq(MISSING_CART_ID), any())).thenReturn(List.of());
+        when(cartRepository.findVersionById(MISSING_CART_ID)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> {
+            cartService.getCartItems(MISSING_CART_ID, null, 10, null);
+        });
+    }
+
+    @Test
+    public void testGetCartOverview() {
+        when(cartRepository.findOverviewById(CART_ID))
+                .thenReturn(Optional.of(new CartOverview(CART_ID, "ACTIVE", 2000L, "USD", 1L, 3L)));
+
+        CartOverview overview = cartService.getCartOverview(CART_ID);
+
+        assertEquals(1L, overview.getItemCount());
+        verify(cartRepository, never()).findById(anyString());
+    }
+
     @Test
     public void testGetCart() {
-        when(cartRepository.findById("test-cart-id")).thenReturn(Optional.of(testCart));
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.of(testCart));
 
-        ShoppingCart result = cartService.getCart("test-cart-id");
+        ShoppingCart result = cartService.getCart(CART_ID);
 
         assertNotNull(result);
-        assertEquals("test-cart-id", result.getId());
+        assertEquals(CART_ID, result.getId());
         assertEquals("test-user-id", result.getUserId());
 
-        verify(cartRepository, times(1)).findById("test-cart-id");
+        verify(cartRepository, times(1)).findById(CART_ID);
+    }
+
+    @Test
+    public void testGetCart_CacheHit() {
+        when(cartCache.get(CART_ID)).thenReturn(Optional.of(testCart));
+
+        ShoppingCart result = cartService.getCart(CART_ID);
+
+        assertSame(testCart, result);
+        verify(cartRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void testGetCart_ReadsBackArchivedCart() {
+        testCart.setStatus("EXPIRED");
+        testCart.setVersion(9L);
+        testItem.setId("0190f3a2-5c1e-7a3b-8f00-00000000beef");
+        testCart.getItems().add(testItem);
+        testCart.setTotalAmount(20.0);
+        ArchivedCart archived = CartSnapshots.archive(testCart, Instant.now());
+        when(cartRepository.findById(CART_ID)).thenReturn(Optional.empty());
+        when(archiveRepository.findById(CART_ID)).thenReturn(Optional.of(archived));
+
+        ShoppingCart result = cartService.getCart(CART_ID);
+
+        assertEquals("EXPIRED", result.getStatus());
+        assertEquals(9L, result.getVersion());
+        assertEquals(2000L, result.getTotalMinor());
+        assertEquals(1, result.getItems().size());
+        assertEquals(testItem.getProductId(), result.getItems().get(0).getProductId());
+        verify(cartCache).put(result, 0L);
     }
 
     @Test
     public void testGetCart_CartNotFound() {
-        when(cartRepository.findById("non-existent-cart-id")).thenReturn(Optional.empty());
+        when(cartRepository.findById(MISSING_CART_ID)).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () -> {
-            cartService.getCart("non-existent-cart-id");
+            cartService.getCart(MISSING_CART_ID);
         });
 
-        verify(cartRepository, times(1)).findById("non-existent-cart-id");
+        verify(cartRepository, times(1)).findById(MISSING_CART_ID);
     }
 
     @Test
     public void testDeleteCart() {
-        when(cartRepository.findById("test-cart-id")).thenReturn(Optional.of(testCart));
-        doNothing().when(cartRepository).delete(any(ShoppingCart.class));
-
-        cartService.deleteCart("test-cart-id");
+        when(cartRepository.findSummaryById(CART_ID))
+                .thenReturn(Optional.of(new CartSummary(CART_ID, "test-user-id", "ACTIVE", 0L, "USD", 3L)));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, BigDecimal.ZERO, 3L)).thenReturn(1);
+        when(cartRepository.deleteRow(CART_ID)).thenReturn(1);
+
+        cartService.deleteCart(CART_ID);
+
+        verify(itemRepository, times(1)).deleteRowsByCartId(CART_ID);
+        verify(cartRepository, times(1)).deleteRow(CART_ID);
+        verify(cartRepository, never()).findById(anyString());
+        verify(cartCache, times(1)).evict(CART_ID);
+        assertEquals(CartEventType.CART_DELETED, publishedEvent().getType());
+    }
 
-        verify(cartRepository, times(1)).findById("test-cart-id");
-        verify(cartRepository, times(1)).delete(testCart);
+    @Test
+    public void testDeleteCart_RetriesWhenVersionMoves() {
+        when(cartRepository.findSummaryById(CART_ID))
+                .thenReturn(Optional.of(new CartSummary(CART_ID, "test-user-id", "ACTIVE", 0L, "USD", 3L)))
+                .thenReturn(Optional.of(new CartSummary(CART_ID, "test-user-id", "ACTIVE", 500L, "USD", 4L)));
+        when(cartRepository.adjustTotalIfVersion(CART_ID, BigDecimal.ZERO, 3L)).thenReturn(0);
+        when(cartRepository.adjustTotalIfVersion(CART_ID, BigDecimal.ZERO, 4L)).thenReturn(1);
+        when(cartRepository.deleteRow(CART_ID)).thenReturn(1);
+
+        cartService.deleteCart(CART_ID);
+
+        verify(itemRepository, times(1)).deleteRowsByCartId(CART_ID);
+        verify(cartRepository, times(2)).findSummaryById(CART_ID);
     }
 
     @Test
     public void testDeleteCart_CartNotFound() {
-        when(cartRepository.findById("non-existent-cart-id")).thenReturn(Optional.empty());
+        when(cartRepository.findSummaryById(MISSING_CART_ID)).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () -> {
-            cartService.deleteCart("non-existent-cart-id");
+            cartService.deleteCart(MISSING_CART_ID);
         });
 
-        verify(cartRepository, times(1)).findById("non-existent-cart-id");
-        verify(cartRepository, never()).delete(any(ShoppingCart.class));
+        verify(cartRepository, times(1)).findSummaryById(MISSING_CART_ID);
+        verify(cartRepository, never()).deleteRow(anyString());
+    }
+
+    @Test
+    public void testSubscribeToCart() {
+        when(cartRepository.findVersionById(CART_ID)).thenReturn(Optional.of(3L));
+        CartEventBus.Subscription subscription = mock(CartEventBus.Subscription.class);
+        when(eventBus.subscribe(eq(CART_ID), isNull(), any())).thenReturn(subscription);
+
+        assertSame(subscription, cartService.subscribeToCart(CART_ID, null, events -> { }));
+    }
+
+    @Test
+    public void testSubscribeToCart_CartNotFound() {
+        when(cartRepository.findVersionById(MISSING_CART_ID)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> {
+            cartService.subscribeToCart(MISSING_CART_ID, null, events -> { });
+        });
+
+        verify(eventBus, never()).subscribe(anyString(), any(), any());
+    }
+
+    @Test
+    public void testSubscribeToCart_ResumesWithoutCheckingTheCart() {
+        cartService.subscribeToCart(MISSING_CART_ID, 41L, events -> { });
+
+        verify(cartRepository, never()).findVersionById(anyString());
+        verify(eventBus, times(1)).subscribe(eq(MISSING_CART_ID), eq(41L), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private CartEvent publishedEvent() {
+        ArgumentCaptor<List<CartEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(eventBus, atLeastOnce()).publish(events.capture());
+        List<CartEvent> last = events.getValue();
+        assertEquals(1, last.size());
+        return last.get(0);
     }
-} 
\ No newline at end of file
+}